@@ -1,5 +1,8 @@
 CREATE DATABASE db_produtos;
 
+-- Em um BD já instalado, as colunas e índices acrescentados depois da
+-- criação das tabelas são aplicados por dao.MigracaoBanco na inicialização
+
 CREATE TABLE IF NOT EXISTS db_produtos.tb_produtodao (
   id INT NOT NULL AUTO_INCREMENT,
   produto VARCHAR(100) NOT NULL,
@@ -9,6 +12,7 @@ CREATE TABLE IF NOT EXISTS db_produtos.tb_produtodao (
   quantidade INT NOT NULL,
   estoqueminimo INT NOT NULL DEFAULT 25,
   estoquemaximo INT NOT NULL DEFAULT 100,
+  versao INT NOT NULL DEFAULT 1,
   PRIMARY KEY (id));
 
 CREATE TABLE IF NOT EXISTS db_produtos.tb_categoriadao (
@@ -24,5 +28,57 @@ CREATE TABLE IF NOT EXISTS db_produtos.tb_movimentacao (
   quantidade INT NOT NULL,
   tipo ENUM('ENTRADA', 'SAIDA') NOT NULL,
   data_hora DATETIME NOT NULL,
-  observacao VARCHAR(255)
+  observacao VARCHAR(255),
+  id_diario BIGINT NULL,
+  UNIQUE INDEX uk_movimentacao_diario (id_diario),
+  INDEX idx_movimentacao_produto_data (id_produto, data_hora),
+  INDEX idx_movimentacao_data (data_hora)
+);
+
+CREATE TABLE IF NOT EXISTS db_produtos.tb_lote (
+  id INT PRIMARY KEY AUTO_INCREMENT,
+  id_produto INT NOT NULL,
+  quantidade INT NOT NULL,
+  validade DATE NULL,
+  data_entrada DATETIME NOT NULL,
+  INDEX idx_lote_produto_validade (id_produto, validade),
+  INDEX idx_lote_validade (validade)
+);
+
+CREATE TABLE IF NOT EXISTS db_produtos.tb_estoque_checkpoint (
+  id_produto INT NOT NULL,
+  data_hora DATETIME NOT NULL,
+  quantidade INT NOT NULL,
+  PRIMARY KEY (id_produto, data_hora)
+);
+
+CREATE TABLE IF NOT EXISTS db_produtos.tb_movimentacao_arquivo (
+  id INT PRIMARY KEY,
+  id_produto INT NOT NULL,
+  quantidade INT NOT NULL,
+  tipo ENUM('ENTRADA', 'SAIDA') NOT NULL,
+  data_hora DATETIME NOT NULL,
+  observacao VARCHAR(255),
+  id_diario BIGINT NULL,
+  INDEX idx_arquivo_produto_data (id_produto, data_hora),
+  INDEX idx_arquivo_data (data_hora)
+) ROW_FORMAT=COMPRESSED;
+
+CREATE TABLE IF NOT EXISTS db_produtos.tb_movimentacao_resumo (
+  id_produto INT NOT NULL,
+  dia DATE NOT NULL,
+  entradas BIGINT NOT NULL,
+  saidas BIGINT NOT NULL,
+  movimentacoes INT NOT NULL,
+  PRIMARY KEY (id_produto, dia),
+  INDEX idx_resumo_dia (dia)
+);
+
+CREATE TABLE IF NOT EXISTS db_produtos.tb_idempotencia (
+  chave VARCHAR(100) NOT NULL,
+  operacao VARCHAR(50) NOT NULL,
+  resposta MEDIUMBLOB NOT NULL,
+  criado_em DATETIME NOT NULL,
+  PRIMARY KEY (chave),
+  INDEX idx_idempotencia_criado (criado_em)
 );
@@ -0,0 +1,232 @@
+package controller;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.NavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.function.Supplier;
+import modelo.Categoria;
+import modelo.Produto;
+
+/**
+ * Catálogo de produtos e categorias em memória usado pelas listagens e
+ * relatórios
+ * <p>
+ * Mantém os produtos indexados por ID e sempre ordenados por nome, para que os
+ * relatórios ordenados percorram o índice direto, sem ordenar a lista a cada
+ * requisição. É carregado do snapshot ou do banco e atualizado pelo
+ * controlador a cada escrita
+ * </p>
+ */
+public class Catalogo {
+
+    private volatile ConcurrentSkipListMap<Integer, Produto> porId = new ConcurrentSkipListMap<>();
+    private volatile ConcurrentSkipListMap<ChaveNome, Produto> porNome = new ConcurrentSkipListMap<>();
+    private volatile List<Categoria> categorias;
+    private volatile boolean carregado;
+
+    /**
+     * Carrega o catálogo na primeira chamada
+     *
+     * @param fonte Fornece a lista completa de produtos do banco
+     */
+    public void garantirCarregado(Supplier<List<Produto>> fonte) {
+        if (carregado) {
+            return;
+        }
+        synchronized (this) {
+            if (!carregado) {
+                substituir(fonte.get());
+            }
+        }
+    }
+
+    /**
+     * Substitui todo o conteúdo do catálogo
+     * <p>
+     * Os índices novos são montados à parte e trocados de uma vez, então as
+     * leituras em andamento nunca veem o catálogo pela metade
+     * </p>
+     *
+     * @param produtos Lista completa de produtos
+     */
+    public synchronized void substituir(List<Produto> produtos) {
+        ConcurrentSkipListMap<Integer, Produto> novoPorId = new ConcurrentSkipListMap<>();
+        ConcurrentSkipListMap<ChaveNome, Produto> novoPorNome = new ConcurrentSkipListMap<>();
+        for (Produto produto : produtos) {
+            novoPorId.put(produto.getId(), produto);
+            novoPorNome.put(new ChaveNome(produto), produto);
+        }
+        porId = novoPorId;
+        porNome = novoPorNome;
+        carregado = true;
+    }
+
+    /**
+     * Insere ou atualiza um produto, reposicionando-o no índice por nome
+     *
+     * @param produto Produto como está gravado no banco
+     */
+    public synchronized void atualizar(Produto produto) {
+        if (!carregado) {
+            return;
+        }
+        Produto anterior = porId.put(produto.getId(), produto);
+        if (anterior != null) {
+            porNome.remove(new ChaveNome(anterior));
+        }
+        porNome.put(new ChaveNome(produto), produto);
+    }
+
+    /**
+     * Remove um produto do catálogo
+     *
+     * @param id ID do produto
+     */
+    public synchronized void remover(int id) {
+        Produto anterior = porId.remove(id);
+        if (anterior != null) {
+            porNome.remove(new ChaveNome(anterior));
+        }
+    }
+
+    /**
+     * Carrega as categorias na primeira chamada
+     * <p>
+     * Uma lista vazia não é guardada, já que o DAO de categorias também
+     * devolve lista vazia quando o banco está fora
+     * </p>
+     *
+     * @param fonte Fornece a lista completa de categorias do banco
+     */
+    public void garantirCategorias(Supplier<List<Categoria>> fonte) {
+        if (categorias == null) {
+            List<Categoria> lidas = fonte.get();
+            if (!lidas.isEmpty()) {
+                substituirCategorias(lidas);
+            }
+        }
+    }
+
+    /**
+     * Substitui a lista de categorias
+     *
+     * @param novas Lista completa de categorias
+     */
+    public void substituirCategorias(List<Categoria> novas) {
+        categorias = Collections.unmodifiableList(new ArrayList<>(novas));
+    }
+
+    /**
+     * @return Categorias carregadas, ou lista vazia se ainda não carregadas
+     */
+    public List<Categoria> getCategorias() {
+        List<Categoria> atuais = categorias;
+        return atuais != null ? atuais : Collections.emptyList();
+    }
+
+    /**
+     * @return {@code true} se os produtos já foram carregados
+     */
+    public boolean isCarregado() {
+        return carregado;
+    }
+
+    /**
+     * @param id ID do produto
+     * @return Produto do catálogo ou {@code null}
+     */
+    public Produto buscarPorId(int id) {
+        return porId.get(id);
+    }
+
+    /**
+     * @return Visão somente leitura dos produtos em ordem de ID
+     */
+    public Collection<Produto> ordenadosPorId() {
+        return Collections.unmodifiableCollection(porId.values());
+    }
+
+    /**
+     * @return Visão somente leitura dos produtos em ordem de nome
+     */
+    public Collection<Produto> ordenadosPorNome() {
+        return Collections.unmodifiableCollection(porNome.values());
+    }
+
+    /**
+     * Percorre uma faixa de nomes em ordem, para relatórios paginados
+     *
+     * @param de Primeiro nome da faixa ({@code null} para o início)
+     * @param aposId Se informado, começa depois do produto ({@code de},
+     * {@code aposId}), usado como cursor da página anterior; exige {@code de}
+     * @param ate Último nome da faixa, inclusivo ({@code null} para o fim)
+     * @param limite Quantidade máxima de produtos retornados
+     * @return Produtos da faixa em ordem de nome
+     * @throws IllegalArgumentException Se {@code aposId} vier sem {@code de}
+     */
+    public List<Produto> faixaPorNome(String de, Integer aposId, String ate, int limite) {
+        if (aposId != null && de == null) {
+            throw new IllegalArgumentException("aposId exige o nome do último produto (de)");
+        }
+        NavigableMap<ChaveNome, Produto> faixa = porNome;
+        if (de != null) {
+            faixa = aposId != null
+                    ? faixa.tailMap(new ChaveNome(de, aposId), false)
+                    : faixa.tailMap(new ChaveNome(de, Integer.MIN_VALUE), true);
+        }
+        if (ate != null) {
+            faixa = faixa.headMap(new ChaveNome(ate, Integer.MAX_VALUE), true);
+        }
+
+        List<Produto> pagina = new ArrayList<>(Math.max(0, Math.min(limite, 1024)));
+        for (Produto produto : faixa.values()) {
+            if (pagina.size() >= limite) {
+                break;
+            }
+            pagina.add(produto);
+        }
+        return pagina;
+    }
+
+    /**
+     * Chave do índice por nome, desempatada pelo ID para aceitar nomes
+     * repetidos
+     */
+    private static final class ChaveNome implements Comparable<ChaveNome> {
+
+        private final String nome;
+        private final int id;
+
+        private ChaveNome(Produto produto) {
+            this(produto.getProduto(), produto.getId());
+        }
+
+        private ChaveNome(String nome, int id) {
+            this.nome = nome;
+            this.id = id;
+        }
+
+        @Override
+        public int compareTo(ChaveNome outra) {
+            int comparacao = nome.compareTo(outra.nome);
+            return comparacao != 0 ? comparacao : Integer.compare(id, outra.id);
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (!(obj instanceof ChaveNome)) {
+                return false;
+            }
+            ChaveNome outra = (ChaveNome) obj;
+            return id == outra.id && nome.equals(outra.nome);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * nome.hashCode() + id;
+        }
+    }
+}
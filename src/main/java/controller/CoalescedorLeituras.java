@@ -0,0 +1,112 @@
+package controller;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+import modelo.Mensagem;
+
+/**
+ * Junta leituras iguais que chegam ao mesmo tempo (single-flight)
+ * <p>
+ * A primeira requisição de uma chave executa a leitura; as que chegam
+ * enquanto ela está em andamento esperam e recebem o mesmo resultado, sem ir
+ * ao banco de novo. Terminada a leitura, a chave sai do mapa: não é um cache,
+ * a requisição seguinte lê de novo
+ * </p>
+ * <p>
+ * Quem espera respeita o próprio prazo: se ele esgotar antes de a leitura
+ * terminar, desiste da espera
+ * </p>
+ */
+public class CoalescedorLeituras {
+
+    private final ConcurrentHashMap<Object, CompletableFuture<Mensagem>> emAndamento = new ConcurrentHashMap<>();
+    private final LongAdder requisicoes = new LongAdder();
+    private final LongAdder execucoes = new LongAdder();
+
+    /**
+     * Executa a leitura ou espera a leitura igual já em andamento
+     *
+     * @param chave Identifica leituras iguais (operação e dados); precisa de
+     * {@code equals} e {@code hashCode}
+     * @param prazo Prazo ({@link System#nanoTime()}) para esperar a leitura
+     * de outra requisição, 0 sem prazo
+     * @param leitura Executa a leitura de fato
+     * @return Resposta da leitura; quem esperou recebe uma cópia da mensagem
+     * com os mesmos dados
+     * @throws CancellationException Se o prazo esgotar durante a espera
+     */
+    public Mensagem executar(Object chave, long prazo, Supplier<Mensagem> leitura) {
+        requisicoes.increment();
+        CompletableFuture<Mensagem> atual = new CompletableFuture<>();
+        CompletableFuture<Mensagem> outra = emAndamento.putIfAbsent(chave, atual);
+        if (outra != null) {
+            return copiar(aguardar(outra, prazo));
+        }
+
+        execucoes.increment();
+        try {
+            Mensagem resposta = leitura.get();
+            atual.complete(resposta);
+            return resposta;
+        } catch (RuntimeException e) {
+            atual.completeExceptionally(e);
+            throw e;
+        } finally {
+            emAndamento.remove(chave, atual);
+        }
+    }
+
+    /**
+     * @return Métricas: {@code requisicoes}, {@code execucoes},
+     * {@code coalescidas} e {@code taxaCoalescencia} (fração das requisições
+     * atendidas por uma leitura de outra, 0 a 1)
+     */
+    public Map<String, Object> getMetricas() {
+        long total = requisicoes.sum();
+        long executadas = execucoes.sum();
+        Map<String, Object> metricas = new HashMap<>();
+        metricas.put("requisicoes", total);
+        metricas.put("execucoes", executadas);
+        metricas.put("coalescidas", total - executadas);
+        metricas.put("taxaCoalescencia", total > 0 ? (double) (total - executadas) / total : 0.0);
+        return metricas;
+    }
+
+    private static Mensagem aguardar(CompletableFuture<Mensagem> leitura, long prazo) {
+        try {
+            if (prazo == 0) {
+                return leitura.join();
+            }
+            return leitura.get(prazo - System.nanoTime(), TimeUnit.NANOSECONDS);
+        } catch (CompletionException | ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new CompletionException(e.getCause());
+        } catch (TimeoutException e) {
+            throw new CancellationException("Prazo da requisição esgotado à espera de leitura igual");
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new CancellationException("Espera interrompida");
+        }
+    }
+
+    /**
+     * Cada requisição recebe sua mensagem, já que o controlador ajusta a
+     * versão da resposta
+     */
+    private static Mensagem copiar(Mensagem resposta) {
+        Mensagem copia = new Mensagem(resposta.getOperacao(), resposta.getDados(), resposta.getStatus());
+        copia.setVersao(resposta.getVersao());
+        return copia;
+    }
+}
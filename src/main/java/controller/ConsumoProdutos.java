@@ -0,0 +1,131 @@
+package controller;
+
+import dao.MovimentaDAO;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import modelo.TotalMovimentacao;
+
+/**
+ * Taxa de consumo (unidades de SAIDA por dia) de cada produto, como média
+ * móvel exponencial no tempo
+ * <p>
+ * Cada saída de q unidades soma q/τ à taxa, e a taxa decai por e^(-Δt/τ) com
+ * o tempo: saídas recentes pesam mais e um produto parado tem a taxa caindo
+ * sozinha. Registrar e consultar custam O(1); o histórico só é lido uma vez,
+ * ao carregar
+ * </p>
+ */
+public class ConsumoProdutos {
+
+    /**
+     * Constante de tempo τ da média, em dias
+     */
+    private static final double CONSTANTE_TEMPO_DIAS = 14;
+
+    /**
+     * Dias de histórico lidos na carga (3τ: o que fica de fora pesa menos de
+     * 5%)
+     */
+    private static final int DIAS_CARGA = 42;
+
+    private static final double MILIS_POR_DIA = 24 * 60 * 60 * 1000d;
+
+    private final MovimentaDAO movimentaDAO;
+    private final ConcurrentHashMap<Integer, Taxa> taxas = new ConcurrentHashMap<>();
+
+    /**
+     * Saídas registradas a partir daqui entram pelo {@link #registrarSaida};
+     * as anteriores, pela carga do histórico
+     */
+    private final long inicioRegistro = System.currentTimeMillis();
+
+    /**
+     * @param movimentaDAO DAO usado para ler o histórico na carga
+     */
+    public ConsumoProdutos(MovimentaDAO movimentaDAO) {
+        this.movimentaDAO = movimentaDAO;
+    }
+
+    /**
+     * Carrega as taxas a partir dos totais diários de saída dos últimos
+     * {@value #DIAS_CARGA} dias, somando-as às saídas já registradas
+     */
+    public void carregar() {
+        LocalDateTime fim = LocalDateTime.ofInstant(Instant.ofEpochMilli(inicioRegistro), ZoneId.systemDefault());
+        List<TotalMovimentacao> totais = movimentaDAO.getTotaisPorPeriodo(MovimentaDAO.Agrupamento.PRODUTO,
+                MovimentaDAO.Intervalo.DIA, fim.minusDays(DIAS_CARGA), fim, null);
+
+        for (TotalMovimentacao total : totais) {
+            if (total.getSaidas() == 0) {
+                continue;
+            }
+            // O total do dia conta como uma saída ao meio-dia
+            long instante = LocalDate.parse(total.getPeriodo()).atTime(12, 0)
+                    .atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+            registrar(Integer.parseInt(total.getChave()), total.getSaidas(), Math.min(instante, inicioRegistro));
+        }
+    }
+
+    /**
+     * Soma uma saída à taxa do produto
+     *
+     * @param idProduto ID do produto
+     * @param quantidade Quantidade que saiu
+     */
+    public void registrarSaida(int idProduto, int quantidade) {
+        registrar(idProduto, quantidade, System.currentTimeMillis());
+    }
+
+    /**
+     * @param idProduto ID do produto
+     * @return Retorna o consumo médio atual, em unidades por dia
+     */
+    public double getConsumoDiario(int idProduto) {
+        Taxa taxa = taxas.get(idProduto);
+        return taxa != null ? taxa.valorEm(System.currentTimeMillis()) : 0;
+    }
+
+    /**
+     * Remove a taxa de um produto excluído
+     *
+     * @param idProduto ID do produto
+     */
+    public void descartar(int idProduto) {
+        taxas.remove(idProduto);
+    }
+
+    private void registrar(int idProduto, double quantidade, long instante) {
+        taxas.merge(idProduto, new Taxa(quantidade / CONSTANTE_TEMPO_DIAS, instante), Taxa::somar);
+    }
+
+    /**
+     * Valor da taxa em um instante; imutável para ser trocada por
+     * {@link ConcurrentHashMap#merge}
+     */
+    private static final class Taxa {
+
+        private final double valor;
+        private final long instante;
+
+        private Taxa(double valor, long instante) {
+            this.valor = valor;
+            this.instante = instante;
+        }
+
+        private double valorEm(long momento) {
+            if (momento <= instante) {
+                return valor;
+            }
+            return valor * Math.exp(-(momento - instante) / (CONSTANTE_TEMPO_DIAS * MILIS_POR_DIA));
+        }
+
+        private static Taxa somar(Taxa a, Taxa b) {
+            long momento = Math.max(a.instante, b.instante);
+            return new Taxa(a.valorEm(momento) + b.valorEm(momento), momento);
+        }
+    }
+}
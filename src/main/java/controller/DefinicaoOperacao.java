@@ -0,0 +1,164 @@
+package controller;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+import modelo.Mensagem;
+
+/**
+ * Operação registrada: tratador, tipo dos dados e metadados usados no
+ * despacho (leitura ou escrita, classe de execução e tempo limite)
+ *
+ * @param <T> Tipo dos dados da requisição
+ */
+public class DefinicaoOperacao<T> {
+
+    /**
+     * Se a operação só lê ou também altera dados
+     */
+    public enum Natureza {
+        LEITURA, ESCRITA
+    }
+
+    /**
+     * Classe de execução: operações da mesma classe têm custo parecido e
+     * podem ser atendidas pelo mesmo pool
+     */
+    public enum ClasseExecucao {
+        /**
+         * Responde da memória, sem banco
+         */
+        MEMORIA,
+        /**
+         * Poucas consultas ou escritas curtas no banco
+         */
+        BANCO,
+        /**
+         * Relatórios e consultas que percorrem muitos registros
+         */
+        RELATORIO,
+        /**
+         * Tarefas de manutenção longas (arquivamento, exportação)
+         */
+        LOTE
+    }
+
+    private final String nome;
+    private final Class<T> tipoDados;
+    private final Natureza natureza;
+    private final ClasseExecucao classeExecucao;
+    private final long tempoLimiteMs;
+    private final TratadorOperacao<T> tratador;
+
+    private final LongAdder chamadas = new LongAdder();
+    private final LongAdder erros = new LongAdder();
+    private final LongAdder tempoTotal = new LongAdder();
+
+    /**
+     * Construtor completo
+     *
+     * @param nome Nome da operação (constante de {@link util.Operacoes})
+     * @param tipoDados Tipo esperado em {@link Mensagem#getDados()}
+     * @param natureza Leitura ou escrita
+     * @param classeExecucao Classe de execução
+     * @param tempoLimiteMs Tempo máximo esperado de execução, em milissegundos
+     * @param tratador Tratador da operação
+     */
+    public DefinicaoOperacao(String nome, Class<T> tipoDados, Natureza natureza, ClasseExecucao classeExecucao,
+            long tempoLimiteMs, TratadorOperacao<T> tratador) {
+        this.nome = nome;
+        this.tipoDados = tipoDados;
+        this.natureza = natureza;
+        this.classeExecucao = classeExecucao;
+        this.tempoLimiteMs = tempoLimiteMs;
+        this.tratador = tratador;
+    }
+
+    /**
+     * Confere o tipo dos dados e executa o tratador, contando chamadas, erros
+     * e tempo
+     *
+     * @param dados Dados da requisição
+     * @return Resposta da operação
+     */
+    public Mensagem executar(Object dados) {
+        if (dados != null && !tipoDados.isInstance(dados)) {
+            erros.increment();
+            return new Mensagem(nome, "Dados inválidos para " + nome + ": esperado "
+                    + tipoDados.getSimpleName() + ", recebido " + dados.getClass().getSimpleName(), "ERRO");
+        }
+
+        long inicio = System.nanoTime();
+        chamadas.increment();
+        try {
+            Mensagem resposta = tratador.tratar(tipoDados.cast(dados));
+            if ("ERRO".equals(resposta.getStatus()) || "ERRO".equals(resposta.getOperacao())) {
+                erros.increment();
+            }
+            return resposta;
+        } catch (RuntimeException e) {
+            erros.increment();
+            throw e;
+        } finally {
+            tempoTotal.add(System.nanoTime() - inicio);
+        }
+    }
+
+    /**
+     * @return Retorna o nome da operação
+     */
+    public String getNome() {
+        return nome;
+    }
+
+    /**
+     * @return Retorna o tipo esperado dos dados
+     */
+    public Class<T> getTipoDados() {
+        return tipoDados;
+    }
+
+    /**
+     * @return Retorna se a operação é de leitura ou escrita
+     */
+    public Natureza getNatureza() {
+        return natureza;
+    }
+
+    /**
+     * @return Retorna a classe de execução
+     */
+    public ClasseExecucao getClasseExecucao() {
+        return classeExecucao;
+    }
+
+    /**
+     * @return Se requisições iguais e simultâneas podem receber a mesma
+     * resposta: leituras, menos as de {@link ClasseExecucao#LOTE}, que geram
+     * um arquivo por requisição
+     */
+    public boolean isCoalescivel() {
+        return natureza == Natureza.LEITURA && classeExecucao != ClasseExecucao.LOTE;
+    }
+
+    /**
+     * @return Retorna o tempo máximo esperado de execução, em milissegundos;
+     * é o prazo das requisições que não informam um
+     */
+    public long getTempoLimiteMs() {
+        return tempoLimiteMs;
+    }
+
+    /**
+     * @return Métricas da operação: {@code chamadas}, {@code erros} e
+     * {@code tempoMedioMicros}
+     */
+    public Map<String, Object> getMetricas() {
+        long total = chamadas.sum();
+        Map<String, Object> metricas = new HashMap<>();
+        metricas.put("chamadas", total);
+        metricas.put("erros", erros.sum());
+        metricas.put("tempoMedioMicros", total > 0 ? tempoTotal.sum() / total / 1000 : 0L);
+        return metricas;
+    }
+}
@@ -1,17 +1,61 @@
 package controller;
 
 import dao.CategoriaDAO;
+import dao.CheckpointEstoqueDAO;
+import dao.ConexaoDAO;
+import dao.ConflitoVersaoException;
+import dao.DAOAssincrono;
+import dao.DiarioMovimentacoes;
+import dao.ExecutorJdbc;
+import dao.IdempotenciaDAO;
+import dao.LoteDAO;
+import dao.MigracaoBanco;
 import dao.MovimentaDAO;
+import dao.MovimentacaoInvalidaException;
 import dao.ProdutoDAO;
+import dao.SnapshotCatalogo;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.Comparator;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
 import util.Operacoes;
-import java.util.stream.Collectors;
+import static controller.DefinicaoOperacao.ClasseExecucao.BANCO;
+import static controller.DefinicaoOperacao.ClasseExecucao.LOTE;
+import static controller.DefinicaoOperacao.ClasseExecucao.MEMORIA;
+import static controller.DefinicaoOperacao.ClasseExecucao.RELATORIO;
+import static controller.DefinicaoOperacao.Natureza.ESCRITA;
+import static controller.DefinicaoOperacao.Natureza.LEITURA;
+import modelo.Categoria;
+import modelo.CoberturaEstoque;
+import modelo.ItemMovimentacao;
+import modelo.Lote;
 import modelo.Mensagem;
+import modelo.Movimentacao;
 import modelo.Produto;
+import modelo.SaldoEstoque;
+import modelo.TotalMovimentacao;
 
 /**
  * Controlador principal do sistema de estoque Responsável por processar
@@ -25,97 +69,695 @@ public class EstoqueController {
     private ProdutoDAO produtoDAO;
     private CategoriaDAO categoriaDAO;
     private MovimentaDAO movimentacaoDAO;
+    private LoteDAO loteDAO;
+    private CheckpointEstoqueDAO checkpointDAO;
+    private final DAOAssincrono<ProdutoDAO> produtosAssincronos;
+    private final DAOAssincrono<CategoriaDAO> categoriasAssincronas;
+    private final DAOAssincrono<MovimentaDAO> movimentacoesAssincronas;
+    private final Catalogo catalogo = new Catalogo();
+    private final EstoqueLotes estoqueLotes;
+    private final ConsumoProdutos consumo;
+    private final RegistroIdempotencia idempotencia;
+    private final TravasProduto travas = new TravasProduto();
+    private final RegistroOperacoes operacoes = new RegistroOperacoes();
+    private final MotorRelatorios motorRelatorios = new MotorRelatorios(THREADS_RELATORIOS);
+    private final CoalescedorLeituras coalescedor = new CoalescedorLeituras();
+    private final ReservasEstoque reservas = new ReservasEstoque();
+    private final LongAdder prazosEsgotados = new LongAdder();
+
+    /**
+     * Quantidade de produtos por página quando o cliente não informa limite
+     */
+    private static final int TAMANHO_PAGINA_PADRAO = 100;
+
+    /**
+     * Maior página aceita no relatório de preços paginado
+     */
+    private static final int TAMANHO_PAGINA_MAXIMO = 1000;
+
+    /**
+     * Maior quantidade de movimentações devolvida por uma consulta de
+     * histórico
+     */
+    private static final int LIMITE_MAXIMO_HISTORICO = 10000;
+
+    /**
+     * Intervalo entre gravações do snapshot do catálogo, em minutos
+     */
+    private static final int INTERVALO_SNAPSHOT = 5;
+
+    /**
+     * Espera antes da primeira nova tentativa de sincronizar o catálogo com o
+     * banco, em segundos; dobra a cada falha, até {@link #INTERVALO_SNAPSHOT}
+     * minutos
+     */
+    private static final int ESPERA_SINCRONIZACAO = 5;
+
+    /**
+     * Intervalo entre tentativas de reaplicar o diário de movimentações, em
+     * segundos
+     */
+    private static final int INTERVALO_DIARIO = 10;
+
+    /**
+     * Intervalo entre checkpoints do estoque, em horas
+     */
+    private static final int INTERVALO_CHECKPOINT = 24;
+
+    /**
+     * Dias de movimentações mantidos na tabela ativa; as mais antigas vão para
+     * o arquivo (propriedade {@code estoque.historico.dias}, 0 desliga)
+     */
+    private static final int DIAS_HISTORICO_ATIVO = Integer.getInteger("estoque.historico.dias", 90);
+
+    /**
+     * Movimentações arquivadas por transação
+     */
+    private static final int TAMANHO_LOTE_ARQUIVO = 5000;
+
+    /**
+     * Prazo de reposição usado no ponto de pedido quando o cliente não
+     * informa, em dias
+     */
+    private static final int PRAZO_REPOSICAO_PADRAO = 7;
+
+    /**
+     * Se as respostas por chave de idempotência também são gravadas no banco
+     * (propriedade {@code estoque.idempotencia.persistir})
+     */
+    private static final boolean PERSISTIR_IDEMPOTENCIA = Boolean.getBoolean("estoque.idempotencia.persistir");
+
+    /**
+     * Threads do pool de relatórios (propriedade
+     * {@code estoque.relatorios.threads}, padrão: núcleos disponíveis)
+     */
+    private static final int THREADS_RELATORIOS = Integer.getInteger("estoque.relatorios.threads",
+            Runtime.getRuntime().availableProcessors());
+
+    /**
+     * Threads (e conexões) das chamadas ao banco feitas em paralelo
+     * (propriedade {@code estoque.jdbc.threads})
+     */
+    private static final int THREADS_JDBC = Integer.getInteger("estoque.jdbc.threads", 8);
+
+    /**
+     * Chamadas ao banco que podem esperar por uma thread livre
+     */
+    private static final int FILA_JDBC = 256;
+
+    /**
+     * Validade de uma reserva quando o cliente não informa, em segundos
+     */
+    private static final int VALIDADE_RESERVA_PADRAO = 15 * 60;
+
+    /**
+     * Maior validade aceita para uma reserva, em segundos
+     */
+    private static final int VALIDADE_RESERVA_MAXIMA = 7 * 24 * 60 * 60;
+
+    /**
+     * Maior prazo aceito para uma requisição, em milissegundos
+     */
+    private static final long TEMPO_LIMITE_MAXIMO = TimeUnit.HOURS.toMillis(24);
+
+    /**
+     * Pasta dos arquivos de exportação, apagados depois de enviados ao
+     * cliente
+     */
+    public static final Path DIRETORIO_EXPORTACOES = Paths.get("dados", "exportacoes");
+
+    private final SnapshotCatalogo snapshotCatalogo;
+    private final ScheduledExecutorService tarefasFundo;
+
+    /**
+     * Thread própria para vencer reservas, que não pode esperar o
+     * arquivamento e os checkpoints das tarefas de fundo
+     */
+    private final ScheduledExecutorService temporizadorReservas;
+
+    /**
+     * Thread própria do arquivamento, que copia lotes grandes e não pode
+     * segurar a reaplicação do diário, os checkpoints e os snapshots
+     */
+    private final ScheduledExecutorService tarefasArquivo;
+
+    /**
+     * Soma das versões de produtos e categorias no último snapshot gravado
+     */
+    private long versaoSnapshot;
+
+    /**
+     * Produtos com linhas de pedido reaplicadas do diário que ainda não foram
+     * relidos do banco; só usado pelas tarefas de fundo
+     */
+    private final Set<Integer> produtosReaplicados = new HashSet<>();
+
+    /**
+     * Versões dos dados de produtos e categorias, avançam a cada escrita
+     * <p>
+     * Começam no horário de inicialização para não coincidir com versões de
+     * execuções anteriores do servidor
+     * </p>
+     */
+    private final AtomicLong versaoProdutos = new AtomicLong(System.currentTimeMillis());
+    private final AtomicLong versaoCategorias = new AtomicLong(System.currentTimeMillis());
 
     /**
      * Construtor do controlador de estoque
+     * <p>
+     * Carrega o catálogo do último snapshot e deixa a correção de estoque
+     * mínimo/máximo e a sincronização com o banco para uma thread de fundo,
+     * assim o servidor já responde enquanto o banco é lido
+     * </p>
      */
     public EstoqueController() {
         this.produtoDAO = new ProdutoDAO();
         this.categoriaDAO = new CategoriaDAO();
-        this.movimentacaoDAO = new MovimentaDAO();
-        this.produtoDAO.corrigirEstoqueMinMax();
+        this.movimentacaoDAO = new MovimentaDAO(abrirDiario(), DIAS_HISTORICO_ATIVO);
+        this.loteDAO = new LoteDAO();
+        this.checkpointDAO = new CheckpointEstoqueDAO();
+        ExecutorJdbc executorJdbc = new ExecutorJdbc(THREADS_JDBC, FILA_JDBC);
+        this.produtosAssincronos = new DAOAssincrono<>(produtoDAO, executorJdbc);
+        this.categoriasAssincronas = new DAOAssincrono<>(categoriaDAO, executorJdbc);
+        this.movimentacoesAssincronas = new DAOAssincrono<>(movimentacaoDAO, executorJdbc);
+        this.estoqueLotes = new EstoqueLotes(loteDAO);
+        this.consumo = new ConsumoProdutos(movimentacaoDAO);
+        this.idempotencia = new RegistroIdempotencia(PERSISTIR_IDEMPOTENCIA ? new IdempotenciaDAO() : null);
+        this.snapshotCatalogo = new SnapshotCatalogo(Paths.get("dados", "catalogo.snap"));
+        registrarOperacoes();
+        this.tarefasFundo = Executors.newSingleThreadScheduledExecutor(tarefa -> {
+            Thread thread = new Thread(tarefa, "estoque-tarefas");
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        this.temporizadorReservas = Executors.newSingleThreadScheduledExecutor(tarefa -> {
+            Thread thread = new Thread(tarefa, "estoque-reservas");
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        this.tarefasArquivo = Executors.newSingleThreadScheduledExecutor(tarefa -> {
+            Thread thread = new Thread(tarefa, "estoque-arquivo");
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        SnapshotCatalogo.Conteudo snapshot = snapshotCatalogo.carregar();
+        if (snapshot != null) {
+            catalogo.substituir(snapshot.getProdutos());
+            catalogo.substituirCategorias(snapshot.getCategorias());
+            System.out.println("Catálogo carregado do snapshot: " + snapshot.getProdutos().size() + " produtos");
+        }
+
+        tarefasFundo.execute(new MigracaoBanco()::migrar);
+        tarefasFundo.execute(() -> sincronizarComBanco(1));
+        tarefasFundo.execute(this::carregarConsumo);
+        tarefasFundo.scheduleWithFixedDelay(this::reaplicarDiario, 0, INTERVALO_DIARIO, TimeUnit.SECONDS);
+        tarefasFundo.scheduleWithFixedDelay(this::gerarCheckpoints,
+                INTERVALO_CHECKPOINT, INTERVALO_CHECKPOINT, TimeUnit.HOURS);
+        tarefasArquivo.scheduleWithFixedDelay(this::arquivarMovimentacoes,
+                1, INTERVALO_CHECKPOINT, TimeUnit.HOURS);
+        tarefasFundo.scheduleWithFixedDelay(this::limparIdempotencia,
+                1, 1, TimeUnit.HOURS);
+        temporizadorReservas.scheduleWithFixedDelay(this::liberarReservasVencidas, 1, 1, TimeUnit.SECONDS);
+        tarefasFundo.scheduleWithFixedDelay(this::gravarSnapshot,
+                INTERVALO_SNAPSHOT, INTERVALO_SNAPSHOT, TimeUnit.MINUTES);
     }
 
     /**
-     * Processa operações recebidas do cliente
+     * Abre o diário local de movimentações
      *
-     * @param mensagem Mensagem com operação e dados
-     * @return Resposta da operação
+     * @return Diário aberto, ou {@code null} se não puder ser aberto (as
+     * movimentações vão direto para o banco)
      */
-    public Mensagem processarOperacao(Mensagem mensagem) {
+    private static DiarioMovimentacoes abrirDiario() {
         try {
-            switch (mensagem.getOperacao()) {
-                case Operacoes.CADASTRAR_PRODUTO:
-                    return cadastrarProduto((Produto) mensagem.getDados());
-
-                case Operacoes.LISTAR_PRODUTOS:
-                    return listarProdutos();
-
-                case Operacoes.ATUALIZAR_PRODUTO:
-                    return atualizarProduto((Produto) mensagem.getDados());
+            return new DiarioMovimentacoes(Paths.get("dados", "diario"));
+        } catch (IOException e) {
+            System.err.println("Erro ao abrir diário de movimentações: " + e.getMessage());
+            return null;
+        }
+    }
 
-                case Operacoes.EXCLUIR_PRODUTO:
-                    return excluirProduto((Integer) mensagem.getDados());
+    /**
+     * Grava no banco as movimentações que ficaram pendentes no diário
+     * <p>
+     * Linhas de pedido reaplicadas também mudam quantidades e lotes: só os
+     * produtos delas são relidos do banco (catálogo e fila de lotes), cada um
+     * com a sua trava, para que uma escrita concorrente não seja sobrescrita
+     * por uma leitura anterior a ela. Um produto que ainda tem linhas
+     * pendentes fica para depois, já que o banco ainda não as tem
+     * </p>
+     */
+    private void reaplicarDiario() {
+        try {
+            int aplicadas = movimentacaoDAO.reaplicarDiario(produtosReaplicados);
+            if (aplicadas > 0) {
+                System.out.println("Movimentações reaplicadas do diário: " + aplicadas);
+            }
+            boolean relidos = produtosReaplicados.removeIf(id -> travas.executar(id, () -> {
+                if (movimentacaoDAO.temPedidosPendentes(Collections.singleton(id))) {
+                    return false;
+                }
+                Produto gravado = produtoDAO.getProdutoById(id);
+                if (gravado != null) {
+                    catalogo.atualizar(gravado);
+                }
+                estoqueLotes.recarregar(id);
+                return true;
+            }));
+            if (relidos) {
+                versaoProdutos.incrementAndGet();
+            }
+        } catch (Exception e) {
+            System.err.println("Erro ao reaplicar diário: " + e.getMessage());
+        }
+    }
 
-                case Operacoes.CADASTRAR_CATEGORIA:
-                    return cadastrarCategoria((modelo.Categoria) mensagem.getDados());
+    /**
+     * Grava um checkpoint do estoque de todos os produtos
+     * <p>
+     * A data do checkpoint fica um minuto no passado, e nada é gravado
+     * enquanto o diário tiver movimentações pendentes, para que nenhuma
+     * movimentação anterior ao checkpoint chegue ao banco depois dele
+     * </p>
+     *
+     * @return Quantidade de checkpoints gravados
+     */
+    private int gerarCheckpoints() {
+        try {
+            if (movimentacaoDAO.temPendentesNoDiario()) {
+                return 0;
+            }
+            return checkpointDAO.gerarCheckpoints(LocalDateTime.now().minusMinutes(1));
+        } catch (Exception e) {
+            System.err.println("Erro ao gerar checkpoints de estoque: " + e.getMessage());
+            return 0;
+        }
+    }
 
-                case Operacoes.LISTAR_CATEGORIAS:
-                    return listarCategorias();
+    /**
+     * Arquiva as movimentações anteriores ao histórico ativo
+     * <p>
+     * Antes grava um checkpoint no início do histórico ativo, para que saldos
+     * a partir dele não precisem do arquivo. Como nos checkpoints, nada é
+     * feito enquanto o diário tiver movimentações pendentes
+     * </p>
+     *
+     * @return Quantidade de movimentações arquivadas
+     */
+    private int arquivarMovimentacoes() {
+        try {
+            LocalDateTime corte = movimentacaoDAO.getInicioHistoricoAtivo();
+            if (corte == null || movimentacaoDAO.temPendentesNoDiario()) {
+                return 0;
+            }
+            checkpointDAO.gerarCheckpoints(corte);
+            int arquivadas = movimentacaoDAO.arquivarMovimentacoes(corte, TAMANHO_LOTE_ARQUIVO);
+            if (arquivadas > 0) {
+                System.out.println("Movimentações arquivadas: " + arquivadas);
+            }
+            return arquivadas;
+        } catch (Exception e) {
+            System.err.println("Erro ao arquivar movimentações: " + e.getMessage());
+            return 0;
+        }
+    }
 
-                case Operacoes.ATUALIZAR_CATEGORIA:
-                    return atualizarCategoria((modelo.Categoria) mensagem.getDados());
+    /**
+     * Descarta as respostas vencidas das chaves de idempotência
+     */
+    private void limparIdempotencia() {
+        try {
+            idempotencia.limparVencidas();
+        } catch (Exception e) {
+            System.err.println("Erro ao limpar chaves de idempotência: " + e.getMessage());
+        }
+    }
 
-                case Operacoes.EXCLUIR_CATEGORIA:
-                    return excluirCategoria((Integer) mensagem.getDados());
+    /**
+     * Libera as reservas vencidas desde a última chamada
+     */
+    private void liberarReservasVencidas() {
+        try {
+            reservas.liberarVencidas();
+        } catch (Exception e) {
+            System.err.println("Erro ao liberar reservas vencidas: " + e.getMessage());
+        }
+    }
 
-                case Operacoes.OBTER_HISTORICO_MOVIMENTACOES:
-                    return obterHistoricoMovimentacoes((Integer) mensagem.getDados());
+    /**
+     * Carrega as taxas de consumo pelo histórico recente de saídas
+     */
+    private void carregarConsumo() {
+        try {
+            consumo.carregar();
+        } catch (Exception e) {
+            System.err.println("Erro ao carregar consumo dos produtos: " + e.getMessage());
+        }
+    }
 
-                case Operacoes.REALIZAR_MOVIMENTACAO:
-                    Map<String, Object> dadosMov = (Map<String, Object>) mensagem.getDados();
-                    Object idObj = dadosMov.get("idProduto");
-                    int idProduto;
+    /**
+     * Corrige estoque mínimo/máximo e recarrega o catálogo do banco,
+     * substituindo o que veio do snapshot
+     * <p>
+     * Se a leitura falhar ou vier vazia, o snapshot não é regravado e a
+     * sincronização é reagendada com espera crescente até dar certo. Uma
+     * lista de categorias vazia conta como falha, já que o DAO de categorias
+     * também a devolve quando o banco está fora; nesse caso as categorias do
+     * snapshot ficam
+     * </p>
+     *
+     * @param tentativa Número desta tentativa, a partir de 1
+     */
+    private void sincronizarComBanco(int tentativa) {
+        boolean completa = false;
+        try {
+            // As categorias não dependem dos produtos: são lidas enquanto o estoque é corrigido
+            CompletableFuture<List<Categoria>> categorias = categoriasAssincronas.executar(
+                    dao -> new ArrayList<>(dao.getMinhaLista()));
+            produtoDAO.corrigirEstoqueMinMax();
+
+            // Relê se alguma escrita aconteceu durante a leitura
+            long versao;
+            List<Produto> produtos;
+            do {
+                versao = versaoProdutos.get();
+                produtos = produtoDAO.getMinhaLista();
+                catalogo.substituir(produtos);
+            } while (versao != versaoProdutos.get());
+            versaoProdutos.incrementAndGet();
+
+            List<Categoria> lidas = categorias.join();
+            if (!lidas.isEmpty()) {
+                catalogo.substituirCategorias(lidas);
+                versaoCategorias.incrementAndGet();
+            }
 
-                    if (idObj instanceof Integer) {
-                        idProduto = (Integer) idObj;
-                    } else if (idObj instanceof Long) {
-                        idProduto = ((Long) idObj).intValue();
-                    } else {
-                        idProduto = ((Number) idObj).intValue();
-                    }
+            completa = !produtos.isEmpty() && !lidas.isEmpty();
+            if (completa) {
+                gravarSnapshot();
+            } else {
+                System.err.println("Banco devolveu catálogo vazio: snapshot mantido");
+            }
+        } catch (Exception e) {
+            System.err.println("Erro ao sincronizar catálogo com o banco: " + e.getMessage());
+        }
 
-                    return realizarMovimentacao(
-                            idProduto,
-                            (Integer) dadosMov.get("quantidade"),
-                            (String) dadosMov.get("tipo")
-                    );
+        if (!completa) {
+            long espera = Math.min((long) ESPERA_SINCRONIZACAO << Math.min(tentativa - 1, 16),
+                    TimeUnit.MINUTES.toSeconds(INTERVALO_SNAPSHOT));
+            System.err.println("Nova tentativa de sincronizar o catálogo em " + espera + " s");
+            tarefasFundo.schedule(() -> sincronizarComBanco(tentativa + 1), espera, TimeUnit.SECONDS);
+        }
+    }
 
-                case Operacoes.RELATORIO_PRECOS:
-                    return gerarRelatorioPrecos();
-                case "TESTE_CONEXAO":
-                    return new Mensagem("SUCESSO", "Conexão estabelecida com sucesso");
+    /**
+     * Grava o snapshot do catálogo se houve alguma escrita desde o último
+     */
+    private void gravarSnapshot() {
+        long versao = versaoProdutos.get() + versaoCategorias.get();
+        if (!catalogo.isCarregado() || versao == versaoSnapshot) {
+            return;
+        }
+        try {
+            snapshotCatalogo.gravar(new ArrayList<>(catalogo.ordenadosPorId()), catalogo.getCategorias());
+            versaoSnapshot = versao;
+        } catch (IOException e) {
+            System.err.println("Erro ao gravar snapshot do catálogo: " + e.getMessage());
+        }
+    }
 
-                case Operacoes.RELATORIO_BALANCO:
-                    return gerarBalancoFisicoFinanceiro();
+    /**
+     * Processa operações recebidas do cliente
+     * <p>
+     * Nas operações versionadas, se o cliente informar a versão atual dos
+     * dados a resposta vem sem dados e com status {@code NAO_MODIFICADO}; só
+     * respostas de sucesso levam a versão, para que um erro não faça o cliente
+     * pular os dados dessa versão. Nas escritas, uma requisição com chave de
+     * idempotência já executada recebe a resposta da primeira execução; as
+     * leituras são sempre executadas de novo
+     * </p>
+     * <p>
+     * O prazo é o informado pelo cliente ({@link Mensagem#getTempoLimiteMs()})
+     * ou, sem ele, o tempo limite registrado para a operação. A operação que
+     * já o tiver esgotado ao ser executada não começa, e as leituras têm as
+     * consultas ao banco canceladas quando ele esgota; em ambos os casos a
+     * resposta vem com status {@code TEMPO_ESGOTADO}
+     * </p>
+     *
+     * @param mensagem Mensagem com operação e dados
+     * @return Resposta da operação
+     */
+    public Mensagem processarOperacao(Mensagem mensagem) {
+        long prazo = calcularPrazo(mensagem);
+        long versaoAtual = getVersaoDados(mensagem.getOperacao());
+        if (versaoAtual < 0) {
+            if (mensagem.getChaveIdempotencia() != null && isEscrita(mensagem.getOperacao())) {
+                return idempotencia.executar(mensagem.getChaveIdempotencia(), mensagem.getOperacao(),
+                        () -> executarOperacao(mensagem, prazo));
+            }
+            return executarOperacao(mensagem, prazo);
+        }
 
-                case Operacoes.RELATORIO_ESTOQUE_MINIMO:
-                    return gerarRelatorioEstoqueMinimo();
+        if (mensagem.getVersao() == versaoAtual) {
+            Mensagem resposta = new Mensagem(mensagem.getOperacao(), null, "NAO_MODIFICADO");
+            resposta.setVersao(versaoAtual);
+            return resposta;
+        }
 
-                case Operacoes.RELATORIO_ESTOQUE_MAXIMO:
-                    return gerarRelatorioEstoqueMaximo();
+        Mensagem resposta = executarOperacao(mensagem, prazo);
+        if (isSucesso(resposta)) {
+            resposta.setVersao(versaoAtual);
+        }
+        return resposta;
+    }
 
-                case Operacoes.RELATORIO_PRODUTOS_CATEGORIA:
-                    return gerarRelatorioProdutosPorCategoria();
+    /**
+     * @param operacao Nome da operação
+     * @return Se a operação está registrada como escrita
+     */
+    private boolean isEscrita(String operacao) {
+        DefinicaoOperacao<?> definicao = operacoes.buscar(operacao);
+        return definicao != null && definicao.getNatureza() == DefinicaoOperacao.Natureza.ESCRITA;
+    }
 
-                case Operacoes.REAJUSTAR_PRECOS:
-                    return reajustarPrecos((Produto) mensagem.getDados());
+    /**
+     * @param resposta Resposta de uma operação
+     * @return Se a resposta é de sucesso (algumas operações antigas indicam
+     * o sucesso no campo da operação)
+     */
+    private static boolean isSucesso(Mensagem resposta) {
+        return "SUCESSO".equals(resposta.getStatus()) || "SUCESSO".equals(resposta.getOperacao());
+    }
 
-                default:
-                    return new Mensagem("ERRO", "Operação não suportada: " + mensagem.getOperacao());
+    /**
+     * Executa a operação solicitada sem considerar a versão dos dados
+     *
+     * @param mensagem Mensagem com operação e dados
+     * @param prazo Prazo da requisição ({@link System#nanoTime()}), 0 sem
+     * prazo
+     * @return Resposta da operação
+     */
+    private Mensagem executarOperacao(Mensagem mensagem, long prazo) {
+        DefinicaoOperacao<?> definicao = operacoes.buscar(mensagem.getOperacao());
+        if (definicao == null) {
+            return new Mensagem("ERRO", "Operação não suportada: " + mensagem.getOperacao());
+        }
+        // Esgotou esperando (pela mesma chave de idempotência, por exemplo): o cliente já desistiu
+        if (isEsgotado(prazo)) {
+            return tempoEsgotado(definicao);
+        }
+        // Cada cliente tem sua thread: marcar a escrita nela mantém as próximas leituras do cliente no primário
+        boolean escrita = definicao.getNatureza() == ESCRITA;
+        if (escrita) {
+            ConexaoDAO.marcarEscrita();
+        }
+        try {
+            Object dados = mensagem.getDados();
+            // Escrita começada vai até o fim: parar no meio deixaria o catálogo diferente do banco
+            if (escrita) {
+                return definicao.executar(dados);
+            }
+            // Quem escreveu há pouco lê do primário e não pode pegar carona em uma leitura anterior à escrita
+            if (definicao.isCoalescivel() && !ConexaoDAO.isLeituraNoPrimario()) {
+                // Com a versão dos dados na chave, quem viu uma versão nova não recebe uma leitura começada antes dela
+                long versao = getVersaoDados(mensagem.getOperacao());
+                List<Object> chave = versao < 0 ? Arrays.asList(mensagem.getOperacao(), dados)
+                        : Arrays.asList(mensagem.getOperacao(), dados, versao);
+                Mensagem resposta = coalescedor.executar(chave, prazo,
+                        () -> executarLeitura(definicao, dados, prazo));
+                // O prazo esgotado pode ter sido o da requisição que fez a leitura, não o desta
+                if (!"TEMPO_ESGOTADO".equals(resposta.getStatus()) || isEsgotado(prazo)) {
+                    return resposta;
+                }
             }
+            return executarLeitura(definicao, dados, prazo);
         } catch (Exception e) {
+            if (isEsgotado(prazo)) {
+                return tempoEsgotado(definicao);
+            }
             return new Mensagem("ERRO", "Erro ao processar operação: " + e.getMessage());
+        } finally {
+            if (escrita) {
+                ConexaoDAO.marcarEscrita();
+            }
+        }
+    }
+
+    /**
+     * Executa uma leitura com o prazo aplicado às consultas ao banco
+     * <p>
+     * Os DAOs tratam a consulta cancelada como erro e devolvem a lista vazia,
+     * então a resposta de uma leitura que esgotou o prazo é descartada
+     * </p>
+     *
+     * @param definicao Operação de leitura
+     * @param dados Dados da requisição
+     * @param prazo Prazo da requisição, 0 sem prazo
+     * @return Resposta da leitura ou {@code TEMPO_ESGOTADO}
+     */
+    private Mensagem executarLeitura(DefinicaoOperacao<?> definicao, Object dados, long prazo) {
+        ConexaoDAO.definirPrazo(prazo);
+        try {
+            Mensagem resposta = definicao.executar(dados);
+            return isEsgotado(prazo) ? tempoEsgotado(definicao) : resposta;
+        } catch (RuntimeException e) {
+            if (isEsgotado(prazo)) {
+                return tempoEsgotado(definicao);
+            }
+            throw e;
+        } finally {
+            ConexaoDAO.definirPrazo(0);
+        }
+    }
+
+    /**
+     * @param mensagem Requisição; sem prazo informado pelo cliente, vale o
+     * tempo limite registrado para a operação
+     * @return Instante ({@link System#nanoTime()}) em que o prazo esgota, 0
+     * sem prazo
+     */
+    private long calcularPrazo(Mensagem mensagem) {
+        long tempoLimiteMs = mensagem.getTempoLimiteMs();
+        if (tempoLimiteMs <= 0) {
+            DefinicaoOperacao<?> definicao = operacoes.buscar(mensagem.getOperacao());
+            tempoLimiteMs = definicao != null ? definicao.getTempoLimiteMs() : 0;
+        }
+        if (tempoLimiteMs <= 0) {
+            return 0;
+        }
+        return System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(Math.min(tempoLimiteMs, TEMPO_LIMITE_MAXIMO));
+    }
+
+    private static boolean isEsgotado(long prazo) {
+        return prazo != 0 && System.nanoTime() - prazo >= 0;
+    }
+
+    private Mensagem tempoEsgotado(DefinicaoOperacao<?> definicao) {
+        prazosEsgotados.increment();
+        return new Mensagem(definicao.getNome(), "Prazo da requisição esgotado", "TEMPO_ESGOTADO");
+    }
+
+    /**
+     * Registra as operações atendidas, com o tipo dos dados, a natureza
+     * (leitura ou escrita), a classe de execução e o tempo limite de cada uma
+     */
+    private void registrarOperacoes() {
+        operacoes.registrar(Operacoes.CADASTRAR_PRODUTO, Produto.class, ESCRITA, BANCO, 5000,
+                this::cadastrarProduto);
+        operacoes.registrar(Operacoes.LISTAR_PRODUTOS, Object.class, LEITURA, MEMORIA, 1000,
+                dados -> listarProdutos());
+        operacoes.registrar(Operacoes.ATUALIZAR_PRODUTO, Produto.class, ESCRITA, BANCO, 5000,
+                this::atualizarProduto);
+        operacoes.registrar(Operacoes.EXCLUIR_PRODUTO, Integer.class, ESCRITA, BANCO, 5000,
+                this::excluirProduto);
+        operacoes.registrar(Operacoes.CADASTRAR_CATEGORIA, Categoria.class, ESCRITA, BANCO, 5000,
+                this::cadastrarCategoria);
+        operacoes.registrar(Operacoes.LISTAR_CATEGORIAS, Object.class, LEITURA, MEMORIA, 1000,
+                dados -> listarCategorias());
+        operacoes.registrar(Operacoes.ATUALIZAR_CATEGORIA, Categoria.class, ESCRITA, BANCO, 5000,
+                this::atualizarCategoria);
+        operacoes.registrar(Operacoes.EXCLUIR_CATEGORIA, Integer.class, ESCRITA, BANCO, 5000,
+                this::excluirCategoria);
+
+        operacoes.registrar(Operacoes.OBTER_HISTORICO_MOVIMENTACOES, Object.class, LEITURA, BANCO, 10000,
+                this::obterHistoricoMovimentacoes);
+        operacoes.registrar(Operacoes.LISTAR_MOVIMENTACOES, RegistroOperacoes.MAPA, LEITURA, BANCO, 10000,
+                this::listarMovimentacoes);
+        operacoes.registrar(Operacoes.RECONSTRUIR_ESTOQUE, Integer.class, LEITURA, RELATORIO, 60000,
+                this::reconstruirEstoque);
+        operacoes.registrar(Operacoes.ESTOQUE_EM_DATA, Object.class, LEITURA, RELATORIO, 30000,
+                this::consultarEstoqueEmData);
+        operacoes.registrar(Operacoes.GERAR_CHECKPOINT_ESTOQUE, Object.class, ESCRITA, LOTE, 600000,
+                dados -> new Mensagem("GERAR_CHECKPOINT_ESTOQUE", gerarCheckpoints(), "SUCESSO"));
+        operacoes.registrar(Operacoes.ARQUIVAR_MOVIMENTACOES, Object.class, ESCRITA, LOTE, 600000,
+                dados -> new Mensagem("ARQUIVAR_MOVIMENTACOES", arquivarMovimentacoes(), "SUCESSO"));
+        operacoes.registrar(Operacoes.EXPORTAR_MOVIMENTACOES, RegistroOperacoes.MAPA, LEITURA, LOTE, 600000,
+                this::exportarMovimentacoes);
+        operacoes.registrar(Operacoes.AGREGAR_MOVIMENTACOES, RegistroOperacoes.MAPA, LEITURA, RELATORIO, 30000,
+                this::agregarMovimentacoes);
+        operacoes.registrar(Operacoes.REALIZAR_MOVIMENTACAO, RegistroOperacoes.MAPA, ESCRITA, BANCO, 5000,
+                this::realizarMovimentacao);
+        operacoes.registrar(Operacoes.REALIZAR_PEDIDO, Object.class, ESCRITA, BANCO, 10000,
+                this::realizarPedido);
+
+        operacoes.registrar(Operacoes.RESERVAR_ESTOQUE, RegistroOperacoes.MAPA, ESCRITA, MEMORIA, 5000,
+                this::reservarEstoque);
+        operacoes.registrar(Operacoes.CONFIRMAR_RESERVA, Number.class, ESCRITA, BANCO, 10000,
+                this::confirmarReserva);
+        operacoes.registrar(Operacoes.LIBERAR_RESERVA, Number.class, ESCRITA, MEMORIA, 1000,
+                this::liberarReserva);
+        operacoes.registrar(Operacoes.CONSULTAR_DISPONIBILIDADE, Number.class, LEITURA, MEMORIA, 1000,
+                this::consultarDisponibilidade);
+
+        operacoes.registrar(Operacoes.LISTAR_LOTES, Integer.class, LEITURA, BANCO, 5000,
+                this::listarLotes);
+        operacoes.registrar(Operacoes.LISTAR_LOTES_VENCENDO, Integer.class, LEITURA, BANCO, 5000,
+                this::listarLotesVencendo);
+
+        operacoes.registrar(Operacoes.RELATORIO_PRECOS, Object.class, LEITURA, MEMORIA, 1000,
+                dados -> gerarRelatorioPrecos());
+        operacoes.registrar(Operacoes.RELATORIO_PRECOS_PAGINADO, RegistroOperacoes.MAPA, LEITURA, MEMORIA, 1000,
+                this::gerarRelatorioPrecosPaginado);
+        operacoes.registrar(Operacoes.OBTER_METRICAS, Object.class, LEITURA, MEMORIA, 1000,
+                dados -> new Mensagem("OBTER_METRICAS", obterMetricas(), "SUCESSO"));
+        operacoes.registrar(Operacoes.TESTE_CONEXAO, Object.class, LEITURA, MEMORIA, 1000,
+                dados -> new Mensagem("SUCESSO", "Conexão estabelecida com sucesso"));
+        operacoes.registrar(Operacoes.RELATORIO_BALANCO, Object.class, LEITURA, RELATORIO, 30000,
+                dados -> gerarBalancoFisicoFinanceiro());
+        operacoes.registrar(Operacoes.RELATORIO_ESTOQUE_MINIMO, Object.class, LEITURA, RELATORIO, 30000,
+                dados -> gerarRelatorioEstoqueMinimo());
+        operacoes.registrar(Operacoes.RELATORIO_ESTOQUE_MAXIMO, Object.class, LEITURA, RELATORIO, 30000,
+                dados -> gerarRelatorioEstoqueMaximo());
+        operacoes.registrar(Operacoes.RELATORIO_COBERTURA_ESTOQUE, RegistroOperacoes.MAPA, LEITURA, RELATORIO, 30000,
+                this::gerarRelatorioCobertura);
+        operacoes.registrar(Operacoes.RELATORIO_PRODUTOS_CATEGORIA, Object.class, LEITURA, RELATORIO, 30000,
+                dados -> gerarRelatorioProdutosPorCategoria());
+        operacoes.registrar(Operacoes.REAJUSTAR_PRECOS, Produto.class, ESCRITA, BANCO, 30000,
+                this::reajustarPrecos);
+    }
+
+    /**
+     * Retorna a versão atual dos dados usados por uma operação de leitura
+     *
+     * @param operacao Operação solicitada
+     * @return Versão dos dados, ou -1 se a resposta da operação não pode ser
+     * reaproveitada
+     */
+    public long getVersaoDados(String operacao) {
+        if (operacao == null) {
+            return -1;
+        }
+        switch (operacao) {
+            case Operacoes.LISTAR_PRODUTOS:
+            case Operacoes.RELATORIO_PRECOS:
+                return versaoProdutos.get();
+            case Operacoes.LISTAR_CATEGORIAS:
+                return versaoCategorias.get();
+            default:
+                return -1;
         }
     }
 
@@ -126,7 +768,8 @@ public class EstoqueController {
      */
     private Mensagem listarProdutos() {
         try {
-            ArrayList<Produto> produtos = (ArrayList<Produto>) produtoDAO.getMinhaLista();
+            catalogo.garantirCarregado(produtoDAO::getMinhaLista);
+            ArrayList<Produto> produtos = new ArrayList<>(catalogo.ordenadosPorId());
             return new Mensagem("LISTAR_PRODUTOS", produtos, "SUCESSO");
         } catch (Exception e) {
             return new Mensagem("LISTAR_PRODUTOS", "Erro ao listar produtos: " + e.getMessage(), "ERRO");
@@ -147,6 +790,11 @@ public class EstoqueController {
             boolean sucesso = produtoDAO.insertProdutoBD(produto);
 
             if (sucesso) {
+                travas.executar(produto.getId(), () -> {
+                    sincronizarComAjuste(produto.getId(), produto.getQuantidade(), "Estoque inicial");
+                    return null;
+                });
+                versaoProdutos.incrementAndGet();
                 return new Mensagem("CADASTRAR_PRODUTO", "Produto cadastrado com ID: " + produto.getId(), "SUCESSO");
             } else {
                 return new Mensagem("CADASTRAR_PRODUTO", "Erro ao salvar no banco de dados", "ERRO");
@@ -158,20 +806,35 @@ public class EstoqueController {
 
     /**
      * Atualiza um produto existente
+     * <p>
+     * Se o produto trouxer a versão lida, a alteração só é gravada se ninguém
+     * tiver alterado o produto depois dela
+     * </p>
      *
      * @param produto Produto com dados atualizados
-     * @return Mensagem de sucesso ou erro
+     * @return Mensagem de sucesso ou erro, ou status {@code CONFLITO} com o
+     * produto atual se ele mudou desde a versão informada
      */
     private Mensagem atualizarProduto(Produto produto) {
-        try {
-            if (produtoDAO.updateProdutoBD(produto)) {
-                return new Mensagem("ATUALIZAR_PRODUTO", "Produto atualizado com sucesso", "SUCESSO");
-            } else {
-                return new Mensagem("ATUALIZAR_PRODUTO", "Erro ao atualizar produto", "ERRO");
+        // Travado para que o ajuste calculado e o catálogo não misturem movimentações concorrentes
+        return travas.executar(produto.getId(), () -> {
+            try {
+                Produto anterior = produtoDAO.getProdutoById(produto.getId());
+                if (produtoDAO.updateProdutoBD(produto)) {
+                    sincronizarComAjuste(produto.getId(),
+                            anterior != null ? produto.getQuantidade() - anterior.getQuantidade() : 0, "Ajuste manual");
+                    versaoProdutos.incrementAndGet();
+                    return new Mensagem("ATUALIZAR_PRODUTO", "Produto atualizado com sucesso", "SUCESSO");
+                } else {
+                    return new Mensagem("ATUALIZAR_PRODUTO", "Erro ao atualizar produto", "ERRO");
+                }
+            } catch (ConflitoVersaoException e) {
+                atualizarCatalogo(e.getAtual().getId(), e.getAtual());
+                return new Mensagem("ATUALIZAR_PRODUTO", e.getAtual(), "CONFLITO");
+            } catch (Exception e) {
+                return new Mensagem("ATUALIZAR_PRODUTO", "Erro ao atualizar produto: " + e.getMessage(), "ERRO");
             }
-        } catch (Exception e) {
-            return new Mensagem("ATUALIZAR_PRODUTO", "Erro ao atualizar produto: " + e.getMessage(), "ERRO");
-        }
+        });
     }
 
     /**
@@ -181,15 +844,21 @@ public class EstoqueController {
      * @return Mensagem de sucesso ou erro
      */
     private Mensagem excluirProduto(int id) {
-        try {
-            if (produtoDAO.deleteProdutoBD(id)) {
-                return new Mensagem("SUCESSO", "Produto excluído com sucesso");
-            } else {
-                return new Mensagem("ERRO", "Erro ao excluir produto");
+        return travas.executar(id, () -> {
+            try {
+                if (produtoDAO.deleteProdutoBD(id)) {
+                    catalogo.remover(id);
+                    versaoProdutos.incrementAndGet();
+                    estoqueLotes.descartar(id);
+                    consumo.descartar(id);
+                    return new Mensagem("SUCESSO", "Produto excluído com sucesso");
+                } else {
+                    return new Mensagem("ERRO", "Erro ao excluir produto");
+                }
+            } catch (Exception e) {
+                return new Mensagem("ERRO", "Erro ao excluir produto: " + e.getMessage());
             }
-        } catch (Exception e) {
-            return new Mensagem("ERRO", "Erro ao excluir produto: " + e.getMessage());
-        }
+        });
     }
 
     /**
@@ -199,7 +868,8 @@ public class EstoqueController {
      */
     private Mensagem listarCategorias() {
         try {
-            ArrayList<modelo.Categoria> categorias = (ArrayList<modelo.Categoria>) categoriaDAO.getMinhaLista();
+            catalogo.garantirCategorias(() -> new ArrayList<>(categoriaDAO.getMinhaLista()));
+            ArrayList<Categoria> categorias = new ArrayList<>(catalogo.getCategorias());
             return new Mensagem("LISTAR_CATEGORIAS", categorias, "SUCESSO");
         } catch (Exception e) {
             return new Mensagem("LISTAR_CATEGORIAS", "Erro ao listar categorias: " + e.getMessage(), "ERRO");
@@ -215,6 +885,8 @@ public class EstoqueController {
     private Mensagem cadastrarCategoria(modelo.Categoria categoria) {
         try {
             if (categoriaDAO.insertCategoriaBD(categoria)) {
+                recarregarCategorias();
+                versaoCategorias.incrementAndGet();
                 return new Mensagem("CADASTRAR_CATEGORIA", "Categoria cadastrada com sucesso", "SUCESSO");
             } else {
                 return new Mensagem("CADASTRAR_CATEGORIA", "Erro ao cadastrar categoria", "ERRO");
@@ -233,6 +905,8 @@ public class EstoqueController {
     private Mensagem atualizarCategoria(modelo.Categoria categoria) {
         try {
             if (categoriaDAO.updateCategoriaBD(categoria)) {
+                recarregarCategorias();
+                versaoCategorias.incrementAndGet();
                 return new Mensagem("SUCESSO", "Categoria atualizada com sucesso");
             } else {
                 return new Mensagem("ERRO", "Erro ao atualizar categoria");
@@ -251,6 +925,8 @@ public class EstoqueController {
     private Mensagem excluirCategoria(int id) {
         try {
             if (categoriaDAO.deleteCategoriaBD(id)) {
+                recarregarCategorias();
+                versaoCategorias.incrementAndGet();
                 return new Mensagem("SUCESSO", "Categoria excluída com sucesso");
             } else {
                 return new Mensagem("ERRO", "Erro ao excluir categoria");
@@ -260,144 +936,896 @@ public class EstoqueController {
         }
     }
 
+    /**
+     * Realiza uma movimentação a partir dos dados enviados pelo cliente
+     *
+     * @param dadosMov Mapa com {@code idProduto}, {@code quantidade},
+     * {@code tipo} e, opcionalmente, {@code validade}
+     * @return Mensagem com resultado da operação
+     */
+    private Mensagem realizarMovimentacao(Map<String, Object> dadosMov) {
+        Object idObj = dadosMov.get("idProduto");
+        int idProduto;
+
+        if (idObj instanceof Integer) {
+            idProduto = (Integer) idObj;
+        } else if (idObj instanceof Long) {
+            idProduto = ((Long) idObj).intValue();
+        } else {
+            idProduto = ((Number) idObj).intValue();
+        }
+
+        return realizarMovimentacao(
+                idProduto,
+                (Integer) dadosMov.get("quantidade"),
+                (String) dadosMov.get("tipo"),
+                converterData(dadosMov.get("validade"))
+        );
+    }
+
     /**
      * Realiza movimentação de estoque
+     * <p>
+     * É um pedido de uma linha só: a quantidade e a movimentação são gravadas
+     * na mesma transação, com o produto bloqueado
+     * </p>
      *
      * @param idProduto ID do produto
      * @param quantidade Quantidade a movimentar
      * @param tipo Tipo de movimentação (ENTRADA/SAIDA)
+     * @param validade Validade do lote criado pela ENTRADA ({@code null} se o
+     * produto não vence)
      * @return Mensagem com resultado da operação
      */
-    private Mensagem realizarMovimentacao(int idProduto, int quantidade, String tipo) {
+    private Mensagem realizarMovimentacao(int idProduto, int quantidade, String tipo, LocalDate validade) {
         try {
-            Produto produto = buscarProdutoPorId(idProduto);
+            List<ItemMovimentacao> itens = Collections.singletonList(
+                    new ItemMovimentacao(idProduto, quantidade, tipo, validade));
+            List<Lote> lotesConsumidos = new ArrayList<>();
+            Produto produto = executarPedido(itens, "Movimentação sistema", lotesConsumidos).get(idProduto);
             if (produto == null) {
                 return new Mensagem("ERRO", "Produto não encontrado com ID: " + idProduto);
             }
-
-            int estoqueMinimoOriginal = produto.getEstoqueminimo();
-            int estoqueMaximoOriginal = produto.getEstoquemaximo();
-
-            if (tipo.equals("SAIDA") && produto.getQuantidade() < quantidade) {
-                return new Mensagem("ERRO", "Estoque insuficiente para " + produto.getProduto());
-            }
-
-            int novaQuantidade;
-            if (tipo.equals("ENTRADA")) {
-                novaQuantidade = produto.getQuantidade() + quantidade;
-            } else {
-                novaQuantidade = produto.getQuantidade() - quantidade;
-            }
-
-            produto.setQuantidade(novaQuantidade);
-            produto.setEstoqueminimo(estoqueMinimoOriginal);
-            produto.setEstoquemaximo(estoqueMaximoOriginal);
-
-            boolean atualizado = produtoDAO.updateProdutoBD(produto);
-
-            if (atualizado) {
-                movimentacaoDAO.registrarMovimentacao(
-                        produto.getId(), quantidade, tipo, "Movimentação sistema"
-                );
-            }
+            int novaQuantidade = produto.getQuantidade();
 
             Map<String, Object> resposta = new HashMap<>();
             resposta.put("produto", criarMapProduto(produto));
+            if (!lotesConsumidos.isEmpty()) {
+                resposta.put("lotes", lotesConsumidos);
+            }
 
             String status = "SUCESSO";
 
-            if (tipo.equals("ENTRADA") && novaQuantidade > estoqueMaximoOriginal) {
+            if (tipo.equals("ENTRADA") && novaQuantidade > produto.getEstoquemaximo()) {
                 status = "AVISO_ESTOQUE_MAXIMO";
                 resposta.put("alerta", "Quantidade acima do máximo permitido para: " + produto.getProduto());
-            } else if (tipo.equals("SAIDA") && novaQuantidade < estoqueMinimoOriginal) {
+            } else if (tipo.equals("SAIDA") && novaQuantidade < produto.getEstoqueminimo()) {
                 status = "AVISO_ESTOQUE_MINIMO";
                 resposta.put("alerta", "Quantidade abaixo do mínimo para: " + produto.getProduto());
             }
 
             return new Mensagem(status, resposta);
 
+        } catch (MovimentacaoInvalidaException e) {
+            return new Mensagem("ERRO", e.getMessage());
         } catch (Exception e) {
             return new Mensagem("ERRO", "Erro na movimentação: " + e.getMessage());
         }
     }
 
     /**
-     * Obtém histórico de movimentações de um produto
+     * Realiza várias movimentações como um pedido só: ou todas as linhas são
+     * gravadas, ou nenhuma
      *
-     * @param idProduto ID do produto
-     * @return Mensagem com histórico de movimentações
+     * @param dados Lista de linhas, ou mapa com {@code itens} (lista de
+     * linhas) e o opcional {@code observacao}. Cada linha é um
+     * {@link ItemMovimentacao} ou um mapa com {@code idProduto},
+     * {@code quantidade}, {@code tipo} e o opcional {@code validade}
+     * @return Mensagem com {@code quantidades} (nova quantidade por ID de
+     * produto), {@code lotes} consumidos e {@code alertas} de estoque mínimo
+     * e máximo
      */
-    private Mensagem obterHistoricoMovimentacoes(int idProduto) {
+    private Mensagem realizarPedido(Object dados) {
         try {
-            List<Map<String, Object>> historico = movimentacaoDAO.getHistoricoPorProduto(idProduto);
-
-            List<Map<String, Object>> historicoFormatado = new ArrayList<>();
-            for (Map<String, Object> mov : historico) {
-                Map<String, Object> movFormatada = new HashMap<>();
-
-                if (mov.get("data_hora") instanceof java.time.LocalDateTime) {
-                    java.time.LocalDateTime dataHora = (java.time.LocalDateTime) mov.get("data_hora");
-                    String dataFormatada = dataHora.format(java.time.format.DateTimeFormatter.ofPattern("dd/MM/yyyy HH:mm:ss"));
-                    movFormatada.put("data_hora", dataFormatada);
-                } else {
-                    movFormatada.put("data_hora", mov.get("data_hora").toString());
+            List<?> linhas;
+            String observacao = "Pedido";
+            if (dados instanceof Map<?, ?>) {
+                Map<?, ?> pedido = (Map<?, ?>) dados;
+                linhas = (List<?>) pedido.get("itens");
+                if (pedido.get("observacao") != null) {
+                    observacao = pedido.get("observacao").toString();
                 }
+            } else {
+                linhas = (List<?>) dados;
+            }
+            if (linhas == null) {
+                return new Mensagem("REALIZAR_PEDIDO", "Pedido sem itens", "ERRO");
+            }
 
-                movFormatada.put("tipo", mov.get("tipo"));
-                movFormatada.put("quantidade", mov.get("quantidade"));
-                movFormatada.put("observacao", mov.get("observacao") != null ? mov.get("observacao") : "");
-                historicoFormatado.add(movFormatada);
+            List<ItemMovimentacao> itens = new ArrayList<>(linhas.size());
+            for (Object linha : linhas) {
+                itens.add(converterItem(linha));
             }
 
-            return new Mensagem("SUCESSO", historicoFormatado);
+            List<Lote> lotesConsumidos = new ArrayList<>();
+            Map<Integer, Produto> produtos = executarPedido(itens, observacao, lotesConsumidos);
+            return new Mensagem("REALIZAR_PEDIDO", resumirPedido(produtos, lotesConsumidos), "SUCESSO");
 
+        } catch (MovimentacaoInvalidaException e) {
+            return new Mensagem("REALIZAR_PEDIDO", e.getMessage(), "ERRO");
         } catch (Exception e) {
-            return new Mensagem("ERRO", "Erro ao obter histórico: " + e.getMessage());
+            return new Mensagem("REALIZAR_PEDIDO", "Erro no pedido: " + e.getMessage(), "ERRO");
         }
     }
 
     /**
-     * Gera relatório de preços
+     * Monta a resposta de um pedido gravado
      *
-     * @return Mensagem com produtos ordenados por nome
+     * @param produtos Produtos do pedido com a nova quantidade
+     * @param lotesConsumidos Lotes consumidos pelas saídas
+     * @return Mapa com {@code quantidades}, {@code lotes} e {@code alertas}
      */
-    private Mensagem gerarRelatorioPrecos() {
-        try {
-            ArrayList<Produto> produtos = (ArrayList<Produto>) produtoDAO.getMinhaLista();
-            List<Produto> produtosOrdenados = produtos.stream()
-                    .sorted(Comparator.comparing(Produto::getProduto))
-                    .collect(Collectors.toList());
-            return new Mensagem("SUCESSO", produtosOrdenados);
-        } catch (Exception e) {
-            return new Mensagem("ERRO", "Erro ao gerar relatório de preços: " + e.getMessage());
+    private Map<String, Object> resumirPedido(Map<Integer, Produto> produtos, List<Lote> lotesConsumidos) {
+        Map<Integer, Integer> quantidades = new HashMap<>();
+        List<String> alertas = new ArrayList<>();
+        for (Produto produto : produtos.values()) {
+            quantidades.put(produto.getId(), produto.getQuantidade());
+            if (produto.getQuantidade() > produto.getEstoquemaximo()) {
+                alertas.add("Quantidade acima do máximo permitido para: " + produto.getProduto());
+            } else if (produto.getQuantidade() < produto.getEstoqueminimo()) {
+                alertas.add("Quantidade abaixo do mínimo para: " + produto.getProduto());
+            }
         }
+
+        Map<String, Object> resposta = new HashMap<>();
+        resposta.put("quantidades", quantidades);
+        resposta.put("lotes", lotesConsumidos);
+        resposta.put("alertas", alertas);
+        return resposta;
     }
 
     /**
-     * Gera balanço físico-financeiro
+     * Reserva estoque de um ou mais produtos por um prazo
      *
-     * @return Mensagem com itens e valor total do estoque
+     * @param dados Mapa com {@code itens} (lista de mapas com
+     * {@code idProduto} e {@code quantidade}) ou, para um produto só,
+     * {@code idProduto} e {@code quantidade}; e o opcional
+     * {@code validadeSegundos} (padrão {@value #VALIDADE_RESERVA_PADRAO})
+     * @return Mensagem com {@code idReserva}, {@code expiraEm} e
+     * {@code quantidades} reservadas por ID de produto
+     */
+    private Mensagem reservarEstoque(Map<String, Object> dados) {
+        try {
+            List<?> linhas = dados.containsKey("itens")
+                    ? (List<?>) dados.get("itens") : Collections.singletonList(dados);
+            Map<Integer, Integer> quantidades = new HashMap<>();
+            for (Object linha : linhas) {
+                Map<?, ?> item = (Map<?, ?>) linha;
+                int idProduto = ((Number) item.get("idProduto")).intValue();
+                int quantidade = ((Number) item.get("quantidade")).intValue();
+                if (quantidade <= 0) {
+                    return new Mensagem("RESERVAR_ESTOQUE", "Quantidade inválida para o produto " + idProduto, "ERRO");
+                }
+                quantidades.merge(idProduto, quantidade, Integer::sum);
+            }
+            if (quantidades.isEmpty()) {
+                return new Mensagem("RESERVAR_ESTOQUE", "Reserva sem itens", "ERRO");
+            }
+
+            Object validade = dados.get("validadeSegundos");
+            int segundos = validade != null ? ((Number) validade).intValue() : VALIDADE_RESERVA_PADRAO;
+            if (segundos <= 0 || segundos > VALIDADE_RESERVA_MAXIMA) {
+                return new Mensagem("RESERVAR_ESTOQUE", "Validade da reserva deve ser de 1 a "
+                        + VALIDADE_RESERVA_MAXIMA + " segundos", "ERRO");
+            }
+
+            ReservasEstoque.Reserva reserva = travas.executar(quantidades.keySet(), () -> {
+                for (Map.Entry<Integer, Integer> item : quantidades.entrySet()) {
+                    Produto produto = buscarProdutoAtual(item.getKey());
+                    if (produto == null) {
+                        throw new MovimentacaoInvalidaException("Produto não encontrado com ID: " + item.getKey());
+                    }
+                    int disponivel = produto.getQuantidade() - reservas.getReservado(item.getKey());
+                    if (disponivel < item.getValue()) {
+                        throw new MovimentacaoInvalidaException("Estoque insuficiente para " + produto.getProduto()
+                                + " (disponível: " + Math.max(disponivel, 0) + ")");
+                    }
+                }
+                return reservas.reservar(quantidades, segundos * 1000L);
+            });
+
+            Map<String, Object> resposta = new HashMap<>();
+            resposta.put("idReserva", reserva.getId());
+            resposta.put("expiraEm", reserva.getExpiraEm());
+            resposta.put("quantidades", new HashMap<>(reserva.getQuantidades()));
+            return new Mensagem("RESERVAR_ESTOQUE", resposta, "SUCESSO");
+
+        } catch (MovimentacaoInvalidaException e) {
+            return new Mensagem("RESERVAR_ESTOQUE", e.getMessage(), "ERRO");
+        } catch (Exception e) {
+            return new Mensagem("RESERVAR_ESTOQUE", "Erro ao reservar estoque: " + e.getMessage(), "ERRO");
+        }
+    }
+
+    /**
+     * Confirma uma reserva, gravando as quantidades reservadas como SAIDA em
+     * um pedido só
+     *
+     * @param idReserva ID da reserva
+     * @return Mensagem com {@code quantidades}, {@code lotes} e
+     * {@code alertas}, como em {@code REALIZAR_PEDIDO}
+     */
+    private Mensagem confirmarReserva(Number idReserva) {
+        try {
+            ReservasEstoque.Reserva aberta = idReserva != null ? reservas.buscar(idReserva.longValue()) : null;
+            if (aberta == null) {
+                return new Mensagem("CONFIRMAR_RESERVA", "Reserva não encontrada ou vencida: " + idReserva, "ERRO");
+            }
+
+            List<Lote> lotesConsumidos = new ArrayList<>();
+            Map<Integer, Produto> produtos = travas.executar(aberta.getQuantidades().keySet(), () -> {
+                ReservasEstoque.Reserva reserva = reservas.retirar(aberta.getId());
+                if (reserva == null) {
+                    throw new MovimentacaoInvalidaException("Reserva não encontrada ou vencida: " + idReserva);
+                }
+                List<ItemMovimentacao> itens = new ArrayList<>();
+                for (Map.Entry<Integer, Integer> item : reserva.getQuantidades().entrySet()) {
+                    itens.add(new ItemMovimentacao(item.getKey(), item.getValue(), Movimentacao.SAIDA));
+                }
+                try {
+                    Map<Integer, Produto> gravados = executarPedido(itens, "Reserva " + reserva.getId(), lotesConsumidos);
+                    reservas.confirmar(reserva);
+                    return gravados;
+                } catch (RuntimeException e) {
+                    reservas.devolver(reserva);
+                    throw e;
+                }
+            });
+            return new Mensagem("CONFIRMAR_RESERVA", resumirPedido(produtos, lotesConsumidos), "SUCESSO");
+
+        } catch (MovimentacaoInvalidaException e) {
+            return new Mensagem("CONFIRMAR_RESERVA", e.getMessage(), "ERRO");
+        } catch (Exception e) {
+            return new Mensagem("CONFIRMAR_RESERVA", "Erro ao confirmar reserva: " + e.getMessage(), "ERRO");
+        }
+    }
+
+    /**
+     * Libera uma reserva sem movimentar o estoque
+     *
+     * @param idReserva ID da reserva
+     * @return Mensagem de sucesso ou erro
+     */
+    private Mensagem liberarReserva(Number idReserva) {
+        if (idReserva != null && reservas.liberar(idReserva.longValue())) {
+            return new Mensagem("LIBERAR_RESERVA", "Reserva " + idReserva + " liberada", "SUCESSO");
+        }
+        return new Mensagem("LIBERAR_RESERVA", "Reserva não encontrada ou vencida: " + idReserva, "ERRO");
+    }
+
+    /**
+     * Consulta o estoque reservado e o disponível de um produto ou de todos
+     * <p>
+     * A consulta de um produto é feita com ele travado, então quantidade e
+     * reservado são do mesmo momento; a de todos percorre o catálogo sem
+     * travar
+     * </p>
+     *
+     * @param idProduto ID do produto, ou {@code null} para todos
+     * @return Mensagem com a lista de mapas com {@code idProduto},
+     * {@code produto}, {@code quantidade}, {@code reservado} e
+     * {@code disponivel}
+     */
+    private Mensagem consultarDisponibilidade(Number idProduto) {
+        try {
+            ArrayList<Map<String, Object>> disponibilidade = new ArrayList<>();
+            if (idProduto != null) {
+                int id = idProduto.intValue();
+                Map<String, Object> item = travas.executar(id, () -> {
+                    Produto produto = buscarProdutoAtual(id);
+                    return produto != null ? criarMapDisponibilidade(produto) : null;
+                });
+                if (item == null) {
+                    return new Mensagem("CONSULTAR_DISPONIBILIDADE", "Produto não encontrado com ID: " + id, "ERRO");
+                }
+                disponibilidade.add(item);
+            } else {
+                for (Produto produto : produtosOrdenados()) {
+                    disponibilidade.add(criarMapDisponibilidade(produto));
+                }
+            }
+            return new Mensagem("CONSULTAR_DISPONIBILIDADE", disponibilidade, "SUCESSO");
+        } catch (Exception e) {
+            return new Mensagem("CONSULTAR_DISPONIBILIDADE", "Erro ao consultar disponibilidade: " + e.getMessage(), "ERRO");
+        }
+    }
+
+    private Map<String, Object> criarMapDisponibilidade(Produto produto) {
+        int reservado = reservas.getReservado(produto.getId());
+        Map<String, Object> item = new HashMap<>();
+        item.put("idProduto", produto.getId());
+        item.put("produto", produto.getProduto());
+        item.put("quantidade", produto.getQuantidade());
+        item.put("reservado", reservado);
+        item.put("disponivel", Math.max(produto.getQuantidade() - reservado, 0));
+        return item;
+    }
+
+    /**
+     * Confere os produtos de um pedido pelo catálogo e recusa saídas que
+     * consumiriam estoque reservado; chamado com os produtos travados
+     * <p>
+     * É a única validação de um pedido que fica pendente no diário, já que o
+     * banco só o vê ao reaplicar
+     * </p>
+     *
+     * @param itens Linhas do pedido
+     * @return Quantidade de cada produto depois do pedido, pelo catálogo
+     * @throws MovimentacaoInvalidaException Caso algum produto não exista ou
+     * alguma saída passe do disponível
+     */
+    private Map<Integer, Integer> verificarDisponivel(List<ItemMovimentacao> itens) {
+        Map<Integer, Integer> variacoes = new HashMap<>();
+        for (ItemMovimentacao item : itens) {
+            variacoes.merge(item.getIdProduto(), item.getSaldo(), Integer::sum);
+        }
+        Map<Integer, Integer> previstas = new HashMap<>();
+        for (Map.Entry<Integer, Integer> variacao : variacoes.entrySet()) {
+            Produto produto = buscarProdutoAtual(variacao.getKey());
+            if (produto == null) {
+                throw new MovimentacaoInvalidaException("Produto não encontrado com ID: " + variacao.getKey());
+            }
+            int prevista = produto.getQuantidade() + variacao.getValue();
+            int reservado = reservas.getReservado(variacao.getKey());
+            if (variacao.getValue() < 0 && prevista - reservado < 0) {
+                throw new MovimentacaoInvalidaException("Estoque insuficiente para " + produto.getProduto()
+                        + (reservado > 0 ? " (" + reservado + " reservados)" : ""));
+            }
+            previstas.put(variacao.getKey(), prevista);
+        }
+        return previstas;
+    }
+
+    /**
+     * @param id ID do produto
+     * @return Produto do catálogo, ou do banco se o catálogo não o tiver
+     */
+    private Produto buscarProdutoAtual(int id) {
+        Produto produto = catalogo.buscarPorId(id);
+        return produto != null ? produto : produtoDAO.getProdutoById(id);
+    }
+
+    /**
+     * Converte uma linha de pedido recebida do cliente
+     *
+     * @param linha {@link ItemMovimentacao} ou mapa com {@code idProduto},
+     * {@code quantidade}, {@code tipo} e o opcional {@code validade}
+     * @return Linha do pedido
+     */
+    private ItemMovimentacao converterItem(Object linha) {
+        if (linha instanceof ItemMovimentacao) {
+            return (ItemMovimentacao) linha;
+        }
+        if (!(linha instanceof Map<?, ?>)) {
+            throw new MovimentacaoInvalidaException("Linha de pedido inválida: " + linha);
+        }
+        Map<?, ?> mapa = (Map<?, ?>) linha;
+        Object tipo = mapa.get("tipo");
+        return new ItemMovimentacao(
+                ((Number) mapa.get("idProduto")).intValue(),
+                ((Number) mapa.get("quantidade")).intValue(),
+                tipo != null ? tipo.toString() : null,
+                converterData(mapa.get("validade"))
+        );
+    }
+
+    /**
+     * Grava um pedido com os produtos travados e o reflete no catálogo, nos
+     * lotes e no consumo
+     * <p>
+     * A trava cobre a gravação e a atualização do catálogo, então o catálogo
+     * recebe as quantidades de um mesmo produto na ordem em que foram
+     * gravadas
+     * </p>
+     *
+     * <p>
+     * Os lotes criados e consumidos são calculados antes e gravados na mesma
+     * transação do pedido. Se o pedido ficar pendente no diário, os lotes vão
+     * com ele e as quantidades do catálogo avançam pelo pedido; ao ser
+     * reaplicado, os produtos são relidos do banco
+     * </p>
+     *
+     * @param itens Linhas do pedido
+     * @param observacao Observação das movimentações
+     * @param lotesConsumidos Recebe os lotes consumidos pelas saídas
+     * @return Produtos do pedido com a nova quantidade, por ID
+     */
+    private Map<Integer, Produto> executarPedido(List<ItemMovimentacao> itens, String observacao,
+            List<Lote> lotesConsumidos) {
+        List<Integer> ids = new ArrayList<>(itens.size());
+        for (ItemMovimentacao item : itens) {
+            ids.add(item.getIdProduto());
+        }
+        return travas.executar(ids, () -> {
+            Map<Integer, Integer> previstas = verificarDisponivel(itens);
+            List<Lote> consumidos = new ArrayList<>();
+            LoteDAO.Alteracao lotes = estoqueLotes.planejar(itens, consumidos);
+            Map<Integer, Integer> quantidades = movimentacaoDAO.registrarPedido(itens, observacao, lotes);
+            estoqueLotes.aplicar(lotes);
+            lotesConsumidos.addAll(consumidos);
+            return aplicarPedido(itens, lotes.isGravada() ? quantidades : previstas);
+        });
+    }
+
+    /**
+     * Reflete um pedido gravado (ou pendente no diário) no catálogo e no
+     * consumo
+     *
+     * @param itens Linhas do pedido
+     * @param quantidades Nova quantidade de cada produto
+     * @return Produtos do pedido com a nova quantidade, por ID
+     */
+    private Map<Integer, Produto> aplicarPedido(List<ItemMovimentacao> itens, Map<Integer, Integer> quantidades) {
+        Map<Integer, Produto> produtos = new HashMap<>();
+        for (Map.Entry<Integer, Integer> quantidade : quantidades.entrySet()) {
+            Produto produto = atualizarQuantidadeNoCatalogo(quantidade.getKey(), quantidade.getValue());
+            if (produto != null) {
+                produtos.put(produto.getId(), produto);
+            }
+        }
+        // Depois do catálogo, para que a versão nova nunca sirva dados antigos
+        versaoProdutos.incrementAndGet();
+
+        for (ItemMovimentacao item : itens) {
+            if (Movimentacao.SAIDA.equals(item.getTipo())) {
+                consumo.registrarSaida(item.getIdProduto(), item.getQuantidade());
+            }
+        }
+        return produtos;
+    }
+
+    /**
+     * Troca a quantidade de um produto no catálogo sem reler o banco
+     *
+     * @param id ID do produto
+     * @param quantidade Nova quantidade
+     * @return Produto com a nova quantidade, ou {@code null} se não existir
+     */
+    private Produto atualizarQuantidadeNoCatalogo(int id, int quantidade) {
+        Produto atual = catalogo.buscarPorId(id);
+        if (atual == null) {
+            Produto gravado = produtoDAO.getProdutoById(id);
+            if (gravado != null) {
+                catalogo.atualizar(gravado);
+            }
+            return gravado;
+        }
+        // Cópia: o objeto do catálogo pode estar sendo lido por outra thread
+        // A movimentação avança a versão da linha uma vez por produto
+        Produto atualizado = new Produto(atual.getId(), atual.getProduto(), atual.getPreco(), atual.getUnidade(),
+                atual.getCategoria(), quantidade, atual.getEstoqueminimo(), atual.getEstoquemaximo(),
+                atual.getVersao() + 1);
+        catalogo.atualizar(atualizado);
+        return atualizado;
+    }
+
+    /**
+     * Lista os lotes com saldo de um produto
+     *
+     * @param idProduto ID do produto
+     * @return Mensagem com os lotes em ordem de saída (FEFO)
+     */
+    private Mensagem listarLotes(int idProduto) {
+        try {
+            // Travado: a fila não pode ser carregada do banco no meio de um pedido do produto
+            List<Lote> lotes = travas.executar(idProduto, () -> estoqueLotes.listar(idProduto));
+            return new Mensagem("LISTAR_LOTES", new ArrayList<>(lotes), "SUCESSO");
+        } catch (Exception e) {
+            return new Mensagem("LISTAR_LOTES", "Erro ao listar lotes: " + e.getMessage(), "ERRO");
+        }
+    }
+
+    /**
+     * Lista os lotes com saldo que vencem nos próximos dias; os já vencidos
+     * ficam de fora
+     *
+     * @param dias Quantidade de dias a partir de hoje
+     * @return Mensagem com os lotes ordenados por validade
+     */
+    private Mensagem listarLotesVencendo(int dias) {
+        try {
+            LocalDate hoje = LocalDate.now();
+            List<Lote> lotes = loteDAO.getLotesVencendo(hoje, hoje.plusDays(dias));
+            return new Mensagem("LISTAR_LOTES_VENCENDO", new ArrayList<>(lotes), "SUCESSO");
+        } catch (Exception e) {
+            return new Mensagem("LISTAR_LOTES_VENCENDO", "Erro ao listar lotes vencendo: " + e.getMessage(), "ERRO");
+        }
+    }
+
+    /**
+     * Converte uma data e hora recebida do cliente
+     *
+     * @param valor {@link LocalDateTime}, {@link LocalDate} (início do dia),
+     * {@link java.util.Date} ou texto nos formatos ISO,
+     * {@code dd/MM/yyyy HH:mm:ss} ou {@code dd/MM/yyyy}
+     * @return Data e hora convertida ou {@code null} se não informada
+     */
+    private LocalDateTime converterDataHora(Object valor) {
+        if (valor == null || valor instanceof LocalDateTime) {
+            return (LocalDateTime) valor;
+        }
+        if (valor instanceof java.util.Date) {
+            return LocalDateTime.ofInstant(((java.util.Date) valor).toInstant(), ZoneId.systemDefault());
+        }
+        String texto = valor.toString().trim();
+        if (texto.contains("/") && texto.contains(":")) {
+            return LocalDateTime.parse(texto, DateTimeFormatter.ofPattern("dd/MM/yyyy HH:mm:ss"));
+        }
+        if (texto.contains("T")) {
+            return LocalDateTime.parse(texto);
+        }
+        LocalDate data = converterData(valor);
+        return data != null ? data.atStartOfDay() : null;
+    }
+
+    /**
+     * Converte o fim (exclusivo) de um período recebido do cliente
+     * <p>
+     * Uma data sem hora inclui o dia inteiro: o período vai até o início do
+     * dia seguinte
+     * </p>
+     *
+     * @param valor Mesmos formatos de {@link #converterDataHora(Object)}
+     * @return Fim do período ou {@code null} se não informado
+     */
+    private LocalDateTime converterFimPeriodo(Object valor) {
+        LocalDateTime fim = converterDataHora(valor);
+        if (fim == null || valor instanceof LocalDateTime || valor instanceof java.util.Date) {
+            return fim;
+        }
+        String texto = valor.toString();
+        boolean semHora = valor instanceof LocalDate || !(texto.contains(":") || texto.contains("T"));
+        return semHora ? fim.plusDays(1) : fim;
+    }
+
+    /**
+     * Converte uma data recebida do cliente
+     *
+     * @param valor {@link LocalDate}, {@link java.util.Date} ou texto nos
+     * formatos {@code yyyy-MM-dd} ou {@code dd/MM/yyyy}
+     * @return Data convertida ou {@code null} se não informada
+     */
+    private LocalDate converterData(Object valor) {
+        if (valor == null || valor instanceof LocalDate) {
+            return (LocalDate) valor;
+        }
+        if (valor instanceof java.util.Date) {
+            return ((java.util.Date) valor).toInstant().atZone(ZoneId.systemDefault()).toLocalDate();
+        }
+        String texto = valor.toString().trim();
+        if (texto.isEmpty()) {
+            return null;
+        }
+        if (texto.contains("/")) {
+            return LocalDate.parse(texto, DateTimeFormatter.ofPattern("dd/MM/yyyy"));
+        }
+        return LocalDate.parse(texto);
+    }
+
+    /**
+     * Registra como movimentação uma mudança de quantidade feita fora de
+     * {@code REALIZAR_MOVIMENTACAO}, para que o saldo continue derivável das
+     * movimentações
+     *
+     * @param idProduto ID do produto
+     * @param diferenca Variação da quantidade (positiva para entrada)
+     * @param observacao Motivo do ajuste
+     * @return Futuro com o resultado da gravação (já concluído se não houver
+     * diferença)
+     */
+    private CompletableFuture<Boolean> registrarAjuste(int idProduto, int diferenca, String observacao) {
+        if (diferenca == 0) {
+            return CompletableFuture.completedFuture(true);
+        }
+        return movimentacoesAssincronas.executar(dao -> dao.registrarMovimentacao(idProduto, Math.abs(diferenca),
+                diferenca > 0 ? Movimentacao.ENTRADA : Movimentacao.SAIDA, observacao));
+    }
+
+    /**
+     * Recalcula o estoque pelas movimentações (último checkpoint mais as
+     * movimentações seguintes, ou todas elas se o produto não tiver
+     * checkpoint) e compara com a quantidade cadastrada
+     *
+     * @param idProduto ID do produto, ou {@code null} para todos
+     * @return Mensagem com a lista de {@link SaldoEstoque}
+     */
+    private Mensagem reconstruirEstoque(Integer idProduto) {
+        try {
+            // Folga para incluir as movimentações gravadas neste segundo
+            List<SaldoEstoque> saldos = checkpointDAO.reconstruirSaldos(LocalDateTime.now().plusMinutes(1), idProduto);
+            return new Mensagem("RECONSTRUIR_ESTOQUE", new ArrayList<>(saldos), "SUCESSO");
+        } catch (Exception e) {
+            return new Mensagem("RECONSTRUIR_ESTOQUE", "Erro ao reconstruir estoque: " + e.getMessage(), "ERRO");
+        }
+    }
+
+    /**
+     * Consulta a quantidade e o valor do estoque em uma data passada
+     * <p>
+     * Parte do último checkpoint anterior à data (ou, se não houver, do
+     * primeiro posterior) e aplica só as movimentações entre ele e a data,
+     * incluindo as arquivadas se a data for anterior ao
+     * histórico ativo. O valor usa o preço atual, já que o histórico de
+     * preços não é guardado
+     * </p>
+     *
+     * @param dados Data e hora de referência, ou mapa com {@code data} e o
+     * opcional {@code idProduto}
+     * @return Mensagem com {@code itens} (lista de {@link SaldoEstoque}),
+     * {@code quantidadeTotal} e {@code valorTotal}
+     */
+    private Mensagem consultarEstoqueEmData(Object dados) {
+        try {
+            Integer idProduto = null;
+            Object data = dados;
+            if (dados instanceof Map<?, ?>) {
+                Map<?, ?> filtro = (Map<?, ?>) dados;
+                data = filtro.get("data");
+                Object id = filtro.get("idProduto");
+                idProduto = id != null ? ((Number) id).intValue() : null;
+            }
+            LocalDateTime referencia = converterDataHora(data);
+            if (referencia == null) {
+                return new Mensagem("ESTOQUE_EM_DATA", "Data de referência não informada", "ERRO");
+            }
+
+            List<SaldoEstoque> saldos = checkpointDAO.calcularSaldos(referencia, idProduto,
+                    movimentacaoDAO.alcancaArquivo(referencia));
+            long quantidadeTotal = 0;
+            double valorTotal = 0;
+            for (SaldoEstoque saldo : saldos) {
+                quantidadeTotal += saldo.getQuantidade();
+                valorTotal += saldo.getValor();
+            }
+
+            Map<String, Object> resultado = new HashMap<>();
+            resultado.put("itens", new ArrayList<>(saldos));
+            resultado.put("quantidadeTotal", quantidadeTotal);
+            resultado.put("valorTotal", valorTotal);
+            return new Mensagem("ESTOQUE_EM_DATA", resultado, "SUCESSO");
+        } catch (Exception e) {
+            return new Mensagem("ESTOQUE_EM_DATA", "Erro ao consultar estoque na data: " + e.getMessage(), "ERRO");
+        }
+    }
+
+    /**
+     * Obtém histórico de movimentações de um produto
+     *
+     * @param dados ID do produto, ou mapa com {@code idProduto} e os opcionais
+     * {@code inicio}, {@code fim} (período) e {@code limite}
+     * @return Mensagem com a lista de {@link Movimentacao} do produto
+     */
+    private Mensagem obterHistoricoMovimentacoes(Object dados) {
+        try {
+            List<Movimentacao> historico;
+            if (dados instanceof Map<?, ?>) {
+                Map<?, ?> filtro = (Map<?, ?>) dados;
+                historico = movimentacaoDAO.getHistoricoPorProduto(
+                        ((Number) filtro.get("idProduto")).intValue(),
+                        converterDataHora(filtro.get("inicio")),
+                        converterFimPeriodo(filtro.get("fim")),
+                        lerLimite(filtro)
+                );
+            } else {
+                historico = movimentacaoDAO.getHistoricoPorProduto((Integer) dados);
+            }
+
+            return new Mensagem("SUCESSO", new ArrayList<>(historico));
+
+        } catch (Exception e) {
+            return new Mensagem("ERRO", "Erro ao obter histórico: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Lista as movimentações de todos os produtos em um período
+     *
+     * @param filtro Mapa com os opcionais {@code inicio}, {@code fim} e
+     * {@code limite}
+     * @return Mensagem com as movimentações, da mais recente para a mais antiga
+     */
+    private Mensagem listarMovimentacoes(Map<String, Object> filtro) {
+        try {
+            if (filtro == null) {
+                filtro = new HashMap<>();
+            }
+            List<Movimentacao> movimentacoes = movimentacaoDAO.getMovimentacoes(
+                    converterDataHora(filtro.get("inicio")),
+                    converterFimPeriodo(filtro.get("fim")),
+                    lerLimite(filtro)
+            );
+            return new Mensagem("LISTAR_MOVIMENTACOES", new ArrayList<>(movimentacoes), "SUCESSO");
+        } catch (Exception e) {
+            return new Mensagem("LISTAR_MOVIMENTACOES", "Erro ao listar movimentações: " + e.getMessage(), "ERRO");
+        }
+    }
+
+    /**
+     * Exporta as movimentações de um período para um arquivo CSV
+     * <p>
+     * O arquivo fica em {@link #DIRETORIO_EXPORTACOES}; o servidor o envia
+     * ao cliente logo após a resposta e depois o apaga
+     * </p>
+     *
+     * @param filtro Mapa com os opcionais {@code inicio} e {@code fim}
+     * @return Mensagem com {@code arquivo} (nome do arquivo), {@code tamanho}
+     * (bytes) e {@code linhas}
+     */
+    private Mensagem exportarMovimentacoes(Map<String, Object> filtro) {
+        Path arquivo = null;
+        try {
+            if (filtro == null) {
+                filtro = new HashMap<>();
+            }
+            Files.createDirectories(DIRETORIO_EXPORTACOES);
+            arquivo = Files.createTempFile(DIRETORIO_EXPORTACOES, "movimentacoes-", ".csv");
+
+            long linhas;
+            try (FileChannel canal = FileChannel.open(arquivo, StandardOpenOption.WRITE)) {
+                linhas = movimentacaoDAO.exportarMovimentacoes(
+                        converterDataHora(filtro.get("inicio")),
+                        converterFimPeriodo(filtro.get("fim")),
+                        canal
+                );
+            }
+
+            Map<String, Object> resultado = new HashMap<>();
+            resultado.put("arquivo", arquivo.getFileName().toString());
+            resultado.put("tamanho", Files.size(arquivo));
+            resultado.put("linhas", linhas);
+            return new Mensagem("EXPORTAR_MOVIMENTACOES", resultado, "SUCESSO");
+        } catch (Exception e) {
+            if (arquivo != null) {
+                try {
+                    Files.deleteIfExists(arquivo);
+                } catch (IOException erro) {
+                    System.err.println("Erro ao apagar exportação: " + erro.getMessage());
+                }
+            }
+            return new Mensagem("EXPORTAR_MOVIMENTACOES", "Erro ao exportar movimentações: " + e.getMessage(), "ERRO");
+        }
+    }
+
+    /**
+     * Soma entradas e saídas por produto, categoria ou geral, em períodos de
+     * hora, dia ou mês
+     *
+     * @param filtro Mapa com {@code agrupamento} (PRODUTO, CATEGORIA ou
+     * GERAL, padrão GERAL), {@code intervalo} (HORA, DIA ou MES, padrão DIA) e
+     * os opcionais {@code inicio}, {@code fim} e {@code idProduto}
+     * @return Mensagem com a lista de {@link TotalMovimentacao}
+     */
+    private Mensagem agregarMovimentacoes(Map<String, Object> filtro) {
+        try {
+            if (filtro == null) {
+                filtro = new HashMap<>();
+            }
+            Object agrupamento = filtro.getOrDefault("agrupamento", "GERAL");
+            Object intervalo = filtro.getOrDefault("intervalo", "DIA");
+            Object idProduto = filtro.get("idProduto");
+
+            List<TotalMovimentacao> totais = movimentacaoDAO.getTotaisPorPeriodo(
+                    MovimentaDAO.Agrupamento.valueOf(agrupamento.toString().toUpperCase()),
+                    MovimentaDAO.Intervalo.valueOf(intervalo.toString().toUpperCase()),
+                    converterDataHora(filtro.get("inicio")),
+                    converterFimPeriodo(filtro.get("fim")),
+                    idProduto != null ? ((Number) idProduto).intValue() : null
+            );
+            return new Mensagem("AGREGAR_MOVIMENTACOES", new ArrayList<>(totais), "SUCESSO");
+        } catch (Exception e) {
+            return new Mensagem("AGREGAR_MOVIMENTACOES", "Erro ao agregar movimentações: " + e.getMessage(), "ERRO");
+        }
+    }
+
+    /**
+     * Reúne as métricas de desempenho do servidor
+     *
+     * @return Mapa com {@code travas} (contenção das travas por produto),
+     * {@code operacoes} (chamadas, erros e tempo médio por operação),
+     * {@code coalescencia} (leituras iguais atendidas por uma só execução),
+     * {@code reservas} (reservas abertas, confirmadas, liberadas e vencidas)
+     * e {@code prazosEsgotados} (requisições respondidas com
+     * {@code TEMPO_ESGOTADO})
+     */
+    private Map<String, Object> obterMetricas() {
+        Map<String, Object> metricas = new HashMap<>();
+        metricas.put("travas", travas.getMetricas());
+        metricas.put("operacoes", operacoes.getMetricas());
+        metricas.put("coalescencia", coalescedor.getMetricas());
+        metricas.put("reservas", reservas.getMetricas());
+        metricas.put("prazosEsgotados", prazosEsgotados.sum());
+        return metricas;
+    }
+
+    /**
+     * Lê o limite de registros de um filtro de consulta
+     *
+     * @param filtro Filtro recebido do cliente
+     * @return Limite informado, até {@link #LIMITE_MAXIMO_HISTORICO}, ou
+     * {@link MovimentaDAO#LIMITE_PADRAO}
+     */
+    private int lerLimite(Map<?, ?> filtro) {
+        Object limite = filtro.get("limite");
+        if (limite == null) {
+            return MovimentaDAO.LIMITE_PADRAO;
+        }
+        return Math.max(1, Math.min(((Number) limite).intValue(), LIMITE_MAXIMO_HISTORICO));
+    }
+
+    /**
+     * Gera relatório de preços
+     *
+     * @return Mensagem com produtos ordenados por nome
+     */
+    private Mensagem gerarRelatorioPrecos() {
+        try {
+            List<Produto> produtosOrdenados = new ArrayList<>(produtosOrdenados());
+            return new Mensagem("SUCESSO", produtosOrdenados);
+        } catch (Exception e) {
+            return new Mensagem("ERRO", "Erro ao gerar relatório de preços: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Gera uma página do relatório de preços percorrendo uma faixa de nomes
+     *
+     * @param filtro Mapa com {@code de} e {@code ate} (faixa de nomes),
+     * {@code aposId} (ID do último produto da página anterior, junto com o
+     * nome dele em {@code de}) e {@code limite} (1 a
+     * {@value #TAMANHO_PAGINA_MAXIMO}), todos opcionais
+     * @return Mensagem com os produtos da página ordenados por nome
+     */
+    private Mensagem gerarRelatorioPrecosPaginado(Map<String, Object> filtro) {
+        try {
+            if (filtro == null) {
+                filtro = new HashMap<>();
+            }
+            catalogo.garantirCarregado(produtoDAO::getMinhaLista);
+
+            Object limite = filtro.get("limite");
+            Object aposId = filtro.get("aposId");
+            List<Produto> pagina = catalogo.faixaPorNome(
+                    (String) filtro.get("de"),
+                    aposId != null ? ((Number) aposId).intValue() : null,
+                    (String) filtro.get("ate"),
+                    limite != null
+                            ? Math.max(1, Math.min(((Number) limite).intValue(), TAMANHO_PAGINA_MAXIMO))
+                            : TAMANHO_PAGINA_PADRAO
+            );
+            return new Mensagem("RELATORIO_PRECOS_PAGINADO", new ArrayList<>(pagina), "SUCESSO");
+        } catch (Exception e) {
+            return new Mensagem("RELATORIO_PRECOS_PAGINADO", "Erro ao gerar relatório de preços: " + e.getMessage(), "ERRO");
+        }
+    }
+
+    /**
+     * Gera balanço físico-financeiro
+     *
+     * @return Mensagem com itens e valor total do estoque
      */
     private Mensagem gerarBalancoFisicoFinanceiro() {
         try {
-            ArrayList<Produto> produtos = (ArrayList<Produto>) produtoDAO.getMinhaLista();
             Map<String, Object> resultado = new HashMap<>();
-            double valorTotalEstoque = 0;
-
-            List<Map<String, Object>> itens = produtos.stream()
-                    .sorted(Comparator.comparing(Produto::getProduto))
-                    .map(produto -> {
-                        double valorTotal = produto.getPreco() * produto.getQuantidade();
-                        Map<String, Object> item = new HashMap<>();
-                        item.put("produto", produto);
-                        item.put("valorTotal", valorTotal);
-                        return item;
-                    })
-                    .collect(Collectors.toList());
-
-            valorTotalEstoque = itens.stream()
-                    .mapToDouble(item -> (Double) item.get("valorTotal"))
-                    .sum();
+
+            List<Map<String, Object>> itens = motorRelatorios.mapear(produtosOrdenados(), produto -> {
+                double valorTotal = produto.getPreco() * produto.getQuantidade();
+                Map<String, Object> item = new HashMap<>();
+                item.put("produto", produto);
+                item.put("valorTotal", valorTotal);
+                return item;
+            });
+
+            double valorTotalEstoque = motorRelatorios.somar(itens, item -> (Double) item.get("valorTotal"));
 
             resultado.put("itens", itens);
             resultado.put("valorTotalEstoque", valorTotalEstoque);
@@ -415,10 +1843,8 @@ public class EstoqueController {
      */
     private Mensagem gerarRelatorioEstoqueMinimo() {
         try {
-            ArrayList<Produto> produtos = (ArrayList<Produto>) produtoDAO.getMinhaLista();
-            List<Produto> produtosAbaixoMinimo = produtos.stream()
-                    .filter(p -> p.getQuantidade() < p.getEstoqueminimo())
-                    .collect(Collectors.toList());
+            List<Produto> produtosAbaixoMinimo = motorRelatorios.filtrar(produtosOrdenados(),
+                    p -> p.getQuantidade() < p.getEstoqueminimo());
 
             return new Mensagem("SUCESSO", produtosAbaixoMinimo);
         } catch (Exception e) {
@@ -433,10 +1859,8 @@ public class EstoqueController {
      */
     private Mensagem gerarRelatorioEstoqueMaximo() {
         try {
-            ArrayList<Produto> produtos = (ArrayList<Produto>) produtoDAO.getMinhaLista();
-            List<Produto> produtosAcimaMaximo = produtos.stream()
-                    .filter(p -> p.getQuantidade() > p.getEstoquemaximo())
-                    .collect(Collectors.toList());
+            List<Produto> produtosAcimaMaximo = motorRelatorios.filtrar(produtosOrdenados(),
+                    p -> p.getQuantidade() > p.getEstoquemaximo());
 
             return new Mensagem("SUCESSO", produtosAcimaMaximo);
         } catch (Exception e) {
@@ -444,19 +1868,47 @@ public class EstoqueController {
         }
     }
 
+    /**
+     * Gera relatório de cobertura do estoque, do produto que acaba primeiro
+     * para o que dura mais
+     * <p>
+     * Usa as taxas de consumo mantidas a cada saída, sem ler o histórico
+     * </p>
+     *
+     * @param filtro Mapa com o opcional {@code prazoReposicao} (dias, padrão
+     * {@value #PRAZO_REPOSICAO_PADRAO})
+     * @return Mensagem com a lista de {@link CoberturaEstoque}
+     */
+    private Mensagem gerarRelatorioCobertura(Map<String, Object> filtro) {
+        try {
+            Object prazo = filtro != null ? filtro.get("prazoReposicao") : null;
+            int prazoReposicao = prazo != null ? ((Number) prazo).intValue() : PRAZO_REPOSICAO_PADRAO;
+
+            List<CoberturaEstoque> coberturas = motorRelatorios.mapear(produtosOrdenados(), produto -> {
+                double consumoDiario = consumo.getConsumoDiario(produto.getId());
+                double dias = consumoDiario > 0 ? produto.getQuantidade() / consumoDiario : Double.POSITIVE_INFINITY;
+                return new CoberturaEstoque(produto.getId(), produto.getProduto(), produto.getQuantidade(),
+                        consumoDiario, dias, (int) Math.ceil(consumoDiario * prazoReposicao));
+            });
+            // Ordenação estável: empates ficam na ordem de nome
+            coberturas.sort(Comparator.comparingDouble(CoberturaEstoque::getDiasCobertura));
+
+            return new Mensagem("RELATORIO_COBERTURA_ESTOQUE", coberturas, "SUCESSO");
+        } catch (Exception e) {
+            return new Mensagem("RELATORIO_COBERTURA_ESTOQUE", "Erro ao gerar relatório de cobertura: " + e.getMessage(), "ERRO");
+        }
+    }
+
     /**
      * Gera relatório de produtos por categoria
      *
-     * @return Mensagem com quantidade de produtos por categoria
+     * @return Mensagem com quantidade de produtos por categoria, em ordem de
+     * categoria
      */
     private Mensagem gerarRelatorioProdutosPorCategoria() {
         try {
-            ArrayList<Produto> produtos = (ArrayList<Produto>) produtoDAO.getMinhaLista();
-            Map<String, Long> produtosPorCategoria = produtos.stream()
-                    .collect(Collectors.groupingBy(
-                            Produto::getCategoria,
-                            Collectors.counting()
-                    ));
+            Map<String, Long> produtosPorCategoria = motorRelatorios.contarPor(produtosOrdenados(),
+                    Produto::getCategoria);
             return new Mensagem("SUCESSO", produtosPorCategoria);
         } catch (Exception e) {
             return new Mensagem("ERRO", "Erro ao gerar relatório por categoria: " + e.getMessage());
@@ -466,29 +1918,103 @@ public class EstoqueController {
     /**
      * Aplica reajuste de preços em um produto específico
      *
-     * @param produto Produto com novo preço
-     * @return Mensagem com resultado da operação
+     * @param produto Produto com novo preço e, opcionalmente, a versão lida
+     * @return Mensagem com resultado da operação, ou status {@code CONFLITO}
+     * com o produto atual se ele mudou desde a versão informada
      */
     private Mensagem reajustarPrecos(Produto produto) {
-        try {
-            Produto produtoAtual = buscarProdutoPorId(produto.getId());
-            if (produtoAtual == null) {
-                return new Mensagem("REAJUSTAR_PRECOS", "Produto não encontrado", "ERRO");
-            }
+        // Travado para que o catálogo não troque o preço e a quantidade de uma movimentação concorrente
+        return travas.executar(produto.getId(), () -> {
+            try {
+                Produto produtoAtual = buscarProdutoPorId(produto.getId());
+                if (produtoAtual == null) {
+                    return new Mensagem("REAJUSTAR_PRECOS", "Produto não encontrado", "ERRO");
+                }
 
-            produtoAtual.setPreco(produto.getPreco());
+                if (produtoDAO.updatePrecoBD(produtoAtual.getId(), produto.getPreco(), produto.getVersao())) {
+                    sincronizarCatalogo(produtoAtual.getId());
+                    versaoProdutos.incrementAndGet();
+                    return new Mensagem("REAJUSTAR_PRECOS", "Preço do produto " + produtoAtual.getProduto() + " atualizado com sucesso", "SUCESSO");
+                } else {
+                    return new Mensagem("REAJUSTAR_PRECOS", "Erro ao atualizar preço do produto", "ERRO");
+                }
 
-            if (produtoDAO.updateProdutoBD(produtoAtual)) {
-                return new Mensagem("REAJUSTAR_PRECOS", "Preço do produto " + produtoAtual.getProduto() + " atualizado com sucesso", "SUCESSO");
-            } else {
-                return new Mensagem("REAJUSTAR_PRECOS", "Erro ao atualizar preço do produto", "ERRO");
+            } catch (ConflitoVersaoException e) {
+                atualizarCatalogo(e.getAtual().getId(), e.getAtual());
+                return new Mensagem("REAJUSTAR_PRECOS", e.getAtual(), "CONFLITO");
+            } catch (Exception e) {
+                return new Mensagem("REAJUSTAR_PRECOS", "Erro ao reajustar preços: " + e.getMessage(), "ERRO");
             }
+        });
+    }
 
-        } catch (Exception e) {
-            return new Mensagem("REAJUSTAR_PRECOS", "Erro ao reajustar preços: " + e.getMessage(), "ERRO");
+    /**
+     * Retorna os produtos do catálogo já ordenados por nome
+     *
+     * @return Produtos em ordem de nome
+     */
+    private Collection<Produto> produtosOrdenados() {
+        catalogo.garantirCarregado(produtoDAO::getMinhaLista);
+        return catalogo.ordenadosPorNome();
+    }
+
+    /**
+     * Atualiza o catálogo com o produto como ficou gravado no banco
+     * <p>
+     * Deve ser chamado com o produto travado, junto com a escrita, para que
+     * uma movimentação concorrente não substitua o produto relido (nem seja
+     * substituída por ele)
+     * </p>
+     *
+     * @param id ID do produto alterado
+     */
+    private void sincronizarCatalogo(int id) {
+        atualizarCatalogo(id, produtoDAO.getProdutoById(id));
+    }
+
+    /**
+     * Relê o produto para o catálogo e registra o ajuste de estoque ao mesmo
+     * tempo, já que um não depende do outro
+     * <p>
+     * Deve ser chamado com o produto travado
+     * </p>
+     *
+     * @param id ID do produto
+     * @param diferenca Diferença de quantidade (0 não registra ajuste)
+     * @param observacao Observação da movimentação de ajuste
+     */
+    private void sincronizarComAjuste(int id, int diferenca, String observacao) {
+        CompletableFuture<Produto> gravado = produtosAssincronos.executar(dao -> dao.getProdutoById(id));
+        CompletableFuture<Boolean> ajuste = registrarAjuste(id, diferenca, observacao);
+
+        CompletableFuture.allOf(gravado, ajuste).join();
+        if (!ajuste.join()) {
+            System.err.println("Ajuste de estoque do produto " + id + " não registrado nas movimentações");
+        }
+        atualizarCatalogo(id, gravado.join());
+    }
+
+    /**
+     * Aplica no catálogo o produto lido do banco
+     *
+     * @param id ID do produto
+     * @param gravado Produto gravado, ou {@code null} se não existir mais
+     */
+    private void atualizarCatalogo(int id, Produto gravado) {
+        if (gravado != null) {
+            catalogo.atualizar(gravado);
+        } else {
+            catalogo.remover(id);
         }
     }
 
+    /**
+     * Recarrega a lista de categorias do catálogo a partir do banco
+     */
+    private void recarregarCategorias() {
+        catalogo.substituirCategorias(new ArrayList<>(categoriaDAO.getMinhaLista()));
+    }
+
     /**
      * Busca produto por ID
      *
@@ -496,12 +2022,7 @@ public class EstoqueController {
      * @return Produto encontrado ou null
      */
     private Produto buscarProdutoPorId(int id) {
-        for (Produto p : produtoDAO.getMinhaLista()) {
-            if (p.getId() == id) {
-                return p;
-            }
-        }
-        return null;
+        return produtoDAO.getProdutoById(id);
     }
 
     /**
@@ -520,6 +2041,9 @@ public class EstoqueController {
         mapProduto.put("quantidade", produto.getQuantidade());
         mapProduto.put("estoqueMinimo", produto.getEstoqueminimo());
         mapProduto.put("estoqueMaximo", produto.getEstoquemaximo());
+        int reservado = reservas.getReservado(produto.getId());
+        mapProduto.put("reservado", reservado);
+        mapProduto.put("disponivel", Math.max(produto.getQuantidade() - reservado, 0));
         return mapProduto;
     }
 
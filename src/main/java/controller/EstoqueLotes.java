@@ -0,0 +1,207 @@
+package controller;
+
+import dao.LoteDAO;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import modelo.ItemMovimentacao;
+import modelo.Lote;
+import modelo.Movimentacao;
+
+/**
+ * Controle dos lotes de cada produto com alocação FEFO (primeiro a vencer,
+ * primeiro a sair)
+ * <p>
+ * Cada produto tem uma fila de prioridade com seus lotes com saldo, ordenada
+ * por validade (lotes sem validade por último) e depois por ID. A fila é
+ * carregada do banco no primeiro uso; uma SAIDA de N unidades só mexe nos
+ * lotes do topo da fila
+ * </p>
+ * <p>
+ * Os lotes de um pedido são calculados antes da gravação e gravados na mesma
+ * transação das movimentações, ou guardados com elas no diário se o pedido
+ * ficar pendente. Quem usa a classe deve estar com o produto
+ * travado, para que a fila não seja carregada do banco no meio de um pedido
+ * </p>
+ */
+public class EstoqueLotes {
+
+    private static final Comparator<Lote> ORDEM_FEFO = Comparator
+            .comparing(Lote::getValidade, Comparator.nullsLast(Comparator.naturalOrder()))
+            .thenComparingInt(Lote::getId);
+
+    private final LoteDAO loteDAO;
+    private final ConcurrentHashMap<Integer, PriorityQueue<Lote>> filas = new ConcurrentHashMap<>();
+
+    /**
+     * @param loteDAO DAO usado para carregar e gravar os lotes
+     */
+    public EstoqueLotes(LoteDAO loteDAO) {
+        this.loteDAO = loteDAO;
+    }
+
+    /**
+     * Calcula os lotes criados e consumidos por um pedido, sem alterar as
+     * filas: as alterações só entram nelas por {@link #aplicar} depois de
+     * gravadas
+     * <p>
+     * Cada ENTRADA cria um lote; cada SAIDA consome os lotes do produto pela
+     * ordem FEFO. Se o saldo dos lotes não cobrir a quantidade, o restante sai
+     * do estoque sem lote (produtos cadastrados antes do controle por lote)
+     * </p>
+     *
+     * @param itens Linhas do pedido
+     * @param consumidos Recebe os lotes consumidos, cada um com a quantidade
+     * retirada dele
+     * @return Lotes a gravar (e a guardar no diário) junto com o pedido
+     */
+    public LoteDAO.Alteracao planejar(List<ItemMovimentacao> itens, List<Lote> consumidos) {
+        Map<Integer, PriorityQueue<Lote>> copias = new HashMap<>();
+        Map<Integer, Lote> alterados = new LinkedHashMap<>();
+        List<Lote> novos = new ArrayList<>();
+        List<List<Lote>> retiradas = new ArrayList<>(itens.size());
+        LocalDateTime agora = LocalDateTime.now();
+
+        for (ItemMovimentacao item : itens) {
+            int idProduto = item.getIdProduto();
+            List<Lote> daLinha = new ArrayList<>();
+            retiradas.add(daLinha);
+            if (Movimentacao.ENTRADA.equals(item.getTipo())) {
+                novos.add(new Lote(0, idProduto, item.getQuantidade(), item.getValidade(), agora));
+                continue;
+            }
+
+            PriorityQueue<Lote> fila = copias.computeIfAbsent(idProduto, this::copiarFila);
+            int restante = item.getQuantidade();
+            while (restante > 0 && !fila.isEmpty()) {
+                Lote lote = fila.peek();
+                int retirada = Math.min(lote.getQuantidade(), restante);
+                lote.setQuantidade(lote.getQuantidade() - retirada);
+                restante -= retirada;
+                if (lote.getQuantidade() == 0) {
+                    fila.poll();
+                }
+                alterados.put(lote.getId(), lote);
+                daLinha.add(new Lote(lote.getId(), idProduto, retirada, lote.getValidade(), lote.getDataEntrada()));
+            }
+            consumidos.addAll(daLinha);
+        }
+        return new LoteDAO.Alteracao(novos, new ArrayList<>(alterados.values()), retiradas);
+    }
+
+    /**
+     * Aplica nas filas os lotes de um pedido já gravado ou pendente no
+     * diário; filas ainda não carregadas ficam para o próximo uso, que lê o
+     * banco
+     * <p>
+     * Os lotes criados por um pedido pendente ainda não têm ID: entram na
+     * fila quando ela for relida, depois que o pedido for reaplicado
+     * </p>
+     *
+     * @param alteracao Lotes do pedido
+     */
+    public void aplicar(LoteDAO.Alteracao alteracao) {
+        for (Lote lote : alteracao.getAlterados()) {
+            PriorityQueue<Lote> fila = filas.get(lote.getIdProduto());
+            if (fila != null) {
+                synchronized (fila) {
+                    fila.removeIf(atual -> atual.getId() == lote.getId());
+                    if (lote.getQuantidade() > 0) {
+                        fila.add(lote);
+                    }
+                }
+            }
+        }
+        if (!alteracao.isGravada()) {
+            return;
+        }
+        for (Lote lote : alteracao.getNovos()) {
+            PriorityQueue<Lote> fila = filas.get(lote.getIdProduto());
+            if (fila != null) {
+                synchronized (fila) {
+                    fila.add(lote);
+                }
+            }
+        }
+    }
+
+    /**
+     * @param idProduto ID do produto
+     * @return Lotes com saldo do produto em ordem FEFO
+     */
+    public List<Lote> listar(int idProduto) {
+        PriorityQueue<Lote> fila = fila(idProduto);
+        synchronized (fila) {
+            List<Lote> lotes = new ArrayList<>(fila.size());
+            for (Lote lote : fila) {
+                lotes.add(new Lote(lote.getId(), idProduto, lote.getQuantidade(), lote.getValidade(), lote.getDataEntrada()));
+            }
+            lotes.sort(ORDEM_FEFO);
+            return lotes;
+        }
+    }
+
+    /**
+     * Relê do banco a fila de um produto já carregado, trocando a que está
+     * em memória
+     * <p>
+     * Se a leitura falhar, a fila é descartada e lida de novo no próximo uso
+     * </p>
+     *
+     * @param idProduto ID do produto
+     */
+    public void recarregar(int idProduto) {
+        if (!filas.containsKey(idProduto)) {
+            return;
+        }
+        try {
+            PriorityQueue<Lote> carregada = new PriorityQueue<>(ORDEM_FEFO);
+            carregada.addAll(loteDAO.getLotesDisponiveis(idProduto));
+            filas.put(idProduto, carregada);
+        } catch (RuntimeException e) {
+            System.err.println("Erro ao recarregar lotes do produto " + idProduto + ": " + e.getMessage());
+            filas.remove(idProduto);
+        }
+    }
+
+    /**
+     * Descarta a fila de um produto, por exemplo quando ele é excluído
+     *
+     * @param idProduto ID do produto
+     */
+    public void descartar(int idProduto) {
+        filas.remove(idProduto);
+    }
+
+    private PriorityQueue<Lote> fila(int idProduto) {
+        PriorityQueue<Lote> fila = filas.get(idProduto);
+        if (fila != null) {
+            return fila;
+        }
+        // Lê o banco fora do mapa: computeIfAbsent seguraria a posição do mapa durante a consulta
+        PriorityQueue<Lote> carregada = new PriorityQueue<>(ORDEM_FEFO);
+        carregada.addAll(loteDAO.getLotesDisponiveis(idProduto));
+        PriorityQueue<Lote> anterior = filas.putIfAbsent(idProduto, carregada);
+        return anterior != null ? anterior : carregada;
+    }
+
+    /**
+     * Cópia da fila do produto com cópias dos lotes, para simular um pedido
+     */
+    private PriorityQueue<Lote> copiarFila(int idProduto) {
+        PriorityQueue<Lote> fila = fila(idProduto);
+        synchronized (fila) {
+            PriorityQueue<Lote> copia = new PriorityQueue<>(ORDEM_FEFO);
+            for (Lote lote : fila) {
+                copia.add(new Lote(lote.getId(), idProduto, lote.getQuantidade(), lote.getValidade(), lote.getDataEntrada()));
+            }
+            return copia;
+        }
+    }
+}
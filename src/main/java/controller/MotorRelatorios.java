@@ -0,0 +1,179 @@
+package controller;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.RecursiveTask;
+import java.util.function.BiConsumer;
+import java.util.function.BinaryOperator;
+import java.util.function.Function;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+import java.util.function.ToDoubleFunction;
+
+/**
+ * Executa os relatórios em paralelo sobre o catálogo
+ * <p>
+ * A lista é dividida em partições de até {@value #TAMANHO_PARTICAO} itens,
+ * processadas por um pool fork/join próprio (para não disputar o pool comum
+ * nem as threads das requisições). As partes são sempre combinadas da
+ * esquerda para a direita e os cortes não dependem da quantidade de núcleos,
+ * então a ordem dos resultados e as somas saem iguais em qualquer máquina.
+ * Listas de uma partição só são processadas na própria thread da requisição
+ * </p>
+ */
+public class MotorRelatorios {
+
+    /**
+     * Itens processados sequencialmente por tarefa
+     */
+    private static final int TAMANHO_PARTICAO = 8192;
+
+    private final ForkJoinPool pool;
+
+    /**
+     * @param paralelismo Quantidade de threads do pool
+     */
+    public MotorRelatorios(int paralelismo) {
+        this.pool = new ForkJoinPool(paralelismo, pool -> {
+            ForkJoinWorkerThread thread = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(pool);
+            thread.setName("estoque-relatorios-" + thread.getPoolIndex());
+            thread.setDaemon(true);
+            return thread;
+        }, null, false);
+    }
+
+    /**
+     * Processa os itens em partições e combina os parciais em ordem
+     *
+     * @param <T> Tipo dos itens
+     * @param <A> Tipo do resultado parcial
+     * @param itens Itens, na ordem em que devem aparecer no resultado
+     * @param novo Cria um resultado parcial vazio
+     * @param acumular Acrescenta um item ao parcial
+     * @param combinar Junta o parcial da esquerda com o da direita
+     * @return Resultado de todos os itens
+     */
+    public <T, A> A processar(Collection<T> itens, Supplier<A> novo, BiConsumer<A, T> acumular,
+            BinaryOperator<A> combinar) {
+        List<T> lista = itens instanceof ArrayList ? (List<T>) itens : new ArrayList<>(itens);
+        Particao<T, A> tarefa = new Particao<>(lista, 0, lista.size(), novo, acumular, combinar);
+        return lista.size() <= TAMANHO_PARTICAO ? tarefa.compute() : pool.invoke(tarefa);
+    }
+
+    /**
+     * @param <T> Tipo dos itens
+     * @param itens Itens a filtrar
+     * @param filtro Condição para manter o item
+     * @return Itens que atendem ao filtro, na ordem original
+     */
+    public <T> List<T> filtrar(Collection<T> itens, Predicate<T> filtro) {
+        return processar(itens, ArrayList::new, (List<T> parcial, T item) -> {
+            if (filtro.test(item)) {
+                parcial.add(item);
+            }
+        }, MotorRelatorios::concatenar);
+    }
+
+    /**
+     * @param <T> Tipo dos itens
+     * @param <R> Tipo do resultado de cada item
+     * @param itens Itens a converter
+     * @param conversao Conversão de cada item
+     * @return Itens convertidos, na ordem original
+     */
+    public <T, R> List<R> mapear(Collection<T> itens, Function<T, R> conversao) {
+        return processar(itens, ArrayList::new,
+                (List<R> parcial, T item) -> parcial.add(conversao.apply(item)), MotorRelatorios::concatenar);
+    }
+
+    /**
+     * @param <T> Tipo dos itens
+     * @param itens Itens a somar
+     * @param valor Valor de cada item
+     * @return Soma dos valores
+     */
+    public <T> double somar(Collection<T> itens, ToDoubleFunction<T> valor) {
+        return processar(itens, () -> new double[1],
+                (parcial, item) -> parcial[0] += valor.applyAsDouble(item),
+                (esquerda, direita) -> {
+                    esquerda[0] += direita[0];
+                    return esquerda;
+                })[0];
+    }
+
+    /**
+     * @param <T> Tipo dos itens
+     * @param <K> Tipo da chave de agrupamento
+     * @param itens Itens a contar
+     * @param chave Chave de cada item
+     * @return Quantidade de itens por chave, em ordem de chave
+     */
+    public <T, K extends Comparable<K>> Map<K, Long> contarPor(Collection<T> itens, Function<T, K> chave) {
+        return processar(itens, TreeMap::new,
+                (Map<K, Long> parcial, T item) -> parcial.merge(chave.apply(item), 1L, Long::sum),
+                (esquerda, direita) -> {
+                    direita.forEach((k, total) -> esquerda.merge(k, total, Long::sum));
+                    return esquerda;
+                });
+    }
+
+    /**
+     * Encerra o pool
+     */
+    public void encerrar() {
+        pool.shutdown();
+    }
+
+    private static <R> List<R> concatenar(List<R> esquerda, List<R> direita) {
+        esquerda.addAll(direita);
+        return esquerda;
+    }
+
+    /**
+     * Faixa [inicio, fim) da lista; divide ao meio até caber em uma partição
+     */
+    private static final class Particao<T, A> extends RecursiveTask<A> {
+
+        private static final long serialVersionUID = 1L;
+
+        private final List<T> itens;
+        private final int inicio;
+        private final int fim;
+        private final Supplier<A> novo;
+        private final BiConsumer<A, T> acumular;
+        private final BinaryOperator<A> combinar;
+
+        private Particao(List<T> itens, int inicio, int fim, Supplier<A> novo, BiConsumer<A, T> acumular,
+                BinaryOperator<A> combinar) {
+            this.itens = itens;
+            this.inicio = inicio;
+            this.fim = fim;
+            this.novo = novo;
+            this.acumular = acumular;
+            this.combinar = combinar;
+        }
+
+        @Override
+        protected A compute() {
+            if (fim - inicio <= TAMANHO_PARTICAO) {
+                A parcial = novo.get();
+                for (int i = inicio; i < fim; i++) {
+                    acumular.accept(parcial, itens.get(i));
+                }
+                return parcial;
+            }
+
+            int meio = (inicio + fim) >>> 1;
+            Particao<T, A> esquerda = new Particao<>(itens, inicio, meio, novo, acumular, combinar);
+            Particao<T, A> direita = new Particao<>(itens, meio, fim, novo, acumular, combinar);
+            direita.fork();
+            A resultadoEsquerda = esquerda.compute();
+            return combinar.apply(resultadoEsquerda, direita.join());
+        }
+    }
+}
@@ -0,0 +1,170 @@
+package controller;
+
+import dao.IdempotenciaDAO;
+import java.time.LocalDateTime;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+import modelo.Mensagem;
+
+/**
+ * Tabela de deduplicação por chave de idempotência
+ * <p>
+ * A primeira requisição com uma chave executa a operação; as repetições
+ * recebem a mesma resposta sem executar de novo, inclusive as que chegam
+ * enquanto a primeira ainda está em andamento (elas esperam por ela). As
+ * respostas ficam em memória até {@value #CAPACIDADE} chaves, por no máximo
+ * {@value #VALIDADE_HORAS} horas, e opcionalmente no banco para sobreviver a
+ * reinícios. Respostas de erro e de prazo esgotado não são guardadas, para
+ * que a repetição tente de novo
+ * </p>
+ */
+public class RegistroIdempotencia {
+
+    private static final int CAPACIDADE = 10000;
+    private static final int VALIDADE_HORAS = 24;
+
+    /**
+     * Banco das respostas, {@code null} só em memória
+     */
+    private final IdempotenciaDAO idempotenciaDAO;
+
+    private final Map<String, Entrada> respostas = new LinkedHashMap<String, Entrada>(256, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Entrada> maisAntiga) {
+            return size() > CAPACIDADE;
+        }
+    };
+
+    private final ConcurrentHashMap<String, CompletableFuture<Mensagem>> emAndamento = new ConcurrentHashMap<>();
+
+    /**
+     * @param idempotenciaDAO DAO para guardar as respostas no banco, ou
+     * {@code null} para guardar só em memória
+     */
+    public RegistroIdempotencia(IdempotenciaDAO idempotenciaDAO) {
+        this.idempotenciaDAO = idempotenciaDAO;
+    }
+
+    /**
+     * Executa a operação uma única vez por chave
+     *
+     * @param chave Chave de idempotência gerada pelo cliente
+     * @param operacao Operação da requisição
+     * @param execucao Executa a operação de fato
+     * @return Resposta da primeira execução com essa chave
+     */
+    public Mensagem executar(String chave, String operacao, Supplier<Mensagem> execucao) {
+        Mensagem anterior = buscar(chave, operacao);
+        if (anterior != null) {
+            return anterior;
+        }
+
+        CompletableFuture<Mensagem> execucaoAtual = new CompletableFuture<>();
+        CompletableFuture<Mensagem> outra = emAndamento.putIfAbsent(chave, execucaoAtual);
+        if (outra != null) {
+            return outra.join();
+        }
+
+        try {
+            // A anterior pode ter terminado entre a busca e o registro acima
+            Mensagem resposta = buscar(chave, operacao);
+            if (resposta == null) {
+                resposta = execucao.get();
+                if (!isErro(resposta)) {
+                    guardar(chave, operacao, resposta);
+                }
+            }
+            execucaoAtual.complete(resposta);
+            return resposta;
+        } catch (RuntimeException e) {
+            execucaoAtual.completeExceptionally(e);
+            throw e;
+        } finally {
+            emAndamento.remove(chave, execucaoAtual);
+        }
+    }
+
+    /**
+     * Apaga do banco as respostas vencidas
+     *
+     * @return Quantidade de respostas apagadas
+     */
+    public int limparVencidas() {
+        synchronized (respostas) {
+            LocalDateTime limite = LocalDateTime.now().minusHours(VALIDADE_HORAS);
+            Iterator<Entrada> entradas = respostas.values().iterator();
+            while (entradas.hasNext()) {
+                if (entradas.next().criadaEm.isBefore(limite)) {
+                    entradas.remove();
+                }
+            }
+        }
+        return idempotenciaDAO != null
+                ? idempotenciaDAO.apagarAnteriores(LocalDateTime.now().minusHours(VALIDADE_HORAS)) : 0;
+    }
+
+    private Mensagem buscar(String chave, String operacao) {
+        LocalDateTime limite = LocalDateTime.now().minusHours(VALIDADE_HORAS);
+        Entrada entrada;
+        synchronized (respostas) {
+            entrada = respostas.get(chave);
+            if (entrada != null && entrada.criadaEm.isBefore(limite)) {
+                respostas.remove(chave);
+                entrada = null;
+            }
+        }
+
+        if (entrada == null && idempotenciaDAO != null) {
+            IdempotenciaDAO.Registro registro = idempotenciaDAO.buscar(chave, limite);
+            if (registro != null) {
+                entrada = new Entrada(registro.getOperacao(), registro.getResposta(), registro.getCriadoEm());
+                synchronized (respostas) {
+                    respostas.put(chave, entrada);
+                }
+            }
+        }
+
+        if (entrada == null) {
+            return null;
+        }
+        if (!entrada.operacao.equals(operacao)) {
+            return new Mensagem(operacao, "Chave de idempotência já usada em outra operação", "ERRO");
+        }
+        return entrada.resposta;
+    }
+
+    private void guardar(String chave, String operacao, Mensagem resposta) {
+        Entrada entrada = new Entrada(operacao, resposta, LocalDateTime.now());
+        synchronized (respostas) {
+            respostas.put(chave, entrada);
+        }
+        if (idempotenciaDAO != null) {
+            idempotenciaDAO.gravar(chave, operacao, resposta, entrada.criadaEm);
+        }
+    }
+
+    private static boolean isErro(Mensagem resposta) {
+        return "ERRO".equals(resposta.getStatus()) || "ERRO".equals(resposta.getOperacao())
+                || "TEMPO_ESGOTADO".equals(resposta.getStatus());
+    }
+
+    /**
+     * Resposta guardada de uma chave
+     */
+    private static final class Entrada {
+
+        private final String operacao;
+        private final Mensagem resposta;
+        private final LocalDateTime criadaEm;
+
+        private Entrada(String operacao, Mensagem resposta, LocalDateTime criadaEm) {
+            this.operacao = operacao;
+            this.resposta = resposta;
+            this.criadaEm = criadaEm;
+        }
+    }
+}
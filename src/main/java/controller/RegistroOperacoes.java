@@ -0,0 +1,75 @@
+package controller;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Registro das operações atendidas pelo servidor, por nome
+ * <p>
+ * É preenchido uma vez na criação do controlador e só lido depois, então o
+ * despacho é uma consulta ao mapa
+ * </p>
+ */
+public class RegistroOperacoes {
+
+    /**
+     * Tipo a usar nas operações que recebem um mapa de filtros
+     */
+    public static final Class<Map<String, Object>> MAPA = tipoMapa();
+
+    private final Map<String, DefinicaoOperacao<?>> definicoes = new HashMap<>();
+
+    /**
+     * Registra uma operação
+     *
+     * @param <T> Tipo dos dados da requisição
+     * @param nome Nome da operação (constante de {@link util.Operacoes})
+     * @param tipoDados Tipo esperado dos dados ({@code Object.class} aceita
+     * qualquer um)
+     * @param natureza Leitura ou escrita
+     * @param classeExecucao Classe de execução
+     * @param tempoLimiteMs Tempo máximo esperado de execução, em milissegundos
+     * @param tratador Tratador da operação
+     * @throws IllegalStateException Caso a operação já esteja registrada
+     */
+    public <T> void registrar(String nome, Class<T> tipoDados, DefinicaoOperacao.Natureza natureza,
+            DefinicaoOperacao.ClasseExecucao classeExecucao, long tempoLimiteMs, TratadorOperacao<T> tratador) {
+        DefinicaoOperacao<T> definicao = new DefinicaoOperacao<>(nome, tipoDados, natureza, classeExecucao,
+                tempoLimiteMs, tratador);
+        if (definicoes.putIfAbsent(nome, definicao) != null) {
+            throw new IllegalStateException("Operação registrada duas vezes: " + nome);
+        }
+    }
+
+    /**
+     * @param nome Nome da operação
+     * @return Retorna a definição da operação, ou {@code null} se não houver
+     */
+    public DefinicaoOperacao<?> buscar(String nome) {
+        return nome != null ? definicoes.get(nome) : null;
+    }
+
+    /**
+     * O cast fica em um método porque o {@code @SuppressWarnings} no campo
+     * não vale quando outra classe compilada junto lê a constante
+     */
+    @SuppressWarnings("unchecked")
+    private static Class<Map<String, Object>> tipoMapa() {
+        return (Class<Map<String, Object>>) (Class<?>) Map.class;
+    }
+
+    /**
+     * @return Métricas de cada operação já chamada, por nome
+     */
+    public Map<String, Object> getMetricas() {
+        Map<String, Object> metricas = new TreeMap<>();
+        for (DefinicaoOperacao<?> definicao : definicoes.values()) {
+            Map<String, Object> daOperacao = definicao.getMetricas();
+            if ((Long) daOperacao.get("chamadas") > 0) {
+                metricas.put(definicao.getNome(), daOperacao);
+            }
+        }
+        return metricas;
+    }
+}
@@ -0,0 +1,232 @@
+package controller;
+
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Reservas de estoque com prazo (checkout do e-commerce)
+ * <p>
+ * Uma reserva separa quantidades de um ou mais produtos até ser confirmada
+ * (vira SAIDA), liberada ou vencer. Guarda o total reservado por produto, de
+ * onde sai o disponível (quantidade menos reservado). Os prazos ficam em uma
+ * {@link RodaTemporizacao}, então vencer reservas custa o número de reservas
+ * vencidas, não o de abertas
+ * </p>
+ * <p>
+ * Quem cria reservas ou confere o disponível deve estar com os produtos
+ * travados; retirar uma reserva só diminui o reservado e pode ser feito sem
+ * trava. As reservas ficam só em memória: um reinício do servidor libera as
+ * abertas
+ * </p>
+ */
+public class ReservasEstoque {
+
+    /**
+     * Precisão dos prazos, em milissegundos
+     */
+    private static final long DURACAO_TICK = 1000;
+
+    private final ConcurrentHashMap<Long, Reserva> abertas = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<Integer, Integer> reservadoPorProduto = new ConcurrentHashMap<>();
+    private final RodaTemporizacao<Reserva> prazos = new RodaTemporizacao<>(DURACAO_TICK, System.currentTimeMillis());
+    private final AtomicLong sequencia = new AtomicLong(System.currentTimeMillis());
+
+    private final LongAdder criadas = new LongAdder();
+    private final LongAdder confirmadas = new LongAdder();
+    private final LongAdder liberadas = new LongAdder();
+    private final LongAdder vencidas = new LongAdder();
+
+    /**
+     * Reserva aberta
+     */
+    public static final class Reserva {
+
+        private final long id;
+        private final Map<Integer, Integer> quantidades;
+        private final long expiraEm;
+        private volatile RodaTemporizacao.Agendamento<Reserva> agendamento;
+
+        private Reserva(long id, Map<Integer, Integer> quantidades, long expiraEm) {
+            this.id = id;
+            this.quantidades = quantidades;
+            this.expiraEm = expiraEm;
+        }
+
+        /**
+         * @return Retorna o ID da reserva
+         */
+        public long getId() {
+            return id;
+        }
+
+        /**
+         * @return Quantidade reservada por ID de produto
+         */
+        public Map<Integer, Integer> getQuantidades() {
+            return quantidades;
+        }
+
+        private boolean isVencida() {
+            return System.currentTimeMillis() >= expiraEm;
+        }
+
+        /**
+         * @return Retorna a data e hora em que a reserva vence
+         */
+        public LocalDateTime getExpiraEm() {
+            return LocalDateTime.ofInstant(Instant.ofEpochMilli(expiraEm), ZoneId.systemDefault());
+        }
+    }
+
+    /**
+     * Cria uma reserva; os produtos devem estar travados e o disponível já
+     * conferido
+     *
+     * @param quantidades Quantidade por ID de produto
+     * @param validadeMs Tempo até vencer, em milissegundos
+     * @return Reserva criada
+     */
+    public Reserva reservar(Map<Integer, Integer> quantidades, long validadeMs) {
+        Reserva reserva = new Reserva(sequencia.incrementAndGet(),
+                Collections.unmodifiableMap(new HashMap<>(quantidades)), System.currentTimeMillis() + validadeMs);
+        abrir(reserva);
+        criadas.increment();
+        return reserva;
+    }
+
+    /**
+     * @param id ID da reserva
+     * @return Reserva aberta, ou {@code null} se não existir, já tiver vencido
+     * ou sido liberada
+     */
+    public Reserva buscar(long id) {
+        Reserva reserva = abertas.get(id);
+        return reserva != null && !reserva.isVencida() ? reserva : null;
+    }
+
+    /**
+     * Tira a reserva das abertas para confirmá-la
+     *
+     * @param id ID da reserva
+     * @return Reserva, ou {@code null} se não existir, já tiver vencido ou
+     * sido liberada
+     */
+    public Reserva retirar(long id) {
+        Reserva reserva = abertas.remove(id);
+        if (reserva == null) {
+            return null;
+        }
+        fechar(reserva);
+        // A roda pode estar atrasada: vencida não se confirma
+        if (reserva.isVencida()) {
+            vencidas.increment();
+            return null;
+        }
+        return reserva;
+    }
+
+    /**
+     * Conclui a confirmação de uma reserva retirada
+     *
+     * @param reserva Reserva confirmada
+     */
+    public void confirmar(Reserva reserva) {
+        confirmadas.increment();
+    }
+
+    /**
+     * Devolve às abertas uma reserva retirada cuja confirmação falhou, com o
+     * mesmo prazo; os produtos devem estar travados
+     *
+     * @param reserva Reserva retirada
+     */
+    public void devolver(Reserva reserva) {
+        abrir(reserva);
+    }
+
+    /**
+     * Libera uma reserva sem movimentar o estoque
+     *
+     * @param id ID da reserva
+     * @return {@code true} se a reserva estava aberta
+     */
+    public boolean liberar(long id) {
+        if (retirar(id) == null) {
+            return false;
+        }
+        liberadas.increment();
+        return true;
+    }
+
+    /**
+     * Libera as reservas vencidas; chamado periodicamente
+     *
+     * @return Quantidade de reservas liberadas
+     */
+    public int liberarVencidas() {
+        List<Reserva> vencidasAgora = prazos.avancar(System.currentTimeMillis());
+        int liberadasAgora = 0;
+        for (Reserva reserva : vencidasAgora) {
+            // Só libera se ainda estiver aberta: uma confirmação pode tê-la retirado antes
+            if (abertas.remove(reserva.id, reserva)) {
+                ajustarReservado(reserva, -1);
+                liberadasAgora++;
+            }
+        }
+        vencidas.add(liberadasAgora);
+        return liberadasAgora;
+    }
+
+    /**
+     * @param idProduto ID do produto
+     * @return Quantidade reservada do produto
+     */
+    public int getReservado(int idProduto) {
+        return reservadoPorProduto.getOrDefault(idProduto, 0);
+    }
+
+    /**
+     * @return Métricas: {@code abertas}, {@code criadas}, {@code confirmadas},
+     * {@code liberadas} e {@code vencidas}
+     */
+    public Map<String, Object> getMetricas() {
+        Map<String, Object> metricas = new HashMap<>();
+        metricas.put("abertas", abertas.size());
+        metricas.put("criadas", criadas.sum());
+        metricas.put("confirmadas", confirmadas.sum());
+        metricas.put("liberadas", liberadas.sum());
+        metricas.put("vencidas", vencidas.sum());
+        return metricas;
+    }
+
+    private void abrir(Reserva reserva) {
+        ajustarReservado(reserva, 1);
+        abertas.put(reserva.id, reserva);
+        reserva.agendamento = prazos.agendar(reserva, reserva.expiraEm);
+    }
+
+    private void fechar(Reserva reserva) {
+        if (reserva.agendamento != null) {
+            prazos.cancelar(reserva.agendamento);
+        }
+        ajustarReservado(reserva, -1);
+    }
+
+    private void ajustarReservado(Reserva reserva, int sinal) {
+        for (Map.Entry<Integer, Integer> item : reserva.quantidades.entrySet()) {
+            // Remove o produto do mapa quando o reservado zera
+            reservadoPorProduto.compute(item.getKey(), (id, total) -> {
+                int novo = (total != null ? total : 0) + sinal * item.getValue();
+                return novo != 0 ? novo : null;
+            });
+        }
+    }
+}
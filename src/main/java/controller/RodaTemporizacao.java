@@ -0,0 +1,191 @@
+package controller;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Roda de temporização hierárquica para prazos em grande quantidade
+ * <p>
+ * São {@value #NIVEIS} rodas de {@value #POSICOES} posições; cada posição do
+ * nível n cobre 64^n ticks. Um item entra no nível do dígito (base 64) mais
+ * alto em que o seu tick difere do tick atual e desce de nível quando o tempo
+ * chega à sua posição. Agendar e cancelar custam O(1) e cada tick só percorre
+ * as posições que vencem nele, nunca todos os itens
+ * </p>
+ * <p>
+ * Prazos além do alcance da roda (64^4 ticks) ficam no último nível e voltam
+ * para ele cada vez que a sua posição passa, até estarem ao alcance
+ * </p>
+ *
+ * @param <T> Tipo dos itens agendados
+ */
+public class RodaTemporizacao<T> {
+
+    private static final int BITS = 6;
+    private static final int POSICOES = 1 << BITS;
+    private static final int NIVEIS = 4;
+
+    private final long duracaoTick;
+    private final Agendamento<T>[][] rodas;
+
+    /**
+     * Último tick processado
+     */
+    private long tickAtual;
+    private int tamanho;
+
+    /**
+     * Item agendado; serve para cancelar
+     *
+     * @param <T> Tipo do item
+     */
+    public static final class Agendamento<T> {
+
+        private final T item;
+        private final long prazo;
+        private Agendamento<T> anterior;
+        private Agendamento<T> proximo;
+        private int nivel = -1;
+        private int posicao;
+
+        private Agendamento(T item, long prazo) {
+            this.item = item;
+            this.prazo = prazo;
+        }
+
+        /**
+         * @return Item agendado
+         */
+        public T getItem() {
+            return item;
+        }
+    }
+
+    /**
+     * @param duracaoTick Duração de um tick, em milissegundos (precisão dos
+     * prazos)
+     * @param agora Instante inicial, em milissegundos
+     */
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    public RodaTemporizacao(long duracaoTick, long agora) {
+        this.duracaoTick = duracaoTick;
+        this.tickAtual = agora / duracaoTick;
+        this.rodas = new Agendamento[NIVEIS][POSICOES];
+    }
+
+    /**
+     * Agenda um item
+     *
+     * @param item Item
+     * @param prazo Instante em que o item vence, em milissegundos
+     * @return Agendamento, para cancelar
+     */
+    public synchronized Agendamento<T> agendar(T item, long prazo) {
+        // Arredonda para cima: o item nunca vence antes do prazo
+        Agendamento<T> agendamento = new Agendamento<>(item, (prazo + duracaoTick - 1) / duracaoTick);
+        inserir(agendamento);
+        tamanho++;
+        return agendamento;
+    }
+
+    /**
+     * Cancela um agendamento
+     *
+     * @param agendamento Agendamento devolvido por {@link #agendar}
+     * @return {@code true} se ele ainda estava na roda
+     */
+    public synchronized boolean cancelar(Agendamento<T> agendamento) {
+        if (agendamento.nivel < 0) {
+            return false;
+        }
+        remover(agendamento);
+        tamanho--;
+        return true;
+    }
+
+    /**
+     * Avança a roda até o instante informado
+     *
+     * @param agora Instante atual, em milissegundos
+     * @return Itens vencidos, em ordem de prazo
+     */
+    public synchronized List<T> avancar(long agora) {
+        List<T> vencidos = new ArrayList<>();
+        long destino = agora / duracaoTick;
+        while (tickAtual < destino) {
+            tickAtual++;
+            // Dos níveis altos para os baixos: o que desce ainda é processado neste tick
+            for (int nivel = NIVEIS - 1; nivel > 0; nivel--) {
+                if ((tickAtual & ((1L << (BITS * nivel)) - 1)) == 0) {
+                    descer(nivel, posicao(tickAtual, nivel), vencidos);
+                }
+            }
+            descer(0, posicao(tickAtual, 0), vencidos);
+        }
+        tamanho -= vencidos.size();
+        return vencidos;
+    }
+
+    /**
+     * @return Quantidade de itens agendados
+     */
+    public synchronized int getTamanho() {
+        return tamanho;
+    }
+
+    /**
+     * Esvazia uma posição, reinserindo os itens em níveis mais baixos ou
+     * entregando os que venceram
+     */
+    private void descer(int nivel, int posicao, List<T> vencidos) {
+        Agendamento<T> atual = rodas[nivel][posicao];
+        rodas[nivel][posicao] = null;
+        while (atual != null) {
+            Agendamento<T> seguinte = atual.proximo;
+            atual.anterior = null;
+            atual.proximo = null;
+            atual.nivel = -1;
+            if (atual.prazo <= tickAtual) {
+                vencidos.add(atual.item);
+            } else {
+                inserir(atual);
+            }
+            atual = seguinte;
+        }
+    }
+
+    private void inserir(Agendamento<T> agendamento) {
+        long tick = Math.max(agendamento.prazo, tickAtual + 1);
+
+        // Nível do dígito mais alto em que o tick difere do atual
+        int nivel = Math.min((63 - Long.numberOfLeadingZeros(tick ^ tickAtual)) / BITS, NIVEIS - 1);
+        int posicao = posicao(tick, nivel);
+
+        agendamento.nivel = nivel;
+        agendamento.posicao = posicao;
+        agendamento.anterior = null;
+        agendamento.proximo = rodas[nivel][posicao];
+        if (agendamento.proximo != null) {
+            agendamento.proximo.anterior = agendamento;
+        }
+        rodas[nivel][posicao] = agendamento;
+    }
+
+    private void remover(Agendamento<T> agendamento) {
+        if (agendamento.anterior != null) {
+            agendamento.anterior.proximo = agendamento.proximo;
+        } else {
+            rodas[agendamento.nivel][agendamento.posicao] = agendamento.proximo;
+        }
+        if (agendamento.proximo != null) {
+            agendamento.proximo.anterior = agendamento.anterior;
+        }
+        agendamento.anterior = null;
+        agendamento.proximo = null;
+        agendamento.nivel = -1;
+    }
+
+    private static int posicao(long tick, int nivel) {
+        return (int) (tick >>> (BITS * nivel)) & (POSICOES - 1);
+    }
+}
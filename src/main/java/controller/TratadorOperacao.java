@@ -0,0 +1,19 @@
+package controller;
+
+import modelo.Mensagem;
+
+/**
+ * Trata uma operação recebida do cliente
+ *
+ * @param <T> Tipo dos dados da requisição
+ */
+@FunctionalInterface
+public interface TratadorOperacao<T> {
+
+    /**
+     * @param dados Dados da requisição, já no tipo declarado (pode ser
+     * {@code null})
+     * @return Resposta da operação
+     */
+    Mensagem tratar(T dados);
+}
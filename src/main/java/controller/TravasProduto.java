@@ -0,0 +1,133 @@
+package controller;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Supplier;
+
+/**
+ * Travas por produto com listras (lock striping)
+ * <p>
+ * Cada produto cai em uma de {@value #LISTRAS} travas pelo ID. Movimentações
+ * de produtos em listras diferentes correm em paralelo; as do mesmo produto
+ * são serializadas. Operações com vários produtos pegam as listras em ordem
+ * crescente, então nunca esperam umas pelas outras em ciclo
+ * </p>
+ * <p>
+ * Guarda métricas de contenção: aquisições, quantas tiveram de esperar e o
+ * tempo de espera
+ * </p>
+ */
+public class TravasProduto {
+
+    /**
+     * Quantidade de travas (potência de 2)
+     */
+    private static final int LISTRAS = 256;
+
+    private final ReentrantLock[] travas = new ReentrantLock[LISTRAS];
+    private final LongAdder aquisicoes = new LongAdder();
+    private final LongAdder contencoes = new LongAdder();
+    private final LongAdder esperaTotal = new LongAdder();
+    private final LongAccumulator esperaMaxima = new LongAccumulator(Math::max, 0);
+
+    /**
+     * Cria as travas de todas as listras
+     */
+    public TravasProduto() {
+        for (int i = 0; i < LISTRAS; i++) {
+            travas[i] = new ReentrantLock();
+        }
+    }
+
+    /**
+     * Executa uma ação com o produto travado
+     *
+     * @param <T> Tipo do resultado
+     * @param idProduto ID do produto
+     * @param acao Ação a executar
+     * @return Resultado da ação
+     */
+    public <T> T executar(int idProduto, Supplier<T> acao) {
+        ReentrantLock trava = travas[listra(idProduto)];
+        travar(trava);
+        try {
+            return acao.get();
+        } finally {
+            trava.unlock();
+        }
+    }
+
+    /**
+     * Executa uma ação com vários produtos travados, pegando as listras em
+     * ordem crescente
+     *
+     * @param <T> Tipo do resultado
+     * @param idsProdutos IDs dos produtos
+     * @param acao Ação a executar
+     * @return Resultado da ação
+     */
+    public <T> T executar(Collection<Integer> idsProdutos, Supplier<T> acao) {
+        TreeSet<Integer> listras = new TreeSet<>();
+        for (Integer id : idsProdutos) {
+            listras.add(listra(id));
+        }
+
+        int travadas = 0;
+        Integer[] ordem = listras.toArray(new Integer[0]);
+        try {
+            for (Integer listra : ordem) {
+                travar(travas[listra]);
+                travadas++;
+            }
+            return acao.get();
+        } finally {
+            for (int i = travadas - 1; i >= 0; i--) {
+                travas[ordem[i]].unlock();
+            }
+        }
+    }
+
+    /**
+     * @return Métricas de contenção: {@code listras}, {@code aquisicoes},
+     * {@code contencoes}, {@code taxaContencao} (0 a 1),
+     * {@code esperaMediaMicros} e {@code esperaMaximaMicros}
+     */
+    public Map<String, Object> getMetricas() {
+        long total = aquisicoes.sum();
+        long esperas = contencoes.sum();
+        Map<String, Object> metricas = new HashMap<>();
+        metricas.put("listras", LISTRAS);
+        metricas.put("aquisicoes", total);
+        metricas.put("contencoes", esperas);
+        metricas.put("taxaContencao", total > 0 ? (double) esperas / total : 0.0);
+        metricas.put("esperaMediaMicros", esperas > 0 ? esperaTotal.sum() / esperas / 1000 : 0L);
+        metricas.put("esperaMaximaMicros", esperaMaxima.get() / 1000);
+        return metricas;
+    }
+
+    private void travar(ReentrantLock trava) {
+        aquisicoes.increment();
+        if (trava.tryLock()) {
+            return;
+        }
+        long inicio = System.nanoTime();
+        trava.lock();
+        long espera = System.nanoTime() - inicio;
+        contencoes.increment();
+        esperaTotal.add(espera);
+        esperaMaxima.accumulate(espera);
+    }
+
+    /**
+     * Espalha os IDs sequenciais pelas listras
+     */
+    private static int listra(int idProduto) {
+        int h = idProduto * 0x9E3779B9;
+        return (h ^ (h >>> 16)) & (LISTRAS - 1);
+    }
+}
@@ -0,0 +1,228 @@
+package dao;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import modelo.SaldoEstoque;
+
+/**
+ * Checkpoints periódicos do estoque e cálculo do saldo a partir das
+ * movimentações
+ * <p>
+ * Tabela: <code>tb_estoque_checkpoint</code>. Um checkpoint na data T guarda
+ * a quantidade considerando as movimentações anteriores a T; o saldo em
+ * qualquer data é o último checkpoint até ela mais as movimentações entre os
+ * dois, lidas pelo índice (id_produto, data_hora)
+ * </p>
+ * <p>
+ * Para uma data anterior ao primeiro checkpoint do produto, o saldo é
+ * calculado para trás: o primeiro checkpoint menos as movimentações entre a
+ * data e ele. Sem nenhum checkpoint, parte da quantidade cadastrada menos as
+ * movimentações a partir da data. Assim o estoque que já existia antes das
+ * movimentações serem registradas não se perde
+ * </p>
+ * <p>
+ * A reconstrução ({@link #reconstruirSaldos(LocalDateTime, Integer)}) não usa
+ * a quantidade cadastrada, já que é com ela que o resultado é comparado: sem
+ * checkpoint anterior, o saldo parte de zero e soma todas as movimentações
+ * </p>
+ */
+public class CheckpointEstoqueDAO extends ConexaoDAO {
+
+    /**
+     * Soma das movimentações com sinal (entrada positiva, saída negativa)
+     */
+    private static final String DELTA = "COALESCE(SUM(CASE WHEN m.tipo = 'ENTRADA' THEN m.quantidade ELSE -m.quantidade END), 0)";
+
+    /**
+     * Junta cada produto à data de referência ({@code r.referencia}, único
+     * parâmetro), ao último checkpoint até ela ({@code a}) e ao primeiro
+     * depois dela ({@code d})
+     */
+    private static final String BASE_SALDO = "FROM tb_produtodao p "
+            + "CROSS JOIN (SELECT CAST(? AS DATETIME(6)) AS referencia) r "
+            + "LEFT JOIN tb_estoque_checkpoint a ON a.id_produto = p.id AND a.data_hora = "
+            + "(SELECT MAX(c2.data_hora) FROM tb_estoque_checkpoint c2 WHERE c2.id_produto = p.id AND c2.data_hora <= r.referencia) "
+            + "LEFT JOIN tb_estoque_checkpoint d ON d.id_produto = p.id AND d.data_hora = "
+            + "(SELECT MIN(c2.data_hora) FROM tb_estoque_checkpoint c2 WHERE c2.id_produto = p.id AND c2.data_hora > r.referencia) ";
+
+    /**
+     * Saldo na data de referência: com checkpoint anterior, ele mais as
+     * movimentações até a data; senão, o checkpoint seguinte (ou a quantidade
+     * cadastrada) menos as movimentações a partir da data
+     *
+     * @param comArquivo Se as movimentações arquivadas entram na soma
+     */
+    private static String saldo(boolean comArquivo) {
+        return "CASE WHEN a.data_hora IS NOT NULL "
+                + "THEN a.quantidade + " + delta(comArquivo, "a.data_hora", "r.referencia") + " "
+                + "ELSE COALESCE(d.quantidade, p.quantidade) - "
+                + delta(comArquivo, "r.referencia", "COALESCE(d.data_hora, '9999-12-31')") + " END";
+    }
+
+    /**
+     * Saldo reconstruído na data de referência: com checkpoint anterior, ele
+     * mais as movimentações ativas até a data; senão, zero mais todas as
+     * movimentações até a data, incluindo as arquivadas
+     */
+    private static String saldoReconstruido() {
+        return "CASE WHEN a.data_hora IS NOT NULL "
+                + "THEN a.quantidade + " + delta(false, "a.data_hora", "r.referencia") + " "
+                + "ELSE " + delta(true, "'1000-01-01'", "r.referencia") + " END";
+    }
+
+    /**
+     * Soma com sinal das movimentações do produto em [inicio, fim)
+     * <p>
+     * Com arquivo, cada tabela tem a sua subconsulta, com o produto e o
+     * período nela, para que ambas usem o índice (id_produto, data_hora) em
+     * vez de materializar as duas tabelas inteiras
+     * </p>
+     */
+    private static String delta(boolean comArquivo, String inicio, String fim) {
+        String ativas = somaMovimentacoes("tb_movimentacao", inicio, fim);
+        return comArquivo ? "(" + ativas + " + " + somaMovimentacoes("tb_movimentacao_arquivo", inicio, fim) + ")" : ativas;
+    }
+
+    private static String somaMovimentacoes(String tabela, String inicio, String fim) {
+        return "(SELECT " + DELTA + " FROM " + tabela + " m "
+                + "WHERE m.id_produto = p.id AND m.data_hora >= " + inicio + " AND m.data_hora < " + fim + ")";
+    }
+
+    /**
+     * Calcula o saldo dos produtos em uma data pelo checkpoint mais próximo e
+     * as movimentações ativas entre os dois
+     *
+     * @param data Data de referência
+     * @param idProduto Restringe a um produto ({@code null} para todos)
+     * @return Saldos ordenados por nome do produto
+     * @see #calcularSaldos(LocalDateTime, Integer, boolean)
+     */
+    public List<SaldoEstoque> calcularSaldos(LocalDateTime data, Integer idProduto) {
+        return calcularSaldos(data, idProduto, false);
+    }
+
+    /**
+     * Calcula o saldo dos produtos em uma data pelo checkpoint mais próximo e
+     * as movimentações entre os dois
+     * <p>
+     * O arquivamento grava um checkpoint no início do histórico ativo, então
+     * o arquivo só é necessário para datas anteriores a ele
+     * </p>
+     *
+     * @param data Data de referência
+     * @param idProduto Restringe a um produto ({@code null} para todos)
+     * @param comArquivo Se as movimentações arquivadas entram na soma
+     * @return Saldos ordenados por nome do produto
+     */
+    public List<SaldoEstoque> calcularSaldos(LocalDateTime data, Integer idProduto, boolean comArquivo) {
+        return listarSaldos("COALESCE(a.data_hora, d.data_hora)", saldo(comArquivo), data, idProduto);
+    }
+
+    /**
+     * Reconstrói o saldo dos produtos em uma data só pelas movimentações,
+     * para comparar com a quantidade cadastrada
+     * <p>
+     * Parte do último checkpoint até a data; um produto sem ele parte de zero
+     * e soma todas as movimentações, ativas e arquivadas, com a data do
+     * checkpoint {@code null}
+     * </p>
+     *
+     * @param data Data de referência
+     * @param idProduto Restringe a um produto ({@code null} para todos)
+     * @return Saldos ordenados por nome do produto
+     */
+    public List<SaldoEstoque> reconstruirSaldos(LocalDateTime data, Integer idProduto) {
+        return listarSaldos("a.data_hora", saldoReconstruido(), data, idProduto);
+    }
+
+    /**
+     * @param dataCheckpoint Expressão da data do checkpoint usado como base
+     * @param saldo Expressão do saldo
+     */
+    private List<SaldoEstoque> listarSaldos(String dataCheckpoint, String saldo, LocalDateTime data, Integer idProduto) {
+        List<SaldoEstoque> saldos = new ArrayList<>();
+        String sql = "SELECT p.id, p.produto, p.preco, p.quantidade, "
+                + dataCheckpoint + " AS data_checkpoint, "
+                + saldo + " AS saldo "
+                + BASE_SALDO
+                + (idProduto != null ? "WHERE p.id = ? " : "")
+                + "ORDER BY p.produto, p.id";
+
+        try (Connection conn = this.getConexaoLeitura(); PreparedStatement stmt = conn.prepareStatement(sql)) {
+
+            stmt.setTimestamp(1, Timestamp.valueOf(data));
+            if (idProduto != null) {
+                stmt.setInt(2, idProduto);
+            }
+
+            try (ResultSet res = stmt.executeQuery()) {
+                while (res.next()) {
+                    Timestamp checkpoint = res.getTimestamp("data_checkpoint");
+                    saldos.add(new SaldoEstoque(
+                            res.getInt("id"),
+                            res.getString("produto"),
+                            res.getDouble("preco"),
+                            res.getInt("saldo"),
+                            res.getInt("quantidade"),
+                            checkpoint != null ? checkpoint.toLocalDateTime() : null,
+                            data
+                    ));
+                }
+            }
+
+        } catch (SQLException ex) {
+            System.err.println("Erro ao calcular saldos: " + ex.getMessage());
+            throw new RuntimeException("Erro ao calcular saldos", ex);
+        }
+
+        return saldos;
+    }
+
+    /**
+     * Gera um checkpoint de todos os produtos na data informada
+     * <p>
+     * O saldo é calculado como em
+     * {@link #calcularSaldos(LocalDateTime, Integer)}; produtos que já têm
+     * checkpoint na data ficam como estão
+     * </p>
+     *
+     * @param data Data do checkpoint (deve ser anterior a qualquer
+     * movimentação ainda não gravada e posterior às arquivadas)
+     * @return Quantidade de checkpoints gravados
+     * @throws RuntimeException Caso a gravação falhe (nada é gravado)
+     */
+    public int gerarCheckpoints(LocalDateTime data) {
+        String sql = "INSERT INTO tb_estoque_checkpoint (id_produto, data_hora, quantidade) "
+                + "SELECT p.id, r.referencia, " + saldo(false) + " "
+                + BASE_SALDO
+                + "WHERE a.data_hora IS NULL OR a.data_hora < r.referencia";
+
+        Connection conn = null;
+        try {
+            conn = this.getConexao();
+            conn.setAutoCommit(false);
+            int gravados;
+
+            try (PreparedStatement stmt = conn.prepareStatement(sql)) {
+                stmt.setTimestamp(1, Timestamp.valueOf(data));
+                gravados = stmt.executeUpdate();
+            }
+
+            conn.commit();
+            return gravados;
+
+        } catch (SQLException ex) {
+            System.err.println("Erro ao gerar checkpoints de estoque: " + ex.getMessage());
+            desfazer(conn);
+            throw new RuntimeException("Erro ao gerar checkpoints de estoque", ex);
+        } finally {
+            fechar(conn);
+        }
+    }
+}
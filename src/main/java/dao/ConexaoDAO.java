@@ -1,8 +1,13 @@
 package dao;
 
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
 import java.sql.Connection;
 import java.sql.DriverManager;
 import java.sql.SQLException;
+import java.sql.SQLTimeoutException;
+import java.sql.Statement;
+import java.util.concurrent.TimeUnit;
 
 
 /**
@@ -12,6 +17,21 @@ import java.sql.SQLException;
  * conexão seja bem-sucedida, o objeto {@link Connection} será retornado para
  * operações de persistência
  * </p>
+ * <p>
+ * Consultas pesadas que toleram alguns segundos de atraso podem usar
+ * {@link #getConexaoLeitura()}, que vai para a réplica quando ela está
+ * configurada (propriedades {@code estoque.replica.url},
+ * {@code estoque.replica.usuario} e {@code estoque.replica.senha}). Para que
+ * quem acabou de escrever veja a própria escrita, as leituras da thread que
+ * escreveu nos últimos {@code estoque.replica.janela.ms} milissegundos vão
+ * para o primário
+ * </p>
+ * <p>
+ * Se a thread tiver um prazo ({@link #definirPrazo(long)}), os comandos
+ * criados nas conexões recebem como {@code setQueryTimeout} o tempo que
+ * resta, e o driver cancela a consulta que passar dele. Com o prazo já
+ * esgotado, nem chegam a ser criados
+ * </p>
  * 
  * <p><b>Exemplo de uso:</b></p>
  * <pre>{@code 
@@ -23,7 +43,36 @@ import java.sql.SQLException;
  }</pre>
  */
 public class ConexaoDAO {
-    
+
+    private static final String USUARIO = "root";
+    private static final String SENHA = "enzo020506";
+
+    /**
+     * URL JDBC da réplica de leitura, {@code null} sem réplica
+     */
+    private static final String URL_REPLICA = System.getProperty("estoque.replica.url");
+    private static final String USUARIO_REPLICA = System.getProperty("estoque.replica.usuario", USUARIO);
+    private static final String SENHA_REPLICA = System.getProperty("estoque.replica.senha", SENHA);
+
+    /**
+     * Tempo após uma escrita em que as leituras da mesma thread ficam no
+     * primário; deve cobrir o atraso da réplica
+     */
+    private static final long JANELA_ESCRITA = TimeUnit.MILLISECONDS.toNanos(
+            Long.getLong("estoque.replica.janela.ms", 10000));
+
+    /**
+     * Momento ({@link System#nanoTime()}) da última escrita da thread, 0 se
+     * nunca escreveu
+     */
+    private static final ThreadLocal<Long> ULTIMA_ESCRITA = ThreadLocal.withInitial(() -> 0L);
+
+    /**
+     * Prazo ({@link System#nanoTime()}) da requisição atendida pela thread, 0
+     * sem prazo
+     */
+    private static final ThreadLocal<Long> PRAZO = ThreadLocal.withInitial(() -> 0L);
+
     /**
      * Obtém uma conexão com o banco de dados MySQL.
      * 
@@ -44,8 +93,8 @@ public class ConexaoDAO {
             String server = "localhost";
             String database = "db_produtos";
             String url = "jdbc:mysql://" + server + ":3306/" + database + "?useTimezone=true&serverTimezone=UTC";
-            String user = "root";
-            String password = "enzo020506";
+            String user = USUARIO;
+            String password = SENHA;
 
             connection = DriverManager.getConnection(url, user, password);
 
@@ -55,7 +104,7 @@ public class ConexaoDAO {
             } else {
                 System.out.println("Status: NÃO CONECTADO!");
             }
-            return connection;
+            return comPrazo(connection);
         } catch (ClassNotFoundException e) {
             System.out.println("O driver nao foi encontrado.");
             return null;
@@ -65,4 +114,141 @@ public class ConexaoDAO {
         }
 
     }
+
+    /**
+     * Obtém uma conexão para consultas somente leitura
+     * <p>
+     * Vai para a réplica se ela estiver configurada e a thread não tiver
+     * escrito dentro da janela; se a réplica não responder, usa o primário
+     * </p>
+     *
+     * @return Retorna uma conexão ativa, ou {@code null} caso nenhuma seja
+     * bem-sucedida
+     */
+    public Connection getConexaoLeitura() {
+        if (URL_REPLICA == null || isLeituraNoPrimario()) {
+            return getConexao();
+        }
+        try {
+            Connection connection = DriverManager.getConnection(URL_REPLICA, USUARIO_REPLICA, SENHA_REPLICA);
+            connection.setReadOnly(true);
+            return comPrazo(connection);
+        } catch (SQLException e) {
+            System.err.println("Réplica indisponível, lendo do primário: " + e.getMessage());
+            return getConexao();
+        }
+    }
+
+    /**
+     * Registra que a thread atual escreveu no BD; as leituras dela ficam no
+     * primário pela janela configurada
+     */
+    public static void marcarEscrita() {
+        ULTIMA_ESCRITA.set(System.nanoTime());
+    }
+
+    /**
+     * @return Se as leituras da thread atual devem ir ao primário
+     */
+    public static boolean isLeituraNoPrimario() {
+        long ultima = ULTIMA_ESCRITA.get();
+        return ultima != 0 && System.nanoTime() - ultima < JANELA_ESCRITA;
+    }
+
+    /**
+     * @return Momento da última escrita da thread atual, para repassar a
+     * outra thread que leia em nome dela
+     */
+    static long getUltimaEscrita() {
+        return ULTIMA_ESCRITA.get();
+    }
+
+    /**
+     * @param ultimaEscrita Momento da última escrita repassado pela thread de
+     * origem
+     */
+    static void setUltimaEscrita(long ultimaEscrita) {
+        ULTIMA_ESCRITA.set(ultimaEscrita);
+    }
+
+    /**
+     * Define o prazo das consultas feitas pela thread atual
+     *
+     * @param prazo Instante ({@link System#nanoTime()}) em que a requisição
+     * deixa de interessar ao cliente, ou 0 para tirar o prazo
+     */
+    public static void definirPrazo(long prazo) {
+        PRAZO.set(prazo);
+    }
+
+    /**
+     * @return Prazo da thread atual, 0 sem prazo
+     */
+    static long getPrazo() {
+        return PRAZO.get();
+    }
+
+    /**
+     * Faz os comandos criados na conexão respeitarem o prazo da thread
+     * <p>
+     * O tempo limite do JDBC é em segundos inteiros, então é arredondado para
+     * cima: a consulta nunca é cancelada antes do prazo
+     * </p>
+     */
+    private static Connection comPrazo(Connection connection) {
+        long prazo = PRAZO.get();
+        if (prazo == 0 || connection == null) {
+            return connection;
+        }
+        return (Connection) Proxy.newProxyInstance(Connection.class.getClassLoader(),
+                new Class<?>[]{Connection.class}, (proxy, metodo, args) -> {
+                    Object resultado;
+                    try {
+                        resultado = metodo.invoke(connection, args);
+                    } catch (InvocationTargetException e) {
+                        throw e.getCause();
+                    }
+                    if (resultado instanceof Statement) {
+                        Statement stmt = (Statement) resultado;
+                        long restante = prazo - System.nanoTime();
+                        if (restante <= 0) {
+                            stmt.close();
+                            throw new SQLTimeoutException("Prazo da requisição esgotado");
+                        }
+                        stmt.setQueryTimeout((int) ((restante + TimeUnit.SECONDS.toNanos(1) - 1)
+                                / TimeUnit.SECONDS.toNanos(1)));
+                    }
+                    return resultado;
+                });
+    }
+
+    /**
+     * Desfaz a transação aberta na conexão, se houver
+     *
+     * @param conn Conexão da transação ({@code null} é ignorado)
+     */
+    protected void desfazer(Connection conn) {
+        try {
+            if (conn != null) {
+                conn.rollback();
+            }
+        } catch (SQLException e) {
+            System.err.println("Erro ao desfazer transação: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Fecha a conexão, se houver
+     *
+     * @param conn Conexão a fechar ({@code null} é ignorado)
+     */
+    protected void fechar(Connection conn) {
+        try {
+            if (conn != null) {
+                conn.close();
+            }
+        } catch (SQLException e) {
+            System.err.println("Erro ao fechar conexão: " + e.getMessage());
+        }
+    }
 }
@@ -0,0 +1,29 @@
+package dao;
+
+import modelo.Produto;
+
+/**
+ * Alteração recusada porque o produto mudou desde que o cliente o leu (a
+ * versão enviada não é mais a do BD). Nada é gravado quando ela é lançada
+ */
+public class ConflitoVersaoException extends RuntimeException {
+
+    private static final long serialVersionUID = 1L;
+
+    private final Produto atual;
+
+    /**
+     * @param atual Produto como está no BD, com a versão atual
+     */
+    public ConflitoVersaoException(Produto atual) {
+        super("Produto " + atual.getId() + " alterado por outro usuário (versão atual " + atual.getVersao() + ")");
+        this.atual = atual;
+    }
+
+    /**
+     * @return Produto como está no BD, para o cliente reaplicar a alteração
+     */
+    public Produto getAtual() {
+        return atual;
+    }
+}
@@ -0,0 +1,50 @@
+package dao;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Function;
+
+/**
+ * Versão assíncrona de um DAO: cada chamada roda no {@link ExecutorJdbc} e
+ * devolve um {@link CompletableFuture}, para que chamadas independentes ao BD
+ * corram ao mesmo tempo
+ *
+ * <p><b>Exemplo de uso:</b></p>
+ * <pre>{@code
+ * CompletableFuture<Produto> produto = produtos.executar(dao -> dao.getProdutoById(id));
+ * CompletableFuture<List<Categoria>> categorias = categorias.executar(CategoriaDAO::getMinhaLista);
+ * }</pre>
+ *
+ * @param <D> Tipo do DAO
+ */
+public class DAOAssincrono<D extends ConexaoDAO> {
+
+    private final D dao;
+    private final ExecutorJdbc executor;
+
+    /**
+     * @param dao DAO bloqueante
+     * @param executor Pool das chamadas
+     */
+    public DAOAssincrono(D dao, ExecutorJdbc executor) {
+        this.dao = dao;
+        this.executor = executor;
+    }
+
+    /**
+     * Executa uma chamada do DAO no pool
+     *
+     * @param <T> Tipo do resultado
+     * @param chamada Chamada ao DAO
+     * @return Futuro com o resultado; falha com a exceção lançada pelo DAO
+     */
+    public <T> CompletableFuture<T> executar(Function<D, T> chamada) {
+        return executor.executar(() -> chamada.apply(dao));
+    }
+
+    /**
+     * @return Retorna o DAO bloqueante
+     */
+    public D getDAO() {
+        return dao;
+    }
+}
@@ -0,0 +1,479 @@
+package dao;
+
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.zip.CRC32;
+import modelo.ItemMovimentacao;
+import modelo.Lote;
+import modelo.Movimentacao;
+
+/**
+ * Diário local (append-only) das movimentações, gravado em segmentos mapeados
+ * em memória
+ * <p>
+ * Cada movimentação é gravada aqui antes de ir para o BD. Se o MySQL falhar,
+ * o registro continua pendente no diário e é reaplicado depois em
+ * <code>tb_movimentacao</code>. Formato de cada registro:
+ * </p>
+ * <pre>
+ * int tamanho | int crc32 | byte aplicado | long seq | int idProduto
+ * int quantidade | byte tipo | long dataHora | short tamanhoObs | obs
+ * [long validade | short retiradas | (int idLote | int quantidade)...]
+ * </pre>
+ * <p>
+ * No byte {@code tipo}, o bit 0 indica SAIDA, o bit 1 indica que a
+ * movimentação também altera a quantidade do produto (pedidos) e o bit 2
+ * indica que ela traz os lotes: a validade do lote criado por uma ENTRADA
+ * (dia desde a época, {@link Long#MIN_VALUE} sem validade) e os lotes
+ * consumidos por uma SAIDA. O CRC cobre
+ * do {@code seq} até o fim; o byte {@code aplicado} é marcado
+ * depois que o registro chega ao BD. Um segmento cheio dá lugar a outro, e
+ * segmentos sem registros pendentes são apagados
+ * </p>
+ */
+public class DiarioMovimentacoes {
+
+    private static final int TAMANHO_SEGMENTO = 8 * 1024 * 1024;
+    private static final int CABECALHO_REGISTRO = 4 + 4 + 1;
+    private static final String PREFIXO = "segmento-";
+    private static final String EXTENSAO = ".wal";
+    private static final long SEM_VALIDADE = Long.MIN_VALUE;
+
+    private final Path diretorio;
+    private final TreeMap<Long, Segmento> segmentos = new TreeMap<>();
+    private final TreeMap<Long, Posicao> pendentes = new TreeMap<>();
+    private Segmento atual;
+    private long proximaSeq;
+
+    /**
+     * Registro de uma movimentação no diário
+     */
+    public static class Registro {
+
+        private final long seq;
+        private final int idProduto;
+        private final int quantidade;
+        private final String tipo;
+        private final LocalDateTime dataHora;
+        private final String observacao;
+        private final boolean ajustaEstoque;
+        private final LocalDate validade;
+        private final List<Lote> retiradas;
+
+        private Registro(long seq, int idProduto, int quantidade, String tipo, LocalDateTime dataHora,
+                String observacao, boolean ajustaEstoque, LocalDate validade, List<Lote> retiradas) {
+            this.seq = seq;
+            this.idProduto = idProduto;
+            this.quantidade = quantidade;
+            this.tipo = tipo;
+            this.dataHora = dataHora;
+            this.observacao = observacao;
+            this.ajustaEstoque = ajustaEstoque;
+            this.validade = validade;
+            this.retiradas = retiradas;
+        }
+
+        /**
+         * @return Número de sequência do registro no diário
+         */
+        public long getSeq() {
+            return seq;
+        }
+
+        /**
+         * @return ID do produto
+         */
+        public int getIdProduto() {
+            return idProduto;
+        }
+
+        /**
+         * @return Quantidade movimentada
+         */
+        public int getQuantidade() {
+            return quantidade;
+        }
+
+        /**
+         * @return Tipo de movimentação (ENTRADA/SAIDA)
+         */
+        public String getTipo() {
+            return tipo;
+        }
+
+        /**
+         * @return Data e hora da movimentação
+         */
+        public LocalDateTime getDataHora() {
+            return dataHora;
+        }
+
+        /**
+         * @return Observação do registro
+         */
+        public String getObservacao() {
+            return observacao;
+        }
+
+        /**
+         * @return {@code true} se reaplicar o registro também deve alterar a
+         * quantidade do produto
+         */
+        public boolean isAjustaEstoque() {
+            return ajustaEstoque;
+        }
+
+        /**
+         * @return {@code true} se reaplicar o registro também deve alterar os
+         * lotes do produto
+         */
+        public boolean isComLotes() {
+            return retiradas != null;
+        }
+
+        /**
+         * @return Validade do lote criado por uma ENTRADA, ou {@code null}
+         */
+        public LocalDate getValidade() {
+            return validade;
+        }
+
+        /**
+         * @return Lotes consumidos por uma SAIDA, cada um com a quantidade
+         * retirada dele, ou {@code null} se o registro não traz os lotes
+         */
+        public List<Lote> getRetiradas() {
+            return retiradas;
+        }
+    }
+
+    /**
+     * Abre o diário, lendo os segmentos existentes e separando os registros
+     * ainda não aplicados no BD
+     *
+     * @param diretorio Pasta dos segmentos
+     * @throws IOException Caso a pasta ou os segmentos não possam ser abertos
+     */
+    public DiarioMovimentacoes(Path diretorio) throws IOException {
+        this.diretorio = diretorio;
+        Files.createDirectories(diretorio);
+
+        long maiorSeq = 0;
+        try (DirectoryStream<Path> arquivos = Files.newDirectoryStream(diretorio, PREFIXO + "*" + EXTENSAO)) {
+            for (Path arquivo : arquivos) {
+                Segmento segmento = new Segmento(arquivo);
+                segmentos.put(segmento.primeiraSeq, segmento);
+                maiorSeq = Math.max(maiorSeq, segmento.recuperar(pendentes));
+            }
+        }
+
+        // Segmentos antigos sem pendências já podem sair
+        for (Segmento segmento : new ArrayList<>(segmentos.values())) {
+            if (segmento.pendentes == 0) {
+                apagar(segmento);
+            }
+        }
+
+        // Sequências seguem crescendo entre execuções, mesmo sem segmentos
+        this.proximaSeq = Math.max(maiorSeq + 1, System.currentTimeMillis() * 1000);
+    }
+
+    /**
+     * Grava uma movimentação no diário e força a gravação em disco
+     *
+     * @param idProduto ID do produto
+     * @param quantidade Quantidade movimentada
+     * @param tipo Tipo de movimentação (ENTRADA/SAIDA)
+     * @param dataHora Data e hora da movimentação
+     * @param observacao Observação do registro
+     * @return Registro gravado, com o número de sequência
+     * @throws IOException Caso a gravação falhe
+     */
+    public synchronized Registro registrar(int idProduto, int quantidade, String tipo,
+            LocalDateTime dataHora, String observacao) throws IOException {
+        Registro registro = gravar(idProduto, quantidade, tipo, dataHora, observacao, false, null, null);
+        forcar();
+        return registro;
+    }
+
+    /**
+     * Grava todas as linhas de um pedido e força a gravação em disco uma vez
+     * só
+     * <p>
+     * Os registros ficam marcados para alterar a quantidade do produto ao
+     * serem reaplicados, já que a quantidade e a movimentação vão ao BD na
+     * mesma transação. Com lotes, cada linha leva também o lote que cria ou
+     * os que consome
+     * </p>
+     *
+     * @param itens Linhas do pedido
+     * @param dataHora Data e hora das movimentações
+     * @param observacao Observação dos registros
+     * @param lotes Lotes do pedido ({@code null} sem lotes)
+     * @return Registros gravados, na ordem das linhas
+     * @throws IOException Caso a gravação falhe
+     */
+    public synchronized List<Registro> registrarPedido(List<ItemMovimentacao> itens, LocalDateTime dataHora,
+            String observacao, LoteDAO.Alteracao lotes) throws IOException {
+        List<Registro> registros = new ArrayList<>(itens.size());
+        for (int i = 0; i < itens.size(); i++) {
+            ItemMovimentacao item = itens.get(i);
+            registros.add(gravar(item.getIdProduto(), item.getQuantidade(), item.getTipo(), dataHora, observacao, true,
+                    item.getValidade(), lotes != null ? lotes.getRetiradas().get(i) : null));
+        }
+        forcar();
+        return registros;
+    }
+
+    /**
+     * @param retiradas Lotes consumidos pela linha ({@code null} se o
+     * registro não traz lotes; aí a validade é ignorada)
+     */
+    private Registro gravar(int idProduto, int quantidade, String tipo, LocalDateTime dataHora,
+            String observacao, boolean ajustaEstoque, LocalDate validade, List<Lote> retiradas) throws IOException {
+        byte[] obs = (observacao != null ? observacao : "").getBytes(StandardCharsets.UTF_8);
+        int tamanho = 8 + 4 + 4 + 1 + 8 + 2 + obs.length;
+        if (retiradas != null) {
+            tamanho += 8 + 2 + retiradas.size() * (4 + 4);
+        }
+
+        if (atual == null || atual.livre() < CABECALHO_REGISTRO + tamanho + 4) {
+            forcar();
+            rolar();
+        }
+
+        Registro registro = new Registro(proximaSeq++, idProduto, quantidade, Movimentacao.normalizarTipo(tipo),
+                dataHora, observacao != null ? observacao : "", ajustaEstoque,
+                retiradas != null ? validade : null, retiradas);
+
+        ByteBuffer corpo = ByteBuffer.allocate(tamanho);
+        corpo.putLong(registro.seq);
+        corpo.putInt(idProduto);
+        corpo.putInt(quantidade);
+        corpo.put((byte) ((Movimentacao.ENTRADA.equals(registro.tipo) ? 0 : 1) | (ajustaEstoque ? 2 : 0)
+                | (retiradas != null ? 4 : 0)));
+        corpo.putLong(dataHora.toInstant(ZoneOffset.UTC).toEpochMilli());
+        corpo.putShort((short) obs.length);
+        corpo.put(obs);
+        if (retiradas != null) {
+            corpo.putLong(registro.validade != null ? registro.validade.toEpochDay() : SEM_VALIDADE);
+            corpo.putShort((short) retiradas.size());
+            for (Lote retirada : retiradas) {
+                corpo.putInt(retirada.getId());
+                corpo.putInt(retirada.getQuantidade());
+            }
+        }
+        corpo.flip();
+
+        CRC32 crc = new CRC32();
+        crc.update(corpo.duplicate());
+
+        int inicio = atual.escrita;
+        MappedByteBuffer mapa = atual.mapa;
+        mapa.position(inicio);
+        mapa.putInt(tamanho);
+        mapa.putInt((int) crc.getValue());
+        mapa.put((byte) 0);
+        mapa.put(corpo);
+        atual.escrita = mapa.position();
+
+        atual.pendentes++;
+        pendentes.put(registro.seq, new Posicao(atual, inicio, registro));
+        return registro;
+    }
+
+    /**
+     * Força em disco o que foi escrito no segmento atual desde a última vez
+     */
+    private void forcar() {
+        if (atual != null && atual.forcado < atual.escrita) {
+            atual.mapa.force(atual.forcado, atual.escrita - atual.forcado);
+            atual.forcado = atual.escrita;
+        }
+    }
+
+    /**
+     * Marca um registro como aplicado no BD (ou recusado por ele, o que
+     * também o tira do diário); o segmento é apagado quando não tiver mais
+     * pendências
+     *
+     * @param seq Número de sequência do registro
+     */
+    public synchronized void marcarAplicado(long seq) {
+        Posicao posicao = pendentes.remove(seq);
+        if (posicao == null) {
+            return;
+        }
+        posicao.segmento.mapa.put(posicao.offset + 8, (byte) 1);
+        posicao.segmento.pendentes--;
+        if (posicao.segmento.pendentes == 0 && posicao.segmento != atual) {
+            apagar(posicao.segmento);
+        }
+    }
+
+    /**
+     * @return Registros ainda não aplicados no BD, em ordem de sequência
+     */
+    public synchronized List<Registro> getPendentes() {
+        List<Registro> registros = new ArrayList<>(pendentes.size());
+        for (Posicao posicao : pendentes.values()) {
+            registros.add(posicao.registro);
+        }
+        return Collections.unmodifiableList(registros);
+    }
+
+    private void rolar() throws IOException {
+        if (atual != null && atual.pendentes == 0) {
+            apagar(atual);
+        }
+        Path arquivo = diretorio.resolve(String.format("%s%020d%s", PREFIXO, proximaSeq, EXTENSAO));
+        atual = new Segmento(arquivo);
+        segmentos.put(atual.primeiraSeq, atual);
+    }
+
+    private void apagar(Segmento segmento) {
+        segmentos.remove(segmento.primeiraSeq);
+        try {
+            segmento.canal.close();
+            desmapear(segmento.mapa);
+            Files.deleteIfExists(segmento.arquivo);
+        } catch (IOException e) {
+            System.err.println("Erro ao apagar segmento do diário: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Desfaz o mapeamento na hora, sem esperar o coletor de lixo: no Windows
+     * um arquivo mapeado não pode ser apagado. O buffer não pode mais ser
+     * usado depois disso
+     */
+    private static void desmapear(MappedByteBuffer mapa) {
+        try {
+            Class<?> classe = Class.forName("sun.misc.Unsafe");
+            Field instancia = classe.getDeclaredField("theUnsafe");
+            instancia.setAccessible(true);
+            classe.getMethod("invokeCleaner", ByteBuffer.class).invoke(instancia.get(null), mapa);
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            System.err.println("Segmento do diário fica mapeado até a coleta de lixo: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Local de um registro pendente
+     */
+    private static final class Posicao {
+
+        private final Segmento segmento;
+        private final int offset;
+        private final Registro registro;
+
+        private Posicao(Segmento segmento, int offset, Registro registro) {
+            this.segmento = segmento;
+            this.offset = offset;
+            this.registro = registro;
+        }
+    }
+
+    /**
+     * Arquivo de tamanho fixo mapeado em memória
+     */
+    private static final class Segmento {
+
+        private final Path arquivo;
+        private final long primeiraSeq;
+        private final FileChannel canal;
+        private final MappedByteBuffer mapa;
+        private int escrita;
+        private int forcado;
+        private int pendentes;
+
+        private Segmento(Path arquivo) throws IOException {
+            this.arquivo = arquivo;
+            String nome = arquivo.getFileName().toString();
+            this.primeiraSeq = Long.parseLong(nome.substring(PREFIXO.length(), nome.length() - EXTENSAO.length()));
+            this.canal = FileChannel.open(arquivo, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            this.mapa = canal.map(FileChannel.MapMode.READ_WRITE, 0, TAMANHO_SEGMENTO);
+        }
+
+        private int livre() {
+            return TAMANHO_SEGMENTO - escrita;
+        }
+
+        /**
+         * Lê os registros válidos do segmento até o primeiro vazio ou
+         * corrompido (gravação interrompida) e guarda os não aplicados
+         *
+         * @param destino Mapa de registros pendentes
+         * @return Maior sequência encontrada
+         */
+        private long recuperar(Map<Long, Posicao> destino) {
+            long maiorSeq = 0;
+            int offset = 0;
+
+            while (offset + CABECALHO_REGISTRO + 4 <= TAMANHO_SEGMENTO) {
+                int tamanho = mapa.getInt(offset);
+                if (tamanho <= 0 || offset + CABECALHO_REGISTRO + tamanho > TAMANHO_SEGMENTO) {
+                    break;
+                }
+                ByteBuffer corpo = mapa.slice(offset + CABECALHO_REGISTRO, tamanho);
+                CRC32 crc = new CRC32();
+                crc.update(corpo.duplicate());
+                if ((int) crc.getValue() != mapa.getInt(offset + 4)) {
+                    break;
+                }
+
+                long seq = corpo.getLong();
+                int idProduto = corpo.getInt();
+                int quantidade = corpo.getInt();
+                byte codigoTipo = corpo.get();
+                String tipo = (codigoTipo & 1) == 0 ? Movimentacao.ENTRADA : Movimentacao.SAIDA;
+                long dataHora = corpo.getLong();
+                byte[] obs = new byte[corpo.getShort() & 0xFFFF];
+                corpo.get(obs);
+                LocalDate validade = null;
+                List<Lote> retiradas = null;
+                if ((codigoTipo & 4) != 0) {
+                    long dia = corpo.getLong();
+                    validade = dia != SEM_VALIDADE ? LocalDate.ofEpochDay(dia) : null;
+                    int quantidadeRetiradas = corpo.getShort() & 0xFFFF;
+                    retiradas = new ArrayList<>(quantidadeRetiradas);
+                    for (int i = 0; i < quantidadeRetiradas; i++) {
+                        retiradas.add(new Lote(corpo.getInt(), idProduto, corpo.getInt(), null, null));
+                    }
+                }
+                maiorSeq = Math.max(maiorSeq, seq);
+
+                if (mapa.get(offset + 8) == 0) {
+                    Registro registro = new Registro(seq, idProduto, quantidade, tipo,
+                            LocalDateTime.ofEpochSecond(Math.floorDiv(dataHora, 1000L),
+                                    (int) Math.floorMod(dataHora, 1000L) * 1_000_000, ZoneOffset.UTC),
+                            new String(obs, StandardCharsets.UTF_8), (codigoTipo & 2) != 0, validade, retiradas);
+                    destino.put(seq, new Posicao(this, offset, registro));
+                    pendentes++;
+                }
+                offset += CABECALHO_REGISTRO + tamanho;
+            }
+
+            // Segmentos lidos na abertura não recebem novos registros
+            escrita = TAMANHO_SEGMENTO;
+            forcado = TAMANHO_SEGMENTO;
+            return maiorSeq;
+        }
+    }
+}
@@ -0,0 +1,74 @@
+package dao;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * Pool limitado de threads para as chamadas ao BD feitas em paralelo
+ * <p>
+ * Cada chamada abre a própria conexão, então o número de threads é também o
+ * limite de conexões abertas pelas consultas assíncronas. Com as threads
+ * ocupadas e a fila cheia, a chamada roda na própria thread de quem pediu: o
+ * servidor fica mais lento, mas não recusa a operação
+ * </p>
+ * <p>
+ * A chamada herda a última escrita da thread que a pediu, então uma leitura
+ * feita logo após uma escrita continua indo ao primário
+ * </p>
+ * <p>
+ * A chamada herda também o prazo da requisição: se ele esgotar enquanto a
+ * chamada espera na fila, ela é descartada sem ir ao BD
+ * </p>
+ */
+public class ExecutorJdbc {
+
+    private final ThreadPoolExecutor executor;
+
+    /**
+     * @param threads Quantidade de threads (e de conexões simultâneas)
+     * @param fila Chamadas que podem esperar por uma thread livre
+     */
+    public ExecutorJdbc(int threads, int fila) {
+        AtomicInteger contador = new AtomicInteger();
+        this.executor = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(fila), tarefa -> {
+                    Thread thread = new Thread(tarefa, "estoque-jdbc-" + contador.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                }, new ThreadPoolExecutor.CallerRunsPolicy());
+        this.executor.allowCoreThreadTimeOut(true);
+    }
+
+    /**
+     * Executa uma chamada ao BD no pool
+     *
+     * @param <T> Tipo do resultado
+     * @param chamada Chamada bloqueante
+     * @return Futuro com o resultado da chamada; falha com
+     * {@link CancellationException} se o prazo esgotar antes de ela começar
+     */
+    public <T> CompletableFuture<T> executar(Supplier<T> chamada) {
+        long ultimaEscrita = ConexaoDAO.getUltimaEscrita();
+        long prazo = ConexaoDAO.getPrazo();
+        return CompletableFuture.supplyAsync(() -> {
+            if (prazo != 0 && System.nanoTime() - prazo >= 0) {
+                throw new CancellationException("Prazo da requisição esgotado na fila do BD");
+            }
+            long anterior = ConexaoDAO.getUltimaEscrita();
+            long prazoAnterior = ConexaoDAO.getPrazo();
+            ConexaoDAO.setUltimaEscrita(ultimaEscrita);
+            ConexaoDAO.definirPrazo(prazo);
+            try {
+                return chamada.get();
+            } finally {
+                ConexaoDAO.setUltimaEscrita(anterior);
+                ConexaoDAO.definirPrazo(prazoAnterior);
+            }
+        }, executor);
+    }
+}
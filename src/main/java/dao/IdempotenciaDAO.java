@@ -0,0 +1,146 @@
+package dao;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import modelo.Mensagem;
+
+/**
+ * Guarda no BD as respostas por chave de idempotência
+ * <p>
+ * Tabela: <code>tb_idempotencia</code>. A resposta é gravada serializada,
+ * para ser devolvida igual a uma requisição repetida mesmo depois de um
+ * reinício do servidor
+ * </p>
+ */
+public class IdempotenciaDAO extends ConexaoDAO {
+
+    /**
+     * Resposta gravada de uma chave
+     */
+    public static class Registro {
+
+        private final String operacao;
+        private final Mensagem resposta;
+        private final LocalDateTime criadoEm;
+
+        private Registro(String operacao, Mensagem resposta, LocalDateTime criadoEm) {
+            this.operacao = operacao;
+            this.resposta = resposta;
+            this.criadoEm = criadoEm;
+        }
+
+        /**
+         * @return Operação executada com a chave
+         */
+        public String getOperacao() {
+            return operacao;
+        }
+
+        /**
+         * @return Resposta da operação
+         */
+        public Mensagem getResposta() {
+            return resposta;
+        }
+
+        /**
+         * @return Data e hora da execução
+         */
+        public LocalDateTime getCriadoEm() {
+            return criadoEm;
+        }
+    }
+
+    /**
+     * Busca a resposta de uma chave
+     *
+     * @param chave Chave de idempotência
+     * @param desde Ignora respostas gravadas antes desta data
+     * @return Resposta gravada ou {@code null} se não houver (ou se o BD
+     * falhar)
+     */
+    public Registro buscar(String chave, LocalDateTime desde) {
+        String sql = "SELECT operacao, resposta, criado_em FROM tb_idempotencia WHERE chave = ? AND criado_em >= ?";
+
+        try (Connection conn = this.getConexao(); PreparedStatement stmt = conn.prepareStatement(sql)) {
+
+            stmt.setString(1, chave);
+            stmt.setTimestamp(2, Timestamp.valueOf(desde));
+
+            try (ResultSet res = stmt.executeQuery()) {
+                if (!res.next()) {
+                    return null;
+                }
+                try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(res.getBytes("resposta")))) {
+                    return new Registro(res.getString("operacao"), (Mensagem) in.readObject(),
+                            res.getTimestamp("criado_em").toLocalDateTime());
+                }
+            }
+
+        } catch (SQLException | IOException | ClassNotFoundException | RuntimeException ex) {
+            System.err.println("Erro ao buscar chave de idempotência: " + ex.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Grava a resposta de uma chave; se a chave já existir, mantém a primeira
+     *
+     * @param chave Chave de idempotência
+     * @param operacao Operação executada
+     * @param resposta Resposta da operação
+     * @param criadoEm Data e hora da execução
+     * @return Retorna {@code true} se a gravação funcionar
+     */
+    public boolean gravar(String chave, String operacao, Mensagem resposta, LocalDateTime criadoEm) {
+        String sql = "INSERT IGNORE INTO tb_idempotencia (chave, operacao, resposta, criado_em) VALUES (?, ?, ?, ?)";
+
+        try (Connection conn = this.getConexao(); PreparedStatement stmt = conn.prepareStatement(sql)) {
+
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+                out.writeObject(resposta);
+            }
+
+            stmt.setString(1, chave);
+            stmt.setString(2, operacao);
+            stmt.setBytes(3, bytes.toByteArray());
+            stmt.setTimestamp(4, Timestamp.valueOf(criadoEm));
+            stmt.executeUpdate();
+            return true;
+
+        } catch (SQLException | IOException | RuntimeException ex) {
+            System.err.println("Erro ao gravar chave de idempotência: " + ex.getMessage());
+            return false;
+        }
+    }
+
+    /**
+     * Apaga as respostas gravadas antes de uma data
+     *
+     * @param limite Data limite, exclusiva
+     * @return Quantidade de respostas apagadas
+     */
+    public int apagarAnteriores(LocalDateTime limite) {
+        String sql = "DELETE FROM tb_idempotencia WHERE criado_em < ?";
+
+        try (Connection conn = this.getConexao(); PreparedStatement stmt = conn.prepareStatement(sql)) {
+
+            stmt.setTimestamp(1, Timestamp.valueOf(limite));
+            return stmt.executeUpdate();
+
+        } catch (SQLException | RuntimeException ex) {
+            System.err.println("Erro ao apagar chaves de idempotência: " + ex.getMessage());
+            return 0;
+        }
+    }
+}
@@ -0,0 +1,229 @@
+package dao;
+
+import java.sql.Connection;
+import java.sql.Date;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import modelo.Lote;
+import modelo.Movimentacao;
+
+/**
+ * Operações com os lotes de produtos no BD
+ * <p>
+ * Tabela: <code>tb_lote</code>, indexada por (id_produto, validade) e por
+ * validade
+ * </p>
+ */
+public class LoteDAO extends ConexaoDAO {
+
+    /**
+     * Lotes criados e alterados por um pedido, gravados na mesma transação das
+     * movimentações (ver {@link MovimentaDAO#registrarPedido(List, String, Alteracao)})
+     * <p>
+     * As retiradas de cada linha também vão para o diário junto com ela, para
+     * que um pedido pendente altere os lotes ao ser reaplicado
+     * </p>
+     */
+    public static class Alteracao {
+
+        private final List<Lote> novos;
+        private final List<Lote> alterados;
+        private final List<List<Lote>> retiradas;
+        private boolean gravada;
+
+        /**
+         * @param novos Lotes criados pelas ENTRADAS (recebem o ID gerado)
+         * @param alterados Lotes com a nova quantidade depois das SAIDAS
+         * @param retiradas Lotes consumidos por cada linha do pedido, cada um
+         * com a quantidade retirada dele (lista vazia nas ENTRADAS)
+         */
+        public Alteracao(List<Lote> novos, List<Lote> alterados, List<List<Lote>> retiradas) {
+            this.novos = novos;
+            this.alterados = alterados;
+            this.retiradas = retiradas;
+        }
+
+        /**
+         * @return Lotes criados, com o ID gerado depois de gravados
+         */
+        public List<Lote> getNovos() {
+            return novos;
+        }
+
+        /**
+         * @return Lotes alterados, com a nova quantidade
+         */
+        public List<Lote> getAlterados() {
+            return alterados;
+        }
+
+        /**
+         * @return Lotes consumidos por cada linha do pedido, na ordem das
+         * linhas
+         */
+        public List<List<Lote>> getRetiradas() {
+            return retiradas;
+        }
+
+        /**
+         * @return {@code true} se os lotes foram gravados junto com o pedido;
+         * {@code false} se o pedido ficou pendente no diário
+         */
+        public boolean isGravada() {
+            return gravada;
+        }
+
+        void setGravada(boolean gravada) {
+            this.gravada = gravada;
+        }
+    }
+
+    /**
+     * Grava os lotes de um pedido na conexão (e transação) informada
+     *
+     * @param conn Conexão da transação do pedido
+     * @param alteracao Lotes criados e alterados
+     * @throws SQLException Caso alguma gravação falhe
+     */
+    static void gravar(Connection conn, Alteracao alteracao) throws SQLException {
+        String inserir = "INSERT INTO tb_lote (id_produto, quantidade, validade, data_entrada) VALUES (?, ?, ?, ?)";
+        String atualizar = "UPDATE tb_lote SET quantidade = ? WHERE id = ?";
+
+        if (!alteracao.novos.isEmpty()) {
+            try (PreparedStatement stmt = conn.prepareStatement(inserir, Statement.RETURN_GENERATED_KEYS)) {
+                for (Lote lote : alteracao.novos) {
+                    stmt.setInt(1, lote.getIdProduto());
+                    stmt.setInt(2, lote.getQuantidade());
+                    stmt.setDate(3, lote.getValidade() != null ? Date.valueOf(lote.getValidade()) : null);
+                    stmt.setTimestamp(4, Timestamp.valueOf(lote.getDataEntrada()));
+                    stmt.addBatch();
+                }
+                stmt.executeBatch();
+                try (ResultSet chaves = stmt.getGeneratedKeys()) {
+                    for (Lote lote : alteracao.novos) {
+                        if (chaves.next()) {
+                            lote.setId(chaves.getInt(1));
+                        }
+                    }
+                }
+            }
+        }
+        if (!alteracao.alterados.isEmpty()) {
+            try (PreparedStatement stmt = conn.prepareStatement(atualizar)) {
+                for (Lote lote : alteracao.alterados) {
+                    stmt.setInt(1, lote.getQuantidade());
+                    stmt.setInt(2, lote.getId());
+                    stmt.addBatch();
+                }
+                stmt.executeBatch();
+            }
+        }
+    }
+
+    /**
+     * Aplica os lotes de uma linha de pedido reaplicada do diário, na
+     * transação que a insere
+     * <p>
+     * Uma ENTRADA cria o lote com a data da movimentação; uma SAIDA desconta
+     * de cada lote a quantidade retirada dele. Os descontos são relativos, já
+     * que o BD ainda não viu a linha
+     * </p>
+     *
+     * @param conn Conexão da transação da linha
+     * @param registro Linha do pedido lida do diário, com os lotes
+     * @throws SQLException Caso alguma gravação falhe
+     */
+    static void reaplicar(Connection conn, DiarioMovimentacoes.Registro registro) throws SQLException {
+        if (Movimentacao.ENTRADA.equals(registro.getTipo())) {
+            String inserir = "INSERT INTO tb_lote (id_produto, quantidade, validade, data_entrada) VALUES (?, ?, ?, ?)";
+            try (PreparedStatement stmt = conn.prepareStatement(inserir)) {
+                stmt.setInt(1, registro.getIdProduto());
+                stmt.setInt(2, registro.getQuantidade());
+                stmt.setDate(3, registro.getValidade() != null ? Date.valueOf(registro.getValidade()) : null);
+                stmt.setTimestamp(4, Timestamp.valueOf(registro.getDataHora()));
+                stmt.executeUpdate();
+            }
+            return;
+        }
+        if (registro.getRetiradas().isEmpty()) {
+            return;
+        }
+        try (PreparedStatement stmt = conn.prepareStatement("UPDATE tb_lote SET quantidade = quantidade - ? WHERE id = ?")) {
+            for (Lote retirada : registro.getRetiradas()) {
+                stmt.setInt(1, retirada.getQuantidade());
+                stmt.setInt(2, retirada.getId());
+                stmt.addBatch();
+            }
+            stmt.executeBatch();
+        }
+    }
+
+    /**
+     * Retorna os lotes com saldo de um produto
+     *
+     * @param idProduto ID do produto
+     * @return Lotes com quantidade maior que zero
+     */
+    public List<Lote> getLotesDisponiveis(int idProduto) {
+        String sql = "SELECT * FROM tb_lote WHERE id_produto = ? AND quantidade > 0";
+
+        try (Connection conn = this.getConexao(); PreparedStatement stmt = conn.prepareStatement(sql)) {
+
+            stmt.setInt(1, idProduto);
+            try (ResultSet res = stmt.executeQuery()) {
+                return lerLotes(res);
+            }
+
+        } catch (SQLException ex) {
+            System.err.println("Erro ao listar lotes: " + ex.getMessage());
+            throw new RuntimeException("Erro ao listar lotes", ex);
+        }
+    }
+
+    /**
+     * Retorna os lotes com saldo que vencem em um período, pelo índice de
+     * validade
+     *
+     * @param desde Primeira data de validade (inclusive), para deixar de fora
+     * os lotes já vencidos
+     * @param limite Data limite de validade (inclusive)
+     * @return Lotes ordenados por validade
+     */
+    public List<Lote> getLotesVencendo(LocalDate desde, LocalDate limite) {
+        String sql = "SELECT * FROM tb_lote WHERE validade BETWEEN ? AND ? AND quantidade > 0 ORDER BY validade";
+
+        try (Connection conn = this.getConexaoLeitura(); PreparedStatement stmt = conn.prepareStatement(sql)) {
+
+            stmt.setDate(1, Date.valueOf(desde));
+            stmt.setDate(2, Date.valueOf(limite));
+            try (ResultSet res = stmt.executeQuery()) {
+                return lerLotes(res);
+            }
+
+        } catch (SQLException ex) {
+            System.err.println("Erro ao listar lotes vencendo: " + ex.getMessage());
+            throw new RuntimeException("Erro ao listar lotes vencendo", ex);
+        }
+    }
+
+    private List<Lote> lerLotes(ResultSet res) throws SQLException {
+        List<Lote> lotes = new ArrayList<>();
+        while (res.next()) {
+            Date validade = res.getDate("validade");
+            lotes.add(new Lote(
+                    res.getInt("id"),
+                    res.getInt("id_produto"),
+                    res.getInt("quantidade"),
+                    validade != null ? validade.toLocalDate() : null,
+                    res.getTimestamp("data_entrada").toLocalDateTime()
+            ));
+        }
+        return lotes;
+    }
+}
@@ -0,0 +1,99 @@
+package dao;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+/**
+ * Atualiza o esquema de um BD já instalado
+ * <p>
+ * O {@code banco.sql} só cria as tabelas que ainda não existem; colunas e
+ * índices acrescentados depois não chegam a um BD antigo. Cada passo aqui
+ * consulta o {@code information_schema} e só altera a tabela se o que ele
+ * acrescenta ainda não existir, então a migração pode rodar a cada
+ * inicialização
+ * </p>
+ */
+public class MigracaoBanco extends ConexaoDAO {
+
+    private static final String SQL_EXISTE_COLUNA = "SELECT 1 FROM information_schema.COLUMNS "
+            + "WHERE TABLE_SCHEMA = DATABASE() AND TABLE_NAME = ? AND COLUMN_NAME = ?";
+
+    private static final String SQL_EXISTE_INDICE = "SELECT 1 FROM information_schema.STATISTICS "
+            + "WHERE TABLE_SCHEMA = DATABASE() AND TABLE_NAME = ? AND INDEX_NAME = ?";
+
+    /**
+     * Aplica as migrações que faltam
+     *
+     * @return {@code true} se o esquema ficou atualizado; {@code false} se o
+     * BD estiver fora do ar ou algum passo falhar
+     */
+    public boolean migrar() {
+        try (Connection conn = this.getConexao()) {
+            if (conn == null) {
+                return false;
+            }
+            adicionarColuna(conn, "tb_produtodao", "versao", "INT NOT NULL DEFAULT 1");
+            adicionarColuna(conn, "tb_movimentacao", "id_diario", "BIGINT NULL");
+            criarIndice(conn, "tb_movimentacao", "uk_movimentacao_diario",
+                    "UNIQUE INDEX uk_movimentacao_diario (id_diario)");
+            criarIndice(conn, "tb_movimentacao", "idx_movimentacao_produto_data",
+                    "INDEX idx_movimentacao_produto_data (id_produto, data_hora)");
+            criarIndice(conn, "tb_movimentacao", "idx_movimentacao_data",
+                    "INDEX idx_movimentacao_data (data_hora)");
+            return true;
+        } catch (SQLException ex) {
+            System.err.println("Erro ao migrar o banco: " + ex.getMessage());
+            return false;
+        }
+    }
+
+    /**
+     * Acrescenta uma coluna se ela ainda não existir
+     *
+     * @param conn Conexão com o BD
+     * @param tabela Nome da tabela
+     * @param coluna Nome da coluna
+     * @param definicao Definição da coluna (tipo, nulidade e padrão)
+     * @throws SQLException Se a consulta ou o {@code ALTER TABLE} falhar
+     */
+    private void adicionarColuna(Connection conn, String tabela, String coluna, String definicao) throws SQLException {
+        if (!existe(conn, SQL_EXISTE_COLUNA, tabela, coluna)) {
+            executar(conn, "ALTER TABLE " + tabela + " ADD COLUMN " + coluna + " " + definicao);
+        }
+    }
+
+    /**
+     * Cria um índice se ainda não houver um com o mesmo nome
+     *
+     * @param conn Conexão com o BD
+     * @param tabela Nome da tabela
+     * @param indice Nome do índice
+     * @param definicao Definição do índice, como no {@code CREATE TABLE}
+     * @throws SQLException Se a consulta ou o {@code ALTER TABLE} falhar
+     */
+    private void criarIndice(Connection conn, String tabela, String indice, String definicao) throws SQLException {
+        if (!existe(conn, SQL_EXISTE_INDICE, tabela, indice)) {
+            executar(conn, "ALTER TABLE " + tabela + " ADD " + definicao);
+        }
+    }
+
+    private boolean existe(Connection conn, String sql, String tabela, String nome) throws SQLException {
+        try (PreparedStatement stmt = conn.prepareStatement(sql)) {
+            stmt.setString(1, tabela);
+            stmt.setString(2, nome);
+            try (ResultSet res = stmt.executeQuery()) {
+                return res.next();
+            }
+        }
+    }
+
+    private void executar(Connection conn, String sql) throws SQLException {
+        try (Statement stmt = conn.createStatement()) {
+            stmt.execute(sql);
+        }
+        System.out.println("Migração aplicada: " + sql);
+    }
+}
@@ -1,16 +1,36 @@
 package dao;
 
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.StandardCharsets;
 import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.sql.SQLNonTransientConnectionException;
+import java.sql.SQLNonTransientException;
+import java.sql.SQLTransientConnectionException;
 import java.sql.Statement;
 import java.sql.Timestamp;
+import java.sql.Types;
+import java.time.LocalDate;
 import java.time.LocalDateTime;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import modelo.ItemMovimentacao;
+import modelo.Movimentacao;
+import modelo.TotalMovimentacao;
 
 /**
  * Realiza operações de movimentação de produtos no BD
@@ -19,11 +39,174 @@ import java.util.Map;
  * Inclui métodos para: Registrar movimentações, consultar histórico, listar
  * movimentações e obter ID
  * </p>
+ * <p>
+ * Movimentações mais antigas que o histórico ativo podem ser arquivadas: vão
+ * para <code>tb_movimentacao_arquivo</code> e são somadas por dia e produto
+ * em <code>tb_movimentacao_resumo</code>. As consultas de histórico só leem o
+ * arquivo quando o período chega antes do histórico ativo
+ * </p>
  */
 public class MovimentaDAO extends ConexaoDAO {
 
+    /**
+     * Quantidade máxima de registros devolvida quando a consulta não informa
+     * limite
+     */
+    public static final int LIMITE_PADRAO = 1000;
+
+    /**
+     * Limites usados quando a consulta não informa início ou fim do período
+     */
+    private static final Timestamp INICIO_PADRAO = Timestamp.valueOf("1000-01-01 00:00:00");
+    private static final Timestamp FIM_PADRAO = Timestamp.valueOf("9999-12-31 23:59:59");
+
+    private static final String TABELA_ATIVA = "tb_movimentacao";
+    private static final String TABELA_ARQUIVO = "tb_movimentacao_arquivo";
+
+    /**
+     * Tamanho do buffer de escrita da exportação
+     */
+    private static final int BUFFER_EXPORTACAO = 1024 * 1024;
+
+    /**
+     * Inserção de movimentação; a sequência do diário é única na tabela, então
+     * reaplicar um registro que já chegou ao BD não o duplica (e não conta
+     * como linha alterada)
+     */
+    private static final String SQL_INSERIR = "INSERT INTO tb_movimentacao"
+            + "(id_produto, quantidade, tipo, data_hora, observacao, id_diario) "
+            + "VALUES(?,?,?,?,?,?) ON DUPLICATE KEY UPDATE id = id";
+
+    /**
+     * Inserção que ignora a movimentação se a sequência do diário já estiver
+     * no BD, devolvendo 0 linhas nesse caso
+     */
+    private static final String SQL_INSERIR_SE_NOVA = "INSERT IGNORE INTO tb_movimentacao"
+            + "(id_produto, quantidade, tipo, data_hora, observacao, id_diario) VALUES(?,?,?,?,?,?)";
+
+    private static final String SQL_AJUSTAR_ESTOQUE = "UPDATE tb_produtodao SET quantidade = quantidade + ?, "
+            + "versao = versao + 1 WHERE id = ?";
+
+    private static final String CABECALHO_CSV = "id;id_produto;produto;tipo;quantidade;data_hora;observacao\n";
+
+    /**
+     * Como agrupar os totais de movimentação
+     * <p>
+     * Os produtos são agrupados e ordenados pelo ID numérico; ele só vira o
+     * texto da chave ao montar o {@link TotalMovimentacao}
+     * </p>
+     */
+    public enum Agrupamento {
+        PRODUTO("m.id_produto"),
+        CATEGORIA("p.categoria"),
+        GERAL("'TOTAL'");
+
+        private final String coluna;
+
+        Agrupamento(String coluna) {
+            this.coluna = coluna;
+        }
+    }
+
+    /**
+     * Tamanho dos períodos dos totais de movimentação
+     */
+    public enum Intervalo {
+        HORA("%Y-%m-%d %H:00"),
+        DIA("%Y-%m-%d"),
+        MES("%Y-%m");
+
+        private final String formato;
+
+        Intervalo(String formato) {
+            this.formato = formato;
+        }
+    }
+
+    /**
+     * Diário local das movimentações, {@code null} quando não usado
+     */
+    private final DiarioMovimentacoes diario;
+
+    /**
+     * Sequências do diário de pedidos que estão sendo gravados direto no BD;
+     * a reaplicação para antes delas
+     */
+    private final Set<Long> emGravacao = ConcurrentHashMap.newKeySet();
+
+    /**
+     * Dias mantidos em <code>tb_movimentacao</code>, 0 sem arquivamento
+     */
+    private final int diasHistoricoAtivo;
+
+    /**
+     * Construtor sem diário: as movimentações vão direto para o BD
+     */
+    public MovimentaDAO() {
+        this(null, 0);
+    }
+
+    /**
+     * Construtor com diário: cada movimentação é gravada no diário antes do BD
+     *
+     * @param diario Diário local das movimentações
+     */
+    public MovimentaDAO(DiarioMovimentacoes diario) {
+        this(diario, 0);
+    }
+
+    /**
+     * Construtor com diário e arquivamento do histórico
+     *
+     * @param diario Diário local das movimentações ({@code null} sem diário)
+     * @param diasHistoricoAtivo Dias mantidos na tabela ativa antes de
+     * arquivar (0 sem arquivamento)
+     */
+    public MovimentaDAO(DiarioMovimentacoes diario, int diasHistoricoAtivo) {
+        this.diario = diario;
+        this.diasHistoricoAtivo = Math.max(0, diasHistoricoAtivo);
+    }
+
+    /**
+     * @return Retorna o início do histórico ativo: as movimentações anteriores
+     * podem estar arquivadas. {@code null} sem arquivamento
+     */
+    public LocalDateTime getInicioHistoricoAtivo() {
+        if (diasHistoricoAtivo == 0) {
+            return null;
+        }
+        return LocalDate.now().minusDays(diasHistoricoAtivo).atStartOfDay();
+    }
+
+    /**
+     * Verifica se um período pode ter movimentações arquivadas
+     * <p>
+     * O início do histórico ativo só avança, então todo corte já usado no
+     * arquivamento é anterior ou igual ao atual
+     * </p>
+     *
+     * @param inicio Início do período ({@code null} sem limite)
+     * @return Retorna {@code true} se o período começa antes do histórico
+     * ativo
+     */
+    public boolean alcancaArquivo(LocalDateTime inicio) {
+        LocalDateTime ativo = getInicioHistoricoAtivo();
+        return ativo != null && (inicio == null || inicio.isBefore(ativo));
+    }
+
+    private String[] tabelasHistorico(LocalDateTime inicio) {
+        return alcancaArquivo(inicio) ? new String[]{TABELA_ATIVA, TABELA_ARQUIVO} : new String[]{TABELA_ATIVA};
+    }
+
     /**
      * Registra uma movimentação (entrada ou saída) de um produto no BD
+     * <p>
+     * Com diário, a movimentação é gravada nele primeiro; se o BD estiver
+     * fora do ar ela fica pendente para {@link #reaplicarDiario(Set)} e o
+     * registro é considerado feito. Se o BD recusar o comando
+     * ({@link #isFalhaPermanente(Exception)}), reaplicar não adiantaria: ela
+     * sai do diário e o registro falha
+     * </p>
      *
      * @param idProduto ID do produto
      * @param quantidade quantidade de itens movimentada
@@ -33,60 +216,457 @@ public class MovimentaDAO extends ConexaoDAO {
      * caso algum erro aconteça
      */
     public boolean registrarMovimentacao(int idProduto, int quantidade, String tipo, String observacao) {
-        String sql = "INSERT INTO tb_movimentacao(id_produto, quantidade, tipo, data_hora, observacao) VALUES(?,?,?,?,?)";
+        if (diario == null) {
+            return inserirMovimentacao(idProduto, quantidade, tipo, LocalDateTime.now(), observacao, null);
+        }
 
-        try (Connection conn = this.getConexao(); PreparedStatement stmt = conn.prepareStatement(sql)) {
+        DiarioMovimentacoes.Registro registro;
+        try {
+            registro = diario.registrar(idProduto, quantidade, tipo, LocalDateTime.now(), observacao);
+        } catch (IOException erro) {
+            System.err.println("Erro ao gravar movimentação no diário: " + erro.getMessage());
+            return inserirMovimentacao(idProduto, quantidade, tipo, LocalDateTime.now(), observacao, null);
+        }
 
-            stmt.setInt(1, idProduto);
-            stmt.setInt(2, quantidade);
-            stmt.setString(3, tipo.toUpperCase());
-            stmt.setTimestamp(4, Timestamp.valueOf(LocalDateTime.now()));
-            stmt.setString(5, observacao != null ? observacao : "");
+        try {
+            aplicar(registro);
+            diario.marcarAplicado(registro.getSeq());
+        } catch (SQLException | RuntimeException erro) {
+            if (isFalhaPermanente(erro)) {
+                diario.marcarAplicado(registro.getSeq());
+                System.err.println("Movimentação recusada pelo BD: " + erro.getMessage());
+                return false;
+            }
+            System.err.println("Movimentação " + registro.getSeq() + " mantida no diário para reaplicar: "
+                    + erro.getMessage());
+        }
+        return true;
+    }
+
+    /**
+     * Grava no BD as movimentações pendentes do diário, em ordem, parando na
+     * primeira falha de conexão
+     * <p>
+     * Um registro que o BD recusa ({@link #isFalhaPermanente(Exception)}) é
+     * retirado do diário com os dados no log de erros, para não segurar os
+     * seguintes (nem os checkpoints e o arquivamento, que esperam o diário
+     * esvaziar)
+     * </p>
+     *
+     * @param produtosAlterados Recebe os IDs dos produtos cuja quantidade foi
+     * alterada pelas linhas de pedido reaplicadas
+     * @return Quantidade de movimentações reaplicadas
+     */
+    public int reaplicarDiario(Set<Integer> produtosAlterados) {
+        if (diario == null) {
+            return 0;
+        }
+        int aplicadas = 0;
+        for (DiarioMovimentacoes.Registro registro : diario.getPendentes()) {
+            if (emGravacao.contains(registro.getSeq())) {
+                // Pedido ainda sendo gravado por outra thread: se ele for recusado, não pode chegar ao BD por aqui
+                break;
+            }
+            try {
+                aplicar(registro);
+            } catch (SQLException | RuntimeException erro) {
+                if (!isFalhaPermanente(erro)) {
+                    System.err.println("Erro ao reaplicar movimentação " + registro.getSeq() + ": "
+                            + erro.getMessage());
+                    break;
+                }
+                System.err.println("Movimentação " + registro.getSeq() + " recusada pelo BD e retirada do diário ("
+                        + registro.getTipo() + " de " + registro.getQuantidade() + " do produto "
+                        + registro.getIdProduto() + " em " + registro.getDataHora() + "): " + erro.getMessage());
+                diario.marcarAplicado(registro.getSeq());
+                continue;
+            }
+            diario.marcarAplicado(registro.getSeq());
+            if (registro.isAjustaEstoque()) {
+                produtosAlterados.add(registro.getIdProduto());
+            }
+            aplicadas++;
+        }
+        return aplicadas;
+    }
 
-            return stmt.executeUpdate() > 0;
+    /**
+     * @return Retorna {@code true} se há movimentações do diário ainda não
+     * gravadas no BD
+     */
+    public boolean temPendentesNoDiario() {
+        return diario != null && !diario.getPendentes().isEmpty();
+    }
 
-        } catch (SQLException erro) {
-            System.err.println("Erro ao registrar movimentação: " + erro.getMessage());
+    /**
+     * @param idsProdutos IDs dos produtos
+     * @return Retorna {@code true} se alguma linha de pedido de um dos
+     * produtos ainda está pendente no diário
+     */
+    public boolean temPedidosPendentes(Collection<Integer> idsProdutos) {
+        if (diario == null) {
             return false;
         }
+        for (DiarioMovimentacoes.Registro registro : diario.getPendentes()) {
+            if (registro.isAjustaEstoque() && idsProdutos.contains(registro.getIdProduto())) {
+                return true;
+            }
+        }
+        return false;
     }
 
     /**
-     * Retorna o histórico de movimentações de um produto
+     * Verifica se uma falha do BD se repetiria ao tentar de novo
+     * <p>
+     * É permanente quando o BD recusa o próprio comando (esquema, dados); a
+     * falta de conexão, os tempos esgotados e os deadlocks passam
+     * </p>
      *
-     * @param idProduto ID do produto
-     * @return Retorna uma lista com os registros do histórico Cada mapa da
-     * lista possui: {@code data_hora},{@code tipo}, {@code quantidade} e
-     * {@code observacao}D
+     * @param erro Falha ao gravar
+     * @return Retorna {@code true} se reaplicar o mesmo comando não adiantaria
      */
-    public List<Map<String, Object>> getHistoricoPorProduto(int idProduto) {
-        List<Map<String, Object>> historico = new ArrayList<>();
-        String sql = "SELECT * FROM tb_movimentacao WHERE id_produto = ? ORDER BY data_hora DESC";
+    static boolean isFalhaPermanente(Exception erro) {
+        return erro instanceof SQLNonTransientException && !(erro instanceof SQLNonTransientConnectionException);
+    }
+
+    private void aplicar(DiarioMovimentacoes.Registro registro) throws SQLException {
+        if (registro.isAjustaEstoque()) {
+            aplicarComEstoque(registro);
+            return;
+        }
+        try (Connection conn = this.getConexao(); PreparedStatement stmt = conn.prepareStatement(SQL_INSERIR)) {
+            preencherInsercao(stmt, registro.getIdProduto(), registro.getQuantidade(), registro.getTipo(),
+                    registro.getDataHora(), registro.getObservacao(), registro.getSeq());
+            stmt.executeUpdate();
+        }
+    }
+
+    /**
+     * Reaplica uma linha de pedido: insere a movimentação e, se ela ainda não
+     * estava no BD, altera a quantidade do produto e os lotes na mesma
+     * transação
+     */
+    private void aplicarComEstoque(DiarioMovimentacoes.Registro registro) throws SQLException {
+        Connection conn = null;
+        try {
+            conn = this.getConexao();
+            conn.setAutoCommit(false);
+
+            int inseridas;
+            try (PreparedStatement stmt = conn.prepareStatement(SQL_INSERIR_SE_NOVA)) {
+                preencherInsercao(stmt, registro.getIdProduto(), registro.getQuantidade(), registro.getTipo(),
+                        registro.getDataHora(), registro.getObservacao(), registro.getSeq());
+                inseridas = stmt.executeUpdate();
+            }
+            if (inseridas == 1) {
+                try (PreparedStatement stmt = conn.prepareStatement(SQL_AJUSTAR_ESTOQUE)) {
+                    stmt.setInt(1, Movimentacao.ENTRADA.equals(registro.getTipo())
+                            ? registro.getQuantidade() : -registro.getQuantidade());
+                    stmt.setInt(2, registro.getIdProduto());
+                    stmt.executeUpdate();
+                }
+                if (registro.isComLotes()) {
+                    LoteDAO.reaplicar(conn, registro);
+                }
+            }
+
+            conn.commit();
+
+        } catch (SQLException | RuntimeException erro) {
+            desfazer(conn);
+            throw erro;
+        } finally {
+            fechar(conn);
+        }
+    }
+
+    /**
+     * Registra as linhas de um pedido de uma vez só: quantidades e
+     * movimentações na mesma transação
+     * <p>
+     * Os produtos são bloqueados ({@code SELECT ... FOR UPDATE}) em ordem de
+     * ID, então pedidos concorrentes com produtos em comum esperam um pelo
+     * outro em vez de entrar em deadlock. Todas as linhas são validadas antes
+     * de qualquer escrita; se alguma falhar, nada é gravado. Com diário, as
+     * linhas vão para ele em um lote só antes de qualquer acesso ao BD; se o
+     * BD estiver fora do ar o pedido fica pendente no diário e é reaplicado.
+     * Um pedido com produtos que já têm linhas pendentes também fica pendente,
+     * atrás delas, para que o BD as receba na ordem do diário. Se o BD recusar
+     * o pedido (produto inexistente, estoque insuficiente ou
+     * {@link #isFalhaPermanente(Exception)}), as linhas saem do diário e o
+     * pedido falha
+     * </p>
+     * <p>
+     * Um pedido pendente não passou pela validação do BD: quem chama deve ter
+     * conferido os produtos e o estoque antes
+     * </p>
+     *
+     * @param itens Linhas do pedido
+     * @param observacao Observação dos registros
+     * @return Nova quantidade de cada produto do pedido, ou mapa vazio se o
+     * pedido ficou pendente no diário
+     * @throws MovimentacaoInvalidaException Caso alguma linha seja inválida
+     * (nada é gravado)
+     * @throws RuntimeException Caso o BD falhe sem o pedido estar no diário
+     */
+    public Map<Integer, Integer> registrarPedido(List<ItemMovimentacao> itens, String observacao) {
+        return registrarPedido(itens, observacao, null);
+    }
+
+    /**
+     * Registra as linhas de um pedido e os lotes criados e consumidos por ele
+     * na mesma transação
+     * <p>
+     * Os lotes vão para o diário junto com as linhas. Se o pedido ficar
+     * pendente, eles são gravados quando ele for reaplicado e
+     * {@link LoteDAO.Alteracao#isGravada()} continua {@code false}
+     * </p>
+     *
+     * @param itens Linhas do pedido
+     * @param observacao Observação dos registros
+     * @param lotes Lotes do pedido ({@code null} sem lotes)
+     * @return Nova quantidade de cada produto do pedido, ou mapa vazio se o
+     * pedido ficou pendente no diário
+     * @throws MovimentacaoInvalidaException Caso alguma linha seja inválida
+     * (nada é gravado)
+     * @throws RuntimeException Caso o BD falhe sem o pedido estar no diário
+     */
+    public Map<Integer, Integer> registrarPedido(List<ItemMovimentacao> itens, String observacao,
+            LoteDAO.Alteracao lotes) {
+        if (itens == null || itens.isEmpty()) {
+            throw new MovimentacaoInvalidaException("Pedido sem itens");
+        }
+        // Ordenado por ID: é a ordem dos bloqueios e das escritas
+        TreeMap<Integer, Integer> variacoes = new TreeMap<>();
+        for (ItemMovimentacao item : itens) {
+            if (item.getQuantidade() <= 0) {
+                throw new MovimentacaoInvalidaException("Quantidade inválida para o produto " + item.getIdProduto());
+            }
+            if (!Movimentacao.ENTRADA.equals(item.getTipo()) && !Movimentacao.SAIDA.equals(item.getTipo())) {
+                throw new MovimentacaoInvalidaException("Tipo de movimentação inválido: " + item.getTipo());
+            }
+            variacoes.merge(item.getIdProduto(), item.getSaldo(), Integer::sum);
+        }
+
+        LocalDateTime agora = LocalDateTime.now();
+        List<DiarioMovimentacoes.Registro> registros = null;
+        if (diario != null) {
+            boolean atrasado = temPedidosPendentes(variacoes.keySet());
+            try {
+                registros = diario.registrarPedido(itens, agora, observacao, lotes);
+            } catch (IOException erro) {
+                System.err.println("Erro ao gravar pedido no diário: " + erro.getMessage());
+            }
+            if (registros != null && atrasado) {
+                return Collections.emptyMap();
+            }
+            if (registros != null) {
+                for (DiarioMovimentacoes.Registro registro : registros) {
+                    emGravacao.add(registro.getSeq());
+                }
+            }
+        }
+
+        Map<Integer, Integer> quantidades = new HashMap<>();
+        Connection conn = null;
+        try {
+            conn = this.getConexao();
+            if (conn == null) {
+                throw new SQLTransientConnectionException("Sem conexão com o BD");
+            }
+            conn.setAutoCommit(false);
+
+            travarProdutos(conn, variacoes, quantidades);
+
+            try (PreparedStatement stmt = conn.prepareStatement(SQL_AJUSTAR_ESTOQUE)) {
+                for (Map.Entry<Integer, Integer> variacao : variacoes.entrySet()) {
+                    stmt.setInt(1, variacao.getValue());
+                    stmt.setInt(2, variacao.getKey());
+                    stmt.addBatch();
+                }
+                stmt.executeBatch();
+            }
+            try (PreparedStatement stmt = conn.prepareStatement(SQL_INSERIR)) {
+                for (int i = 0; i < itens.size(); i++) {
+                    ItemMovimentacao item = itens.get(i);
+                    preencherInsercao(stmt, item.getIdProduto(), item.getQuantidade(), item.getTipo(), agora,
+                            observacao, registros != null ? registros.get(i).getSeq() : null);
+                    stmt.addBatch();
+                }
+                stmt.executeBatch();
+            }
+            if (lotes != null) {
+                LoteDAO.gravar(conn, lotes);
+            }
 
-        try (Connection conn = this.getConexao(); PreparedStatement stmt = conn.prepareStatement(sql)) {
+            conn.commit();
+            if (lotes != null) {
+                lotes.setGravada(true);
+            }
+            marcarAplicados(registros);
+            return quantidades;
 
-            stmt.setInt(1, idProduto);
-            ResultSet res = stmt.executeQuery();
+        } catch (SQLException | RuntimeException erro) {
+            desfazer(conn);
+            if (erro instanceof MovimentacaoInvalidaException) {
+                marcarAplicados(registros);
+                throw (MovimentacaoInvalidaException) erro;
+            }
+            if (registros != null && !isFalhaPermanente(erro)) {
+                System.err.println("Pedido mantido no diário para reaplicar: " + erro.getMessage());
+                return Collections.emptyMap();
+            }
+            marcarAplicados(registros);
+            System.err.println("Erro ao registrar pedido: " + erro.getMessage());
+            throw new RuntimeException("Erro ao registrar pedido", erro);
+        } finally {
+            fechar(conn);
+            if (registros != null) {
+                for (DiarioMovimentacoes.Registro registro : registros) {
+                    emGravacao.remove(registro.getSeq());
+                }
+            }
+        }
+    }
+
+    /**
+     * Tira do diário os registros de um pedido gravado ou recusado
+     *
+     * @param registros Registros do pedido ({@code null} sem diário)
+     */
+    private void marcarAplicados(List<DiarioMovimentacoes.Registro> registros) {
+        if (registros != null) {
+            for (DiarioMovimentacoes.Registro registro : registros) {
+                diario.marcarAplicado(registro.getSeq());
+            }
+        }
+    }
 
-            while (res.next()) {
-                Map<String, Object> registro = new HashMap<>();
+    /**
+     * Bloqueia os produtos do pedido em ordem de ID e calcula as novas
+     * quantidades, recusando produtos inexistentes e estoque insuficiente
+     */
+    private void travarProdutos(Connection conn, TreeMap<Integer, Integer> variacoes,
+            Map<Integer, Integer> quantidades) throws SQLException {
+        StringBuilder sql = new StringBuilder("SELECT id, produto, quantidade FROM tb_produtodao WHERE id IN (");
+        for (int i = 0; i < variacoes.size(); i++) {
+            sql.append(i == 0 ? "?" : ",?");
+        }
+        sql.append(") ORDER BY id FOR UPDATE");
 
-                Timestamp timestamp = res.getTimestamp("data_hora");
-                if (timestamp != null) {
-                    registro.put("data_hora", timestamp.toLocalDateTime());
-                } else {
-                    registro.put("data_hora", null);
+        Map<Integer, String> nomes = new HashMap<>();
+        try (PreparedStatement stmt = conn.prepareStatement(sql.toString())) {
+            int indice = 1;
+            for (Integer id : variacoes.keySet()) {
+                stmt.setInt(indice++, id);
+            }
+            try (ResultSet res = stmt.executeQuery()) {
+                while (res.next()) {
+                    quantidades.put(res.getInt("id"), res.getInt("quantidade"));
+                    nomes.put(res.getInt("id"), res.getString("produto"));
                 }
+            }
+        }
 
-                String tipo = res.getString("tipo");
-                int quantidade = res.getInt("quantidade");
-                String observacao = res.getString("observacao");
+        for (Map.Entry<Integer, Integer> variacao : variacoes.entrySet()) {
+            Integer atual = quantidades.get(variacao.getKey());
+            if (atual == null) {
+                throw new MovimentacaoInvalidaException("Produto não encontrado com ID: " + variacao.getKey());
+            }
+            int nova = atual + variacao.getValue();
+            if (nova < 0) {
+                throw new MovimentacaoInvalidaException("Estoque insuficiente para " + nomes.get(variacao.getKey()));
+            }
+            quantidades.put(variacao.getKey(), nova);
+        }
+    }
+
+    /**
+     * Insere a movimentação em <code>tb_movimentacao</code>
+     * <p>
+     * A sequência do diário é única na tabela, então reaplicar um registro que
+     * já chegou ao BD não o duplica
+     * </p>
+     */
+    private boolean inserirMovimentacao(int idProduto, int quantidade, String tipo, LocalDateTime dataHora,
+            String observacao, Long seqDiario) {
+        try (Connection conn = this.getConexao(); PreparedStatement stmt = conn.prepareStatement(SQL_INSERIR)) {
 
-                registro.put("tipo", tipo);
-                registro.put("quantidade", quantidade);
-                registro.put("observacao", observacao);
+            preencherInsercao(stmt, idProduto, quantidade, tipo, dataHora, observacao, seqDiario);
+            stmt.executeUpdate();
+            return true;
 
-                historico.add(registro);
+        } catch (SQLException | RuntimeException erro) {
+            // Sem conexão o getConexao devolve null e a falha chega como RuntimeException
+            System.err.println("Erro ao registrar movimentação: " + erro.getMessage());
+            return false;
+        }
+    }
+
+    private static void preencherInsercao(PreparedStatement stmt, int idProduto, int quantidade, String tipo,
+            LocalDateTime dataHora, String observacao, Long seqDiario) throws SQLException {
+        stmt.setInt(1, idProduto);
+        stmt.setInt(2, quantidade);
+        stmt.setString(3, tipo.toUpperCase());
+        stmt.setTimestamp(4, Timestamp.valueOf(dataHora));
+        stmt.setString(5, observacao != null ? observacao : "");
+        if (seqDiario != null) {
+            stmt.setLong(6, seqDiario);
+        } else {
+            stmt.setNull(6, Types.BIGINT);
+        }
+    }
+
+    /**
+     * Retorna as últimas movimentações de um produto
+     *
+     * @param idProduto ID do produto
+     * @return Retorna até {@link #LIMITE_PADRAO} registros do histórico
+     * @see #getHistoricoPorProduto(int, LocalDateTime, LocalDateTime, int)
+     */
+    public List<Movimentacao> getHistoricoPorProduto(int idProduto) {
+        return getHistoricoPorProduto(idProduto, null, null, LIMITE_PADRAO);
+    }
+
+    /**
+     * Retorna o histórico de movimentações de um produto em um período
+     * <p>
+     * A consulta percorre o índice (id_produto, data_hora) a partir do fim do
+     * período e para no limite, então o custo depende só do tamanho do
+     * resultado. O arquivo só é lido se a tabela ativa não completar o limite
+     * e o período chegar antes do histórico ativo
+     * </p>
+     *
+     * @param idProduto ID do produto
+     * @param inicio Início do período, inclusivo ({@code null} sem limite)
+     * @param fim Fim do período, exclusivo ({@code null} sem limite)
+     * @param limite Quantidade máxima de registros
+     * @return Retorna uma lista com os registros do histórico, do mais recente
+     * para o mais antigo
+     */
+    public List<Movimentacao> getHistoricoPorProduto(int idProduto, LocalDateTime inicio, LocalDateTime fim, int limite) {
+        List<Movimentacao> historico = new ArrayList<>();
+        String sql = "SELECT id, id_produto, quantidade, tipo, data_hora, observacao FROM %s "
+                + "WHERE id_produto = ? AND data_hora >= ? AND data_hora < ? "
+                + "ORDER BY data_hora DESC LIMIT ?";
+
+        try (Connection conn = this.getConexaoLeitura()) {
+
+            for (String tabela : tabelasHistorico(inicio)) {
+                int restante = limite - historico.size();
+                if (restante <= 0) {
+                    break;
+                }
+                try (PreparedStatement stmt = conn.prepareStatement(String.format(sql, tabela))) {
+                    stmt.setInt(1, idProduto);
+                    stmt.setTimestamp(2, inicio != null ? Timestamp.valueOf(inicio) : INICIO_PADRAO);
+                    stmt.setTimestamp(3, fim != null ? Timestamp.valueOf(fim) : FIM_PADRAO);
+                    stmt.setInt(4, restante);
+
+                    try (ResultSet res = stmt.executeQuery()) {
+                        lerMovimentacoes(res, false, historico);
+                    }
+                }
             }
 
         } catch (SQLException ex) {
@@ -97,31 +677,41 @@ public class MovimentaDAO extends ConexaoDAO {
     }
 
     /**
-     * Retorna todas as movimentações no sistema e nome do produto associado
+     * Retorna as movimentações de um período com o nome do produto associado
+     * <p>
+     * Usa o índice de data_hora e para no limite; o arquivo só é lido se a
+     * tabela ativa não completar o limite
+     * </p>
      *
-     * @return Retorna uma lista com registros das movimentações Cada mapa da
-     * ilsta possui: {@code id},{@code id_produto}, {@code nome_produto},
-     * {@code quantidade},{@code tipo},{@code data_hora} e {@code observacao}
+     * @param inicio Início do período, inclusivo ({@code null} sem limite)
+     * @param fim Fim do período, exclusivo ({@code null} sem limite)
+     * @param limite Quantidade máxima de registros
+     * @return Retorna uma lista com registros das movimentações, do mais
+     * recente para o mais antigo, com o nome do produto preenchido
      */
-    public List<Map<String, Object>> getTodasMovimentacoes() {
-        List<Map<String, Object>> movimentacoes = new ArrayList<>();
-        String sql = "SELECT m.*, p.produto as nome_produto FROM tb_movimentacao m "
+    public List<Movimentacao> getMovimentacoes(LocalDateTime inicio, LocalDateTime fim, int limite) {
+        List<Movimentacao> movimentacoes = new ArrayList<>();
+        String sql = "SELECT m.*, p.produto as nome_produto FROM %s m "
                 + "JOIN tb_produtodao p ON m.id_produto = p.id "
-                + "ORDER BY m.data_hora DESC";
+                + "WHERE m.data_hora >= ? AND m.data_hora < ? "
+                + "ORDER BY m.data_hora DESC LIMIT ?";
 
-        try (Connection conn = this.getConexao(); Statement stmt = conn.createStatement(); ResultSet res = stmt.executeQuery(sql)) {
+        try (Connection conn = this.getConexaoLeitura()) {
 
-            while (res.next()) {
-                Map<String, Object> registro = new HashMap<>();
-                registro.put("id", res.getInt("id"));
-                registro.put("id_produto", res.getInt("id_produto"));
-                registro.put("nome_produto", res.getString("nome_produto"));
-                registro.put("quantidade", res.getInt("quantidade"));
-                registro.put("tipo", res.getString("tipo"));
-                registro.put("data_hora", res.getTimestamp("data_hora").toLocalDateTime());
-                registro.put("observacao", res.getString("observacao"));
+            for (String tabela : tabelasHistorico(inicio)) {
+                int restante = limite - movimentacoes.size();
+                if (restante <= 0) {
+                    break;
+                }
+                try (PreparedStatement stmt = conn.prepareStatement(String.format(sql, tabela))) {
+                    stmt.setTimestamp(1, inicio != null ? Timestamp.valueOf(inicio) : INICIO_PADRAO);
+                    stmt.setTimestamp(2, fim != null ? Timestamp.valueOf(fim) : FIM_PADRAO);
+                    stmt.setInt(3, restante);
 
-                movimentacoes.add(registro);
+                    try (ResultSet res = stmt.executeQuery()) {
+                        lerMovimentacoes(res, true, movimentacoes);
+                    }
+                }
             }
 
         } catch (SQLException ex) {
@@ -131,15 +721,316 @@ public class MovimentaDAO extends ConexaoDAO {
         return movimentacoes;
     }
 
+    /**
+     * Converte as linhas de uma consulta em {@link Movimentacao}
+     * <p>
+     * Nomes de produto e observações repetidos passam a apontar para o mesmo
+     * texto, o que diminui a memória e o tamanho serializado da lista
+     * </p>
+     *
+     * @param res Resultado posicionado antes da primeira linha
+     * @param comNome Se a consulta traz a coluna {@code nome_produto}
+     * @param destino Lista que recebe os registros
+     * @throws SQLException Caso a leitura falhe
+     */
+    private void lerMovimentacoes(ResultSet res, boolean comNome, List<Movimentacao> destino) throws SQLException {
+        Map<String, String> textos = new HashMap<>();
+
+        while (res.next()) {
+            Timestamp dataHora = res.getTimestamp("data_hora");
+            String nome = comNome ? compartilhar(textos, res.getString("nome_produto")) : null;
+
+            destino.add(new Movimentacao(
+                    res.getInt("id"),
+                    res.getInt("id_produto"),
+                    nome,
+                    res.getInt("quantidade"),
+                    res.getString("tipo"),
+                    dataHora != null ? dataHora.toLocalDateTime() : null,
+                    compartilhar(textos, res.getString("observacao"))
+            ));
+        }
+    }
+
+    private static String compartilhar(Map<String, String> textos, String texto) {
+        if (texto == null) {
+            return null;
+        }
+        String existente = textos.putIfAbsent(texto, texto);
+        return existente != null ? existente : texto;
+    }
+
+    /**
+     * Exporta as movimentações de um período em CSV (separado por ponto e
+     * vírgula, UTF-8), da mais antiga para a mais recente
+     * <p>
+     * As linhas vêm do MySQL em streaming (cursor só para frente, uma linha
+     * por vez) e são codificadas direto em um buffer que é despejado no canal
+     * quando enche, então a memória usada não depende da quantidade de linhas
+     * </p>
+     *
+     * @param inicio Início do período, inclusivo ({@code null} sem limite)
+     * @param fim Fim do período, exclusivo ({@code null} sem limite)
+     * @param destino Canal onde o CSV é escrito
+     * @return Quantidade de movimentações exportadas
+     * @throws IOException Caso a escrita no canal falhe
+     */
+    public long exportarMovimentacoes(LocalDateTime inicio, LocalDateTime fim, WritableByteChannel destino) throws IOException {
+        String sql = "SELECT m.id, m.id_produto, p.produto, m.tipo, m.quantidade, m.data_hora, m.observacao FROM %s m "
+                + "JOIN tb_produtodao p ON m.id_produto = p.id "
+                + "WHERE m.data_hora >= ? AND m.data_hora < ? ORDER BY m.data_hora";
+        // O arquivo guarda as mais antigas, então vem primeiro
+        String[] tabelas = alcancaArquivo(inicio) ? new String[]{TABELA_ARQUIVO, TABELA_ATIVA} : new String[]{TABELA_ATIVA};
+
+        ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_EXPORTACAO);
+        CharsetEncoder codificador = StandardCharsets.UTF_8.newEncoder();
+        StringBuilder linha = new StringBuilder(256).append(CABECALHO_CSV);
+        escrever(linha, codificador, buffer, destino);
+        long exportadas = 0;
+
+        try (Connection conn = this.getConexaoLeitura()) {
+            for (String tabela : tabelas) {
+                try (PreparedStatement stmt = conn.prepareStatement(String.format(sql, tabela),
+                        ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY)) {
+                    // Valor especial do driver MySQL: envia as linhas uma a uma em vez de carregar todas
+                    stmt.setFetchSize(Integer.MIN_VALUE);
+                    stmt.setTimestamp(1, inicio != null ? Timestamp.valueOf(inicio) : INICIO_PADRAO);
+                    stmt.setTimestamp(2, fim != null ? Timestamp.valueOf(fim) : FIM_PADRAO);
+
+                    try (ResultSet res = stmt.executeQuery()) {
+                        int colunas = res.getMetaData().getColumnCount();
+                        while (res.next()) {
+                            linha.setLength(0);
+                            for (int i = 1; i <= colunas; i++) {
+                                if (i > 1) {
+                                    linha.append(';');
+                                }
+                                campoCsv(linha, res.getString(i));
+                            }
+                            linha.append('\n');
+                            escrever(linha, codificador, buffer, destino);
+                            exportadas++;
+                        }
+                    }
+                }
+            }
+        } catch (SQLException ex) {
+            System.err.println("Erro ao exportar movimentações: " + ex.getMessage());
+            throw new RuntimeException("Erro ao exportar movimentações", ex);
+        }
+
+        despejar(buffer, destino);
+        return exportadas;
+    }
+
+    /**
+     * Acrescenta um campo ao CSV, entre aspas se tiver separador, aspas ou
+     * quebra de linha
+     */
+    private static void campoCsv(StringBuilder linha, String valor) {
+        if (valor == null) {
+            return;
+        }
+        if (valor.indexOf(';') < 0 && valor.indexOf('"') < 0 && valor.indexOf('\n') < 0 && valor.indexOf('\r') < 0) {
+            linha.append(valor);
+            return;
+        }
+        linha.append('"');
+        for (int i = 0; i < valor.length(); i++) {
+            char c = valor.charAt(i);
+            if (c == '"') {
+                linha.append('"');
+            }
+            linha.append(c);
+        }
+        linha.append('"');
+    }
+
+    /**
+     * Codifica o texto no buffer, despejando-o no canal sempre que encher
+     */
+    private static void escrever(CharSequence texto, CharsetEncoder codificador, ByteBuffer buffer,
+            WritableByteChannel destino) throws IOException {
+        CharBuffer caracteres = CharBuffer.wrap(texto);
+        while (true) {
+            CoderResult resultado = codificador.encode(caracteres, buffer, true);
+            if (resultado.isOverflow()) {
+                despejar(buffer, destino);
+            } else if (resultado.isUnderflow()) {
+                codificador.reset();
+                return;
+            } else {
+                resultado.throwException();
+            }
+        }
+    }
+
+    private static void despejar(ByteBuffer buffer, WritableByteChannel destino) throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            destino.write(buffer);
+        }
+        buffer.clear();
+    }
+
+    /**
+     * Soma as entradas e saídas por grupo e período direto no BD
+     * <p>
+     * O agrupamento é feito pelo MySQL, então o cliente recebe uma linha por
+     * grupo e período em vez de todas as movimentações. No trecho arquivado,
+     * os totais por dia e mês vêm do resumo diário (o dia do início conta
+     * inteiro) e os por hora vêm do arquivo
+     * </p>
+     *
+     * @param agrupamento Agrupar por produto, categoria ou geral
+     * @param intervalo Período de cada total (hora, dia ou mês)
+     * @param inicio Início do período, inclusivo ({@code null} sem limite)
+     * @param fim Fim do período, exclusivo ({@code null} sem limite)
+     * @param idProduto Restringe a um produto ({@code null} para todos)
+     * @return Totais ordenados por período e chave
+     */
+    public List<TotalMovimentacao> getTotaisPorPeriodo(Agrupamento agrupamento, Intervalo intervalo,
+            LocalDateTime inicio, LocalDateTime fim, Integer idProduto) {
+        List<TotalMovimentacao> totais = new ArrayList<>();
+        String filtroProduto = idProduto != null ? "AND id_produto = ? " : "";
+        String movimentacoes = "SELECT id_produto, data_hora, "
+                + "CASE WHEN tipo = 'ENTRADA' THEN quantidade ELSE 0 END AS entradas, "
+                + "CASE WHEN tipo = 'SAIDA' THEN quantidade ELSE 0 END AS saidas "
+                + "FROM %s WHERE data_hora >= ? AND data_hora < ? " + filtroProduto;
+        String resumo = "SELECT id_produto, dia AS data_hora, entradas, saidas FROM tb_movimentacao_resumo "
+                + "WHERE dia >= DATE(?) AND dia < ? " + filtroProduto;
+
+        String fonte = String.format(movimentacoes, TABELA_ATIVA);
+        boolean comArquivo = alcancaArquivo(inicio);
+        if (comArquivo) {
+            fonte += "UNION ALL " + (intervalo == Intervalo.HORA ? String.format(movimentacoes, TABELA_ARQUIVO) : resumo);
+        }
+
+        String sql = "SELECT " + agrupamento.coluna + " AS chave, "
+                + "DATE_FORMAT(m.data_hora, '" + intervalo.formato + "') AS periodo, "
+                + "SUM(m.entradas) AS entradas, SUM(m.saidas) AS saidas "
+                + "FROM (" + fonte + ") m "
+                + (agrupamento == Agrupamento.CATEGORIA ? "JOIN tb_produtodao p ON m.id_produto = p.id " : "")
+                + "GROUP BY chave, periodo ORDER BY periodo, chave";
+
+        try (Connection conn = this.getConexaoLeitura(); PreparedStatement stmt = conn.prepareStatement(sql)) {
+
+            int indice = 1;
+            for (int parte = comArquivo ? 2 : 1; parte > 0; parte--) {
+                stmt.setTimestamp(indice++, inicio != null ? Timestamp.valueOf(inicio) : INICIO_PADRAO);
+                stmt.setTimestamp(indice++, fim != null ? Timestamp.valueOf(fim) : FIM_PADRAO);
+                if (idProduto != null) {
+                    stmt.setInt(indice++, idProduto);
+                }
+            }
+
+            try (ResultSet res = stmt.executeQuery()) {
+                while (res.next()) {
+                    totais.add(new TotalMovimentacao(
+                            res.getString("chave"),
+                            res.getString("periodo"),
+                            res.getLong("entradas"),
+                            res.getLong("saidas")
+                    ));
+                }
+            }
+
+        } catch (SQLException ex) {
+            System.err.println("Erro ao agregar movimentações: " + ex.getMessage());
+            throw new RuntimeException("Erro ao agregar movimentações", ex);
+        }
+
+        return totais;
+    }
+
+    /**
+     * Arquiva as movimentações anteriores a uma data
+     * <p>
+     * Cada lote é uma transação: soma as movimentações no resumo diário por
+     * produto, copia as linhas para o arquivo e as remove da tabela ativa.
+     * Assim uma movimentação nunca fica nas duas tabelas nem em nenhuma, e os
+     * bloqueios duram só um lote
+     * </p>
+     *
+     * @param corte Data limite, exclusiva
+     * @param tamanhoLote Quantidade máxima de movimentações por transação
+     * @return Quantidade de movimentações arquivadas
+     * @throws RuntimeException Caso algum lote falhe (os anteriores ficam
+     * arquivados)
+     */
+    public int arquivarMovimentacoes(LocalDateTime corte, int tamanhoLote) {
+        String proximoLote = "SELECT MAX(id) AS ate FROM (SELECT id FROM tb_movimentacao "
+                + "WHERE data_hora < ? ORDER BY id LIMIT ?) lote";
+        String resumir = "INSERT INTO tb_movimentacao_resumo (id_produto, dia, entradas, saidas, movimentacoes) "
+                + "SELECT id_produto, DATE(data_hora), "
+                + "SUM(CASE WHEN tipo = 'ENTRADA' THEN quantidade ELSE 0 END), "
+                + "SUM(CASE WHEN tipo = 'SAIDA' THEN quantidade ELSE 0 END), COUNT(*) "
+                + "FROM tb_movimentacao WHERE data_hora < ? AND id <= ? "
+                + "GROUP BY id_produto, DATE(data_hora) "
+                + "ON DUPLICATE KEY UPDATE entradas = entradas + VALUES(entradas), "
+                + "saidas = saidas + VALUES(saidas), movimentacoes = movimentacoes + VALUES(movimentacoes)";
+        String copiar = "INSERT INTO tb_movimentacao_arquivo "
+                + "(id, id_produto, quantidade, tipo, data_hora, observacao, id_diario) "
+                + "SELECT id, id_produto, quantidade, tipo, data_hora, observacao, id_diario "
+                + "FROM tb_movimentacao WHERE data_hora < ? AND id <= ?";
+        String remover = "DELETE FROM tb_movimentacao WHERE data_hora < ? AND id <= ?";
+
+        Timestamp limite = Timestamp.valueOf(corte);
+        int arquivadas = 0;
+        Connection conn = null;
+        try {
+            conn = this.getConexao();
+            conn.setAutoCommit(false);
+
+            while (true) {
+                long ate;
+                try (PreparedStatement stmt = conn.prepareStatement(proximoLote)) {
+                    stmt.setTimestamp(1, limite);
+                    stmt.setInt(2, tamanhoLote);
+                    try (ResultSet res = stmt.executeQuery()) {
+                        res.next();
+                        ate = res.getLong("ate");
+                        if (res.wasNull()) {
+                            conn.commit();
+                            return arquivadas;
+                        }
+                    }
+                }
+
+                for (String sql : new String[]{resumir, copiar}) {
+                    try (PreparedStatement stmt = conn.prepareStatement(sql)) {
+                        stmt.setTimestamp(1, limite);
+                        stmt.setLong(2, ate);
+                        stmt.executeUpdate();
+                    }
+                }
+                try (PreparedStatement stmt = conn.prepareStatement(remover)) {
+                    stmt.setTimestamp(1, limite);
+                    stmt.setLong(2, ate);
+                    arquivadas += stmt.executeUpdate();
+                }
+                conn.commit();
+            }
+
+        } catch (SQLException ex) {
+            System.err.println("Erro ao arquivar movimentações: " + ex.getMessage());
+            desfazer(conn);
+            throw new RuntimeException("Erro ao arquivar movimentações", ex);
+        } finally {
+            fechar(conn);
+        }
+    }
+
     /**
      * Retorna o maior ID no BD
      *
-     * @return Retorna o maior valor de {@code id} no {@code tb_movimentacao} ou
-     * 0, caso não haja nenhum registro
+     * @return Retorna o maior valor de {@code id} entre as movimentações
+     * ativas e arquivadas ou 0, caso não haja nenhum registro
      */
     public int maiorID() {
         int maiorID = 0;
-        String sql = "SELECT MAX(id) as max_id FROM tb_movimentacao";
+        String sql = "SELECT GREATEST(COALESCE((SELECT MAX(id) FROM tb_movimentacao), 0), "
+                + "COALESCE((SELECT MAX(id) FROM tb_movimentacao_arquivo), 0)) as max_id";
 
         try (Connection conn = this.getConexao(); Statement stmt = conn.createStatement(); ResultSet res = stmt.executeQuery(sql)) {
 
@@ -0,0 +1,17 @@
+package dao;
+
+/**
+ * Movimentação recusada na validação: produto inexistente, quantidade
+ * inválida ou estoque insuficiente. Nada é gravado quando ela é lançada
+ */
+public class MovimentacaoInvalidaException extends RuntimeException {
+
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * @param mensagem Motivo da recusa, já pronto para mostrar ao usuário
+     */
+    public MovimentacaoInvalidaException(String mensagem) {
+        super(mensagem);
+    }
+}
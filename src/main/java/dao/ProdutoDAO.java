@@ -38,7 +38,8 @@ public class ProdutoDAO extends ConexaoDAO {
                         res.getString("categoria"),
                         res.getInt("quantidade"),
                         res.getInt("estoqueminimo"),
-                        res.getInt("estoquemaximo")
+                        res.getInt("estoquemaximo"),
+                        res.getInt("versao")
                 );
                 produtos.add(objeto);
             }
@@ -177,9 +178,15 @@ public class ProdutoDAO extends ConexaoDAO {
     /**
      * Atualiza um produto no banco de dados com valores fixos para estoque
      * mínimo e máximo
+     * <p>
+     * Se o produto trouxer versão (maior que 0), só grava se ela ainda for a
+     * do BD; a versão avança a cada alteração
+     * </p>
      *
      * @param produto Produto com dados atualizados
      * @return true se atualizado com sucesso, false caso contrário
+     * @throws ConflitoVersaoException Caso o produto tenha mudado desde a
+     * versão informada
      */
     public boolean updateProdutoBD(Produto produto) {
         Connection conn = null;
@@ -191,7 +198,8 @@ public class ProdutoDAO extends ConexaoDAO {
 
             conn = this.getConexao();
             String sql = "UPDATE tb_produtodao SET produto = ?, preco = ?, unidade = ?, "
-                    + "categoria = ?, quantidade = ?, estoqueminimo = ?, estoquemaximo = ? WHERE id = ?";
+                    + "categoria = ?, quantidade = ?, estoqueminimo = ?, estoquemaximo = ?, versao = versao + 1 "
+                    + "WHERE id = ?" + (produto.getVersao() > 0 ? " AND versao = ?" : "");
 
             stmt = conn.prepareStatement(sql);
             stmt.setString(1, produto.getProduto());
@@ -202,9 +210,19 @@ public class ProdutoDAO extends ConexaoDAO {
             stmt.setInt(6, estoqueMinimoFixo);
             stmt.setInt(7, estoqueMaximoFixo);
             stmt.setInt(8, produto.getId());
+            if (produto.getVersao() > 0) {
+                stmt.setInt(9, produto.getVersao());
+            }
 
             int rowsAffected = stmt.executeUpdate();
-            return rowsAffected > 0;
+            if (rowsAffected == 0) {
+                verificarConflito(produto.getId(), produto.getVersao());
+                return false;
+            }
+            if (produto.getVersao() > 0) {
+                produto.setVersao(produto.getVersao() + 1);
+            }
+            return true;
 
         } catch (SQLException e) {
             System.err.println("Erro ao atualizar produto: " + e.getMessage());
@@ -223,6 +241,19 @@ public class ProdutoDAO extends ConexaoDAO {
         }
     }
 
+    /**
+     * Chamado quando uma alteração não encontrou a linha: se a versão foi
+     * conferida e o produto existe, a falha foi conflito de versão
+     */
+    private void verificarConflito(int id, int versao) {
+        if (versao > 0) {
+            Produto atual = getProdutoById(id);
+            if (atual != null) {
+                throw new ConflitoVersaoException(atual);
+            }
+        }
+    }
+
     /**
      * Busca um produto pelo ID
      *
@@ -246,7 +277,8 @@ public class ProdutoDAO extends ConexaoDAO {
                             res.getString("categoria"),
                             res.getInt("quantidade"),
                             res.getInt("estoqueminimo"),
-                            res.getInt("estoquemaximo")
+                            res.getInt("estoquemaximo"),
+                            res.getInt("versao")
                     );
                 }
             }
@@ -265,14 +297,35 @@ public class ProdutoDAO extends ConexaoDAO {
      * @return true se atualizado com sucesso, false caso contrário
      */
     public boolean updatePrecoBD(int id, double novoPreco) {
-        String sql = "UPDATE tb_produtodao SET preco = ? WHERE id = ?";
+        return updatePrecoBD(id, novoPreco, 0);
+    }
+
+    /**
+     * Atualiza apenas o preço de um produto, conferindo a versão
+     *
+     * @param id ID do produto
+     * @param novoPreco Novo preço
+     * @param versao Versão lida pelo cliente (0 não confere)
+     * @return true se atualizado com sucesso, false caso contrário
+     * @throws ConflitoVersaoException Caso o produto tenha mudado desde a
+     * versão informada
+     */
+    public boolean updatePrecoBD(int id, double novoPreco, int versao) {
+        String sql = "UPDATE tb_produtodao SET preco = ?, versao = versao + 1 WHERE id = ?"
+                + (versao > 0 ? " AND versao = ?" : "");
 
         try (Connection conn = this.getConexao(); PreparedStatement stmt = conn.prepareStatement(sql)) {
 
             stmt.setDouble(1, novoPreco);
             stmt.setInt(2, id);
+            if (versao > 0) {
+                stmt.setInt(3, versao);
+            }
 
             int rowsAffected = stmt.executeUpdate();
+            if (rowsAffected == 0) {
+                verificarConflito(id, versao);
+            }
             return rowsAffected > 0;
 
         } catch (SQLException ex) {
@@ -289,7 +342,7 @@ public class ProdutoDAO extends ConexaoDAO {
      * @return true se atualizado com sucesso, false caso contrário
      */
     public boolean updateQuantidadeBD(int id, int novaQuantidade) {
-        String sql = "UPDATE tb_produtodao SET quantidade = ? WHERE id = ?";
+        String sql = "UPDATE tb_produtodao SET quantidade = ?, versao = versao + 1 WHERE id = ?";
 
         try (Connection conn = this.getConexao(); PreparedStatement stmt = conn.prepareStatement(sql)) {
 
@@ -329,6 +382,7 @@ public class ProdutoDAO extends ConexaoDAO {
                     objeto.setQuantidade(res.getInt("quantidade"));
                     objeto.setEstoqueminimo(res.getInt("estoqueminimo"));
                     objeto.setEstoquemaximo(res.getInt("estoquemaximo"));
+                    objeto.setVersao(res.getInt("versao"));
                 }
             }
 
@@ -362,7 +416,8 @@ public class ProdutoDAO extends ConexaoDAO {
                             res.getString("categoria"),
                             res.getInt("quantidade"),
                             res.getInt("estoqueminimo"),
-                            res.getInt("estoquemaximo")
+                            res.getInt("estoquemaximo"),
+                            res.getInt("versao")
                     );
                 }
             }
@@ -397,7 +452,8 @@ public class ProdutoDAO extends ConexaoDAO {
                             res.getString("categoria"),
                             res.getInt("quantidade"),
                             res.getInt("estoqueminimo"),
-                            res.getInt("estoquemaximo")
+                            res.getInt("estoquemaximo"),
+                            res.getInt("versao")
                     );
                     produtos.add(objeto);
                 }
@@ -429,7 +485,8 @@ public class ProdutoDAO extends ConexaoDAO {
                         res.getString("categoria"),
                         res.getInt("quantidade"),
                         res.getInt("estoqueminimo"),
-                        res.getInt("estoquemaximo")
+                        res.getInt("estoquemaximo"),
+                        res.getInt("versao")
                 );
                 produtos.add(objeto);
             }
@@ -453,7 +510,8 @@ public class ProdutoDAO extends ConexaoDAO {
         try {
             conn = this.getConexao();
 
-            String sql = "UPDATE tb_produtodao SET estoqueminimo = 25, estoquemaximo = 100";
+            String sql = "UPDATE tb_produtodao SET estoqueminimo = 25, estoquemaximo = 100, versao = versao + 1 "
+                    + "WHERE estoqueminimo <> 25 OR estoquemaximo <> 100";
 
             stmt = conn.prepareStatement(sql);
             int rowsAffected = stmt.executeUpdate();
@@ -0,0 +1,240 @@
+package dao;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.CRC32;
+import modelo.Categoria;
+import modelo.Produto;
+
+/**
+ * Grava e lê um snapshot binário do catálogo
+ * <p>
+ * Usado para que o servidor responda logo após reiniciar, antes de recarregar
+ * os dados do BD. O arquivo é lido e gravado de uma vez por um buffer em
+ * memória, sem mapeá-lo: um mapeamento só é desfeito pelo coletor de lixo, e
+ * no Windows um arquivo mapeado não pode ser substituído nem truncado.
+ * Formato do arquivo:
+ * </p>
+ * <pre>
+ * int magic | int formato | long geradoEm | int produtos | int categorias
+ * long quantidadeTotal | double valorTotal | int tamanhoDados
+ * dados (produtos e categorias) | long crc32 dos dados
+ * </pre>
+ */
+public class SnapshotCatalogo {
+
+    private static final int MAGIC = 0x45535451;
+    private static final int FORMATO = 2;
+    private static final int TAMANHO_CABECALHO = 4 + 4 + 8 + 4 + 4 + 8 + 8 + 4;
+
+    private final Path arquivo;
+
+    /**
+     * Conteúdo lido de um snapshot válido
+     */
+    public static class Conteudo {
+
+        private final long geradoEm;
+        private final List<Produto> produtos;
+        private final List<Categoria> categorias;
+
+        private Conteudo(long geradoEm, List<Produto> produtos, List<Categoria> categorias) {
+            this.geradoEm = geradoEm;
+            this.produtos = produtos;
+            this.categorias = categorias;
+        }
+
+        /**
+         * @return Momento da gravação em milissegundos
+         */
+        public long getGeradoEm() {
+            return geradoEm;
+        }
+
+        /**
+         * @return Produtos do snapshot
+         */
+        public List<Produto> getProdutos() {
+            return produtos;
+        }
+
+        /**
+         * @return Categorias do snapshot
+         */
+        public List<Categoria> getCategorias() {
+            return categorias;
+        }
+    }
+
+    /**
+     * @param arquivo Caminho do arquivo de snapshot
+     */
+    public SnapshotCatalogo(Path arquivo) {
+        this.arquivo = arquivo;
+    }
+
+    /**
+     * Grava o snapshot em um arquivo temporário e o move para o lugar do
+     * anterior, para que uma falha no meio da escrita não corrompa o último
+     * snapshot válido
+     *
+     * @param produtos Produtos do catálogo
+     * @param categorias Categorias do catálogo
+     * @throws IOException Caso a gravação falhe
+     */
+    public void gravar(List<Produto> produtos, List<Categoria> categorias) throws IOException {
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream(produtos.size() * 64 + 1024);
+        DataOutputStream dados = new DataOutputStream(buffer);
+        long quantidadeTotal = 0;
+        double valorTotal = 0;
+
+        for (Produto p : produtos) {
+            dados.writeInt(p.getId());
+            dados.writeDouble(p.getPreco());
+            dados.writeInt(p.getQuantidade());
+            dados.writeInt(p.getEstoqueminimo());
+            dados.writeInt(p.getEstoquemaximo());
+            dados.writeInt(p.getVersao());
+            escreverTexto(dados, p.getProduto());
+            escreverTexto(dados, p.getUnidade());
+            escreverTexto(dados, p.getCategoria());
+            quantidadeTotal += p.getQuantidade();
+            valorTotal += p.getPreco() * p.getQuantidade();
+        }
+        for (Categoria c : categorias) {
+            dados.writeInt(c.getId());
+            escreverTexto(dados, c.getNome());
+            escreverTexto(dados, c.getEmbalagem());
+            escreverTexto(dados, c.getTamanho());
+        }
+        dados.flush();
+        byte[] corpo = buffer.toByteArray();
+
+        CRC32 crc = new CRC32();
+        crc.update(corpo);
+
+        Files.createDirectories(arquivo.toAbsolutePath().getParent());
+        Path temporario = arquivo.resolveSibling(arquivo.getFileName() + ".tmp");
+        ByteBuffer conteudo = ByteBuffer.allocate(TAMANHO_CABECALHO + corpo.length + 8);
+        conteudo.putInt(MAGIC);
+        conteudo.putInt(FORMATO);
+        conteudo.putLong(System.currentTimeMillis());
+        conteudo.putInt(produtos.size());
+        conteudo.putInt(categorias.size());
+        conteudo.putLong(quantidadeTotal);
+        conteudo.putDouble(valorTotal);
+        conteudo.putInt(corpo.length);
+        conteudo.put(corpo);
+        conteudo.putLong(crc.getValue());
+        conteudo.flip();
+
+        try (FileChannel canal = FileChannel.open(temporario, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            while (conteudo.hasRemaining()) {
+                canal.write(conteudo);
+            }
+            canal.force(true);
+        }
+        Files.move(temporario, arquivo, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Lê e valida o snapshot gravado
+     *
+     * @return Conteúdo do snapshot, ou {@code null} se o arquivo não existir ou
+     * estiver inválido (magic, formato, tamanho, CRC ou totais divergentes)
+     */
+    public Conteudo carregar() {
+        if (!Files.isRegularFile(arquivo)) {
+            return null;
+        }
+
+        try (FileChannel canal = FileChannel.open(arquivo, StandardOpenOption.READ)) {
+            long tamanho = canal.size();
+            if (tamanho < TAMANHO_CABECALHO + 8 || tamanho > Integer.MAX_VALUE) {
+                return null;
+            }
+            ByteBuffer conteudo = ByteBuffer.allocate((int) tamanho);
+            while (conteudo.hasRemaining()) {
+                if (canal.read(conteudo) < 0) {
+                    return null;
+                }
+            }
+            conteudo.flip();
+
+            if (conteudo.getInt() != MAGIC || conteudo.getInt() != FORMATO) {
+                return null;
+            }
+            long geradoEm = conteudo.getLong();
+            int qtdProdutos = conteudo.getInt();
+            int qtdCategorias = conteudo.getInt();
+            long quantidadeTotal = conteudo.getLong();
+            double valorTotal = conteudo.getDouble();
+            int tamanhoDados = conteudo.getInt();
+            if (tamanhoDados < 0 || TAMANHO_CABECALHO + tamanhoDados + 8L != tamanho) {
+                return null;
+            }
+
+            ByteBuffer corpo = conteudo.slice(TAMANHO_CABECALHO, tamanhoDados);
+            CRC32 crc = new CRC32();
+            crc.update(corpo.duplicate());
+            if (crc.getValue() != conteudo.getLong(TAMANHO_CABECALHO + tamanhoDados)) {
+                return null;
+            }
+
+            List<Produto> produtos = new ArrayList<>(qtdProdutos);
+            long somaQuantidade = 0;
+            double somaValor = 0;
+            for (int i = 0; i < qtdProdutos; i++) {
+                int id = corpo.getInt();
+                double preco = corpo.getDouble();
+                int quantidade = corpo.getInt();
+                int minimo = corpo.getInt();
+                int maximo = corpo.getInt();
+                int versao = corpo.getInt();
+                String nome = lerTexto(corpo);
+                String unidade = lerTexto(corpo);
+                String categoria = lerTexto(corpo);
+                produtos.add(new Produto(id, nome, preco, unidade, categoria, quantidade, minimo, maximo, versao));
+                somaQuantidade += quantidade;
+                somaValor += preco * quantidade;
+            }
+
+            List<Categoria> categorias = new ArrayList<>(qtdCategorias);
+            for (int i = 0; i < qtdCategorias; i++) {
+                categorias.add(new Categoria(corpo.getInt(), lerTexto(corpo), lerTexto(corpo), lerTexto(corpo)));
+            }
+
+            if (somaQuantidade != quantidadeTotal || Double.compare(somaValor, valorTotal) != 0 || corpo.hasRemaining()) {
+                return null;
+            }
+            return new Conteudo(geradoEm, produtos, categorias);
+
+        } catch (IOException | RuntimeException e) {
+            System.err.println("Snapshot do catálogo inválido: " + e.getMessage());
+            return null;
+        }
+    }
+
+    private static void escreverTexto(DataOutputStream dados, String texto) throws IOException {
+        byte[] bytes = (texto != null ? texto : "").getBytes(StandardCharsets.UTF_8);
+        dados.writeShort(bytes.length);
+        dados.write(bytes);
+    }
+
+    private static String lerTexto(ByteBuffer corpo) {
+        byte[] bytes = new byte[corpo.getShort() & 0xFFFF];
+        corpo.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,97 @@
+package modelo;
+
+import java.io.Serializable;
+
+/**
+ * Cobertura do estoque de um produto: por quantos dias a quantidade atual
+ * atende o consumo médio, e o ponto de pedido para o prazo de reposição
+ */
+public class CoberturaEstoque implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    private final int idProduto;
+    private final String produto;
+    private final int quantidade;
+    private final double consumoDiario;
+    private final double diasCobertura;
+    private final int pontoPedido;
+
+    /**
+     * Construtor completo
+     *
+     * @param idProduto ID do produto
+     * @param produto Nome do produto
+     * @param quantidade Quantidade atual em estoque
+     * @param consumoDiario Consumo médio, em unidades por dia
+     * @param diasCobertura Dias até acabar o estoque
+     * ({@link Double#POSITIVE_INFINITY} sem consumo)
+     * @param pontoPedido Quantidade consumida durante o prazo de reposição
+     */
+    public CoberturaEstoque(int idProduto, String produto, int quantidade, double consumoDiario,
+            double diasCobertura, int pontoPedido) {
+        this.idProduto = idProduto;
+        this.produto = produto;
+        this.quantidade = quantidade;
+        this.consumoDiario = consumoDiario;
+        this.diasCobertura = diasCobertura;
+        this.pontoPedido = pontoPedido;
+    }
+
+    /**
+     * @return Retorna o ID do produto
+     */
+    public int getIdProduto() {
+        return idProduto;
+    }
+
+    /**
+     * @return Retorna o nome do produto
+     */
+    public String getProduto() {
+        return produto;
+    }
+
+    /**
+     * @return Retorna a quantidade atual em estoque
+     */
+    public int getQuantidade() {
+        return quantidade;
+    }
+
+    /**
+     * @return Retorna o consumo médio em unidades por dia
+     */
+    public double getConsumoDiario() {
+        return consumoDiario;
+    }
+
+    /**
+     * @return Retorna os dias até acabar o estoque, ou
+     * {@link Double#POSITIVE_INFINITY} se não há consumo
+     */
+    public double getDiasCobertura() {
+        return diasCobertura;
+    }
+
+    /**
+     * @return Retorna a quantidade em que o produto deve ser pedido
+     */
+    public int getPontoPedido() {
+        return pontoPedido;
+    }
+
+    /**
+     * @return Retorna {@code true} se a quantidade já está no ponto de pedido
+     * ou abaixo
+     */
+    public boolean isRepor() {
+        return consumoDiario > 0 && quantidade <= pontoPedido;
+    }
+
+    @Override
+    public String toString() {
+        return "CoberturaEstoque{idProduto=" + idProduto + ", quantidade=" + quantidade
+                + ", diasCobertura=" + diasCobertura + "}";
+    }
+}
@@ -0,0 +1,85 @@
+package modelo;
+
+import java.io.Serializable;
+import java.time.LocalDate;
+
+/**
+ * Linha de um pedido de movimentação: produto, quantidade e tipo
+ */
+public class ItemMovimentacao implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    private final int idProduto;
+    private final int quantidade;
+    private final String tipo;
+    private final LocalDate validade;
+
+    /**
+     * Construtor sem validade
+     *
+     * @param idProduto ID do produto
+     * @param quantidade Quantidade movimentada
+     * @param tipo Tipo de movimentação (ENTRADA/SAIDA)
+     */
+    public ItemMovimentacao(int idProduto, int quantidade, String tipo) {
+        this(idProduto, quantidade, tipo, null);
+    }
+
+    /**
+     * Construtor completo
+     *
+     * @param idProduto ID do produto
+     * @param quantidade Quantidade movimentada
+     * @param tipo Tipo de movimentação (ENTRADA/SAIDA)
+     * @param validade Validade do lote criado na ENTRADA ({@code null} sem
+     * validade)
+     */
+    public ItemMovimentacao(int idProduto, int quantidade, String tipo, LocalDate validade) {
+        this.idProduto = idProduto;
+        this.quantidade = quantidade;
+        this.tipo = Movimentacao.normalizarTipo(tipo);
+        this.validade = validade;
+    }
+
+    /**
+     * @return Retorna o ID do produto
+     */
+    public int getIdProduto() {
+        return idProduto;
+    }
+
+    /**
+     * @return Retorna a quantidade movimentada
+     */
+    public int getQuantidade() {
+        return quantidade;
+    }
+
+    /**
+     * @return Retorna o tipo de movimentação (ENTRADA/SAIDA)
+     */
+    public String getTipo() {
+        return tipo;
+    }
+
+    /**
+     * @return Retorna a validade do lote da ENTRADA, ou {@code null}
+     */
+    public LocalDate getValidade() {
+        return validade;
+    }
+
+    /**
+     * @return Retorna a quantidade com sinal: positiva na entrada e negativa
+     * na saída
+     */
+    public int getSaldo() {
+        return Movimentacao.ENTRADA.equals(tipo) ? quantidade : -quantidade;
+    }
+
+    @Override
+    public String toString() {
+        return "ItemMovimentacao{idProduto=" + idProduto + ", tipo=" + tipo + ", quantidade=" + quantidade + "}";
+    }
+}
@@ -0,0 +1,100 @@
+package modelo;
+
+import java.io.Serializable;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+
+/**
+ * Lote de um produto com quantidade e data de validade própria
+ * <p>
+ * Criado a cada ENTRADA e consumido nas SAIDAS pela ordem de validade (o que
+ * vence primeiro sai primeiro)
+ * </p>
+ */
+public class Lote implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    private int id;
+    private int idProduto;
+    private int quantidade;
+
+    /**
+     * Data de validade, {@code null} para produtos que não vencem
+     */
+    private LocalDate validade;
+
+    private LocalDateTime dataEntrada;
+
+    /**
+     * Construtor completo
+     *
+     * @param id Código de identificação do lote
+     * @param idProduto ID do produto do lote
+     * @param quantidade Quantidade restante no lote
+     * @param validade Data de validade ou {@code null}
+     * @param dataEntrada Data e hora da entrada do lote
+     */
+    public Lote(int id, int idProduto, int quantidade, LocalDate validade, LocalDateTime dataEntrada) {
+        this.id = id;
+        this.idProduto = idProduto;
+        this.quantidade = quantidade;
+        this.validade = validade;
+        this.dataEntrada = dataEntrada;
+    }
+
+    /**
+     * @return Retorna o ID do lote
+     */
+    public int getId() {
+        return id;
+    }
+
+    /**
+     * @param id Seta o ID do lote
+     */
+    public void setId(int id) {
+        this.id = id;
+    }
+
+    /**
+     * @return Retorna o ID do produto do lote
+     */
+    public int getIdProduto() {
+        return idProduto;
+    }
+
+    /**
+     * @return Retorna a quantidade restante no lote
+     */
+    public int getQuantidade() {
+        return quantidade;
+    }
+
+    /**
+     * @param quantidade Seta a quantidade restante no lote
+     */
+    public void setQuantidade(int quantidade) {
+        this.quantidade = quantidade;
+    }
+
+    /**
+     * @return Retorna a data de validade ou {@code null}
+     */
+    public LocalDate getValidade() {
+        return validade;
+    }
+
+    /**
+     * @return Retorna a data e hora da entrada do lote
+     */
+    public LocalDateTime getDataEntrada() {
+        return dataEntrada;
+    }
+
+    @Override
+    public String toString() {
+        return "Lote{id=" + id + ", idProduto=" + idProduto + ", quantidade=" + quantidade
+                + ", validade=" + validade + "}";
+    }
+}
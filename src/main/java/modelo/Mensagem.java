@@ -16,6 +16,24 @@ public class Mensagem implements Serializable {
     private Object dados;
     private String status;
 
+    /**
+     * Versão dos dados: na requisição é a versão que o cliente já possui, na
+     * resposta é a versão dos dados enviados (0 quando não se aplica)
+     */
+    private long versao;
+
+    /**
+     * Chave gerada pelo cliente para que uma requisição repetida não seja
+     * executada duas vezes ({@code null} sem deduplicação)
+     */
+    private String chaveIdempotencia;
+
+    /**
+     * Tempo que o cliente aceita esperar pela resposta, em milissegundos,
+     * contado da chegada ao servidor (0 usa o tempo limite da operação)
+     */
+    private long tempoLimiteMs;
+
     /**
      * Construtor completo da mensagem
      *
@@ -81,6 +99,50 @@ public class Mensagem implements Serializable {
         this.status = status;
     }
 
+    /**
+     * @return Versão dos dados da mensagem
+     */
+    public long getVersao() {
+        return versao;
+    }
+
+    /**
+     * @param versao Nova versão dos dados da mensagem
+     */
+    public void setVersao(long versao) {
+        this.versao = versao;
+    }
+
+    /**
+     * @return Chave de idempotência da requisição
+     */
+    public String getChaveIdempotencia() {
+        return chaveIdempotencia;
+    }
+
+    /**
+     * @param chaveIdempotencia Nova chave de idempotência da requisição
+     */
+    public void setChaveIdempotencia(String chaveIdempotencia) {
+        this.chaveIdempotencia = chaveIdempotencia;
+    }
+
+    /**
+     * @return Prazo da requisição, em milissegundos (0 usa o tempo limite da
+     * operação)
+     */
+    public long getTempoLimiteMs() {
+        return tempoLimiteMs;
+    }
+
+    /**
+     * @param tempoLimiteMs Novo prazo da requisição, em milissegundos (0 usa
+     * o tempo limite da operação)
+     */
+    public void setTempoLimiteMs(long tempoLimiteMs) {
+        this.tempoLimiteMs = tempoLimiteMs;
+    }
+
     @Override
     public String toString() {
         return "Mensagem{operacao='" + operacao + "', status='" + status + "', dados=" + dados + "}";
@@ -0,0 +1,158 @@
+package modelo;
+
+import java.io.Serializable;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+
+/**
+ * Registro de uma movimentação de estoque (entrada ou saída)
+ * <p>
+ * Usa só campos primitivos e textos compartilhados, para ocupar pouco na
+ * memória e na serialização quando o histórico tem muitas linhas. A data e
+ * hora é guardada em milissegundos sem fuso, como está no BD, com
+ * {@link #SEM_DATA_HORA} quando não informada
+ * </p>
+ */
+public class Movimentacao implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    public static final String ENTRADA = "ENTRADA";
+    public static final String SAIDA = "SAIDA";
+
+    /**
+     * Valor de {@code dataHora} para uma movimentação sem data e hora
+     */
+    private static final long SEM_DATA_HORA = Long.MIN_VALUE;
+
+    private static final DateTimeFormatter FORMATO_DATA_HORA = DateTimeFormatter.ofPattern("dd/MM/yyyy HH:mm:ss");
+
+    private final int id;
+    private final int idProduto;
+    private final int quantidade;
+    private final String tipo;
+    private final long dataHora;
+    private final String observacao;
+
+    /**
+     * Nome do produto, preenchido só nas listagens gerais
+     */
+    private final String nomeProduto;
+
+    /**
+     * Construtor completo
+     *
+     * @param id Código de identificação da movimentação
+     * @param idProduto ID do produto
+     * @param nomeProduto Nome do produto ou {@code null}
+     * @param quantidade Quantidade movimentada
+     * @param tipo Tipo de movimentação (ENTRADA/SAIDA)
+     * @param dataHora Data e hora da movimentação
+     * @param observacao Observação do registro
+     */
+    public Movimentacao(int id, int idProduto, String nomeProduto, int quantidade, String tipo,
+            LocalDateTime dataHora, String observacao) {
+        this.id = id;
+        this.idProduto = idProduto;
+        this.nomeProduto = nomeProduto;
+        this.quantidade = quantidade;
+        this.tipo = normalizarTipo(tipo);
+        this.dataHora = dataHora != null ? dataHora.toInstant(ZoneOffset.UTC).toEpochMilli() : SEM_DATA_HORA;
+        this.observacao = observacao != null ? observacao : "";
+    }
+
+    /**
+     * Devolve a constante do tipo, para que todas as linhas apontem para o
+     * mesmo texto
+     *
+     * @param tipo Tipo lido do BD ou do cliente
+     * @return {@link #ENTRADA}, {@link #SAIDA} ou o próprio texto
+     */
+    public static String normalizarTipo(String tipo) {
+        if (ENTRADA.equalsIgnoreCase(tipo)) {
+            return ENTRADA;
+        }
+        if (SAIDA.equalsIgnoreCase(tipo)) {
+            return SAIDA;
+        }
+        return tipo;
+    }
+
+    /**
+     * @return Retorna o ID da movimentação
+     */
+    public int getId() {
+        return id;
+    }
+
+    /**
+     * @return Retorna o ID do produto
+     */
+    public int getIdProduto() {
+        return idProduto;
+    }
+
+    /**
+     * @return Retorna o nome do produto, ou {@code null} se não carregado
+     */
+    public String getNomeProduto() {
+        return nomeProduto;
+    }
+
+    /**
+     * @return Retorna a quantidade movimentada
+     */
+    public int getQuantidade() {
+        return quantidade;
+    }
+
+    /**
+     * @return Retorna o tipo de movimentação (ENTRADA/SAIDA)
+     */
+    public String getTipo() {
+        return tipo;
+    }
+
+    /**
+     * @return Retorna a data e hora da movimentação, ou {@code null} se não
+     * informada
+     */
+    public LocalDateTime getDataHora() {
+        if (dataHora == SEM_DATA_HORA) {
+            return null;
+        }
+        return LocalDateTime.ofEpochSecond(Math.floorDiv(dataHora, 1000L),
+                (int) Math.floorMod(dataHora, 1000L) * 1_000_000, ZoneOffset.UTC);
+    }
+
+    /**
+     * @return Retorna a data e hora no formato {@code dd/MM/yyyy HH:mm:ss},
+     * ou texto vazio se não informada
+     */
+    public String getDataHoraFormatada() {
+        LocalDateTime data = getDataHora();
+        return data != null ? data.format(FORMATO_DATA_HORA) : "";
+    }
+
+    /**
+     * @return Retorna a observação do registro (vazia se não houver)
+     */
+    public String getObservacao() {
+        return observacao;
+    }
+
+    /**
+     * @return Retorna a quantidade com sinal: positiva na entrada e negativa
+     * na saída
+     */
+    public int getSaldo() {
+        return ENTRADA.equals(tipo) ? quantidade : -quantidade;
+    }
+
+    @Override
+    public String toString() {
+        return "Movimentacao{id=" + id + ", idProduto=" + idProduto + ", tipo=" + tipo
+                + ", quantidade=" + quantidade + ", dataHora=" + getDataHoraFormatada() + "}";
+    }
+}
@@ -50,6 +50,11 @@ public class Produto implements Serializable {
      */
     private int estoquemaximo;
 
+    /**
+     * Versão da linha no BD, avança a cada alteração; 0 quando desconhecida
+     */
+    private int versao;
+
     // Construtores
     /**
      * Construtor para inicializar o produto
@@ -83,6 +88,25 @@ public class Produto implements Serializable {
 
     }
 
+    /**
+     * Construtor completo com versão
+     *
+     * @param id ID do produto
+     * @param produto Nome do produto
+     * @param preco Preço do produto
+     * @param unidade
+     * @param categoria Categoria do produto
+     * @param quantidade Quantidade em estoque do produto
+     * @param estoqueminimo Quantidade máxima em estoque do produto
+     * @param estoquemaximo Quantidade mínima em estoque do produto
+     * @param versao Versão da linha no BD
+     */
+    public Produto(int id, String produto, double preco, String unidade,
+            String categoria, int quantidade, int estoqueminimo, int estoquemaximo, int versao) {
+        this(id, produto, preco, unidade, categoria, quantidade, estoqueminimo, estoquemaximo);
+        this.versao = versao;
+    }
+
     // Getters e Setters
     /**
      * @return Retorna o ID do produto
@@ -203,5 +227,20 @@ public class Produto implements Serializable {
         this.estoquemaximo = estoqueMaximo;
     }
 
+    /**
+     * @return Retorna a versão da linha no BD (0 se desconhecida)
+     */
+    public int getVersao() {
+        return versao;
+    }
+
+    /**
+     * @param versao Seta a versão lida do BD; enviada de volta na alteração,
+     * faz o servidor recusar a escrita se o produto mudou desde a leitura
+     */
+    public void setVersao(int versao) {
+        this.versao = versao;
+    }
+
 }
 
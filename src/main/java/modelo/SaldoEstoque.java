@@ -0,0 +1,117 @@
+package modelo;
+
+import java.io.Serializable;
+import java.time.LocalDateTime;
+
+/**
+ * Saldo de um produto calculado a partir das movimentações: o checkpoint de
+ * estoque mais próximo da data, ajustado pelas movimentações entre os dois
+ */
+public class SaldoEstoque implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    private final int idProduto;
+    private final String produto;
+    private final double preco;
+    private final int quantidade;
+    private final int quantidadeRegistrada;
+    private final LocalDateTime dataCheckpoint;
+    private final LocalDateTime dataReferencia;
+
+    /**
+     * Construtor completo
+     *
+     * @param idProduto ID do produto
+     * @param produto Nome do produto
+     * @param preco Preço atual do produto
+     * @param quantidade Quantidade calculada na data de referência
+     * @param quantidadeRegistrada Quantidade atual em
+     * <code>tb_produtodao</code>
+     * @param dataCheckpoint Data do checkpoint usado como base, ou
+     * {@code null} se não houver (na consulta por data o cálculo parte da
+     * quantidade cadastrada; na reconstrução, de zero)
+     * @param dataReferencia Data em que o saldo foi calculado
+     */
+    public SaldoEstoque(int idProduto, String produto, double preco, int quantidade, int quantidadeRegistrada,
+            LocalDateTime dataCheckpoint, LocalDateTime dataReferencia) {
+        this.idProduto = idProduto;
+        this.produto = produto;
+        this.preco = preco;
+        this.quantidade = quantidade;
+        this.quantidadeRegistrada = quantidadeRegistrada;
+        this.dataCheckpoint = dataCheckpoint;
+        this.dataReferencia = dataReferencia;
+    }
+
+    /**
+     * @return Retorna o ID do produto
+     */
+    public int getIdProduto() {
+        return idProduto;
+    }
+
+    /**
+     * @return Retorna o nome do produto
+     */
+    public String getProduto() {
+        return produto;
+    }
+
+    /**
+     * @return Retorna o preço atual do produto
+     */
+    public double getPreco() {
+        return preco;
+    }
+
+    /**
+     * @return Retorna a quantidade calculada pelas movimentações
+     */
+    public int getQuantidade() {
+        return quantidade;
+    }
+
+    /**
+     * @return Retorna a quantidade gravada hoje no cadastro do produto
+     */
+    public int getQuantidadeRegistrada() {
+        return quantidadeRegistrada;
+    }
+
+    /**
+     * @return Retorna a data do checkpoint usado como base
+     */
+    public LocalDateTime getDataCheckpoint() {
+        return dataCheckpoint;
+    }
+
+    /**
+     * @return Retorna a data de referência do saldo
+     */
+    public LocalDateTime getDataReferencia() {
+        return dataReferencia;
+    }
+
+    /**
+     * @return Retorna o valor do saldo (quantidade calculada vezes o preço
+     * atual)
+     */
+    public double getValor() {
+        return quantidade * preco;
+    }
+
+    /**
+     * @return Retorna {@code true} se a quantidade calculada difere da
+     * registrada
+     */
+    public boolean isDivergente() {
+        return quantidade != quantidadeRegistrada;
+    }
+
+    @Override
+    public String toString() {
+        return "SaldoEstoque{idProduto=" + idProduto + ", quantidade=" + quantidade
+                + ", quantidadeRegistrada=" + quantidadeRegistrada + "}";
+    }
+}
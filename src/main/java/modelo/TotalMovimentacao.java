@@ -0,0 +1,74 @@
+package modelo;
+
+import java.io.Serializable;
+
+/**
+ * Totais de entrada e saída de um grupo (produto, categoria ou geral) em um
+ * período (hora, dia ou mês)
+ */
+public class TotalMovimentacao implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    private final String chave;
+    private final String periodo;
+    private final long entradas;
+    private final long saidas;
+
+    /**
+     * Construtor completo
+     *
+     * @param chave ID do produto, nome da categoria ou {@code TOTAL}
+     * @param periodo Início do período ({@code yyyy-MM-dd HH:00},
+     * {@code yyyy-MM-dd} ou {@code yyyy-MM})
+     * @param entradas Soma das quantidades de ENTRADA
+     * @param saidas Soma das quantidades de SAIDA
+     */
+    public TotalMovimentacao(String chave, String periodo, long entradas, long saidas) {
+        this.chave = chave;
+        this.periodo = periodo;
+        this.entradas = entradas;
+        this.saidas = saidas;
+    }
+
+    /**
+     * @return Retorna o ID do produto, nome da categoria ou {@code TOTAL}
+     */
+    public String getChave() {
+        return chave;
+    }
+
+    /**
+     * @return Retorna o período do total
+     */
+    public String getPeriodo() {
+        return periodo;
+    }
+
+    /**
+     * @return Retorna a soma das entradas
+     */
+    public long getEntradas() {
+        return entradas;
+    }
+
+    /**
+     * @return Retorna a soma das saídas
+     */
+    public long getSaidas() {
+        return saidas;
+    }
+
+    /**
+     * @return Retorna entradas menos saídas
+     */
+    public long getSaldo() {
+        return entradas - saidas;
+    }
+
+    @Override
+    public String toString() {
+        return "TotalMovimentacao{chave=" + chave + ", periodo=" + periodo
+                + ", entradas=" + entradas + ", saidas=" + saidas + "}";
+    }
+}
@@ -0,0 +1,105 @@
+package server;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectOutputStream;
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+import modelo.Mensagem;
+
+/**
+ * Cache de respostas já serializadas por operação
+ * <p>
+ * Cada entrada guarda os bytes de uma {@link Mensagem} junto com a versão dos
+ * dados usada para gerá-la. Enquanto a versão não mudar, os bytes são
+ * escritos direto no socket, sem consultar o banco nem serializar de novo
+ * </p>
+ */
+public class CacheRespostas {
+
+    /**
+     * Tamanho do cabeçalho (magic + versão) escrito por todo
+     * {@link ObjectOutputStream} novo
+     */
+    private static final int TAMANHO_CABECALHO = 4;
+
+    private final ConcurrentHashMap<String, Entrada> entradas = new ConcurrentHashMap<>();
+
+    /**
+     * Busca os bytes da resposta de uma operação
+     *
+     * @param operacao Operação solicitada
+     * @param versao Versão atual dos dados da operação
+     * @return Bytes serializados ou {@code null} se não houver entrada para
+     * essa versão
+     */
+    public byte[] obter(String operacao, long versao) {
+        Entrada entrada = entradas.get(operacao);
+        if (entrada == null || entrada.versao != versao) {
+            return null;
+        }
+        return entrada.bytes;
+    }
+
+    /**
+     * Serializa e guarda a resposta de uma operação
+     * <p>
+     * Respostas de erro e de prazo esgotado são serializadas mas não ficam no
+     * cache
+     * </p>
+     *
+     * @param operacao Operação solicitada
+     * @param versao Versão dos dados lida antes de gerar a resposta
+     * @param resposta Resposta gerada pelo controlador
+     * @return Bytes serializados da resposta
+     * @throws IOException Caso a serialização falhe
+     */
+    public byte[] armazenar(String operacao, long versao, Mensagem resposta) throws IOException {
+        byte[] bytes = serializar(resposta);
+        if (!"ERRO".equals(resposta.getStatus()) && !"ERRO".equals(resposta.getOperacao())
+                && !"TEMPO_ESGOTADO".equals(resposta.getStatus())) {
+            entradas.merge(operacao, new Entrada(versao, bytes),
+                    (atual, nova) -> nova.versao >= atual.versao ? nova : atual);
+        }
+        return bytes;
+    }
+
+    /**
+     * Remove todas as entradas do cache
+     */
+    public void limpar() {
+        entradas.clear();
+    }
+
+    /**
+     * Serializa uma mensagem no mesmo formato que
+     * {@link ObjectOutputStream#writeObject(Object)} produz logo após um
+     * {@link ObjectOutputStream#reset()}, sem o cabeçalho do stream
+     *
+     * @param mensagem Mensagem a serializar
+     * @return Bytes do objeto
+     * @throws IOException Caso a serialização falhe
+     */
+    public static byte[] serializar(Mensagem mensagem) throws IOException {
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        try (ObjectOutputStream out = new ObjectOutputStream(buffer)) {
+            out.writeObject(mensagem);
+        }
+        byte[] completo = buffer.toByteArray();
+        return Arrays.copyOfRange(completo, TAMANHO_CABECALHO, completo.length);
+    }
+
+    /**
+     * Bytes de uma resposta e a versão dos dados que a gerou
+     */
+    private static final class Entrada {
+
+        private final long versao;
+        private final byte[] bytes;
+
+        private Entrada(long versao, byte[] bytes) {
+            this.versao = versao;
+            this.bytes = bytes;
+        }
+    }
+}
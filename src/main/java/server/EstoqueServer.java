@@ -5,9 +5,19 @@ import java.io.EOFException;
 import java.io.IOException;
 import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
-import java.net.ServerSocket;
+import java.io.ObjectStreamConstants;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
 import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
 import modelo.Mensagem;
+import util.Operacoes;
 
 /**
  * Servidor principal do sistema de estoque Responsável por aceitar conexões de
@@ -16,8 +26,9 @@ import modelo.Mensagem;
  */
 public class EstoqueServer {
 
-    private ServerSocket serverSocket;
+    private ServerSocketChannel serverSocket;
     private EstoqueController estoqueController;
+    private CacheRespostas cacheRespostas;
     private boolean running;
 
     /**
@@ -25,6 +36,7 @@ public class EstoqueServer {
      */
     public EstoqueServer() {
         this.estoqueController = new EstoqueController();
+        this.cacheRespostas = new CacheRespostas();
         this.running = false;
     }
 
@@ -46,7 +58,9 @@ public class EstoqueServer {
      */
     public void start(int port) {
         try {
-            serverSocket = new ServerSocket(port);
+            // Canal em vez de ServerSocket para que os sockets aceitem FileChannel.transferTo
+            serverSocket = ServerSocketChannel.open();
+            serverSocket.bind(new InetSocketAddress(port));
             running = true;
             System.out.println("INICIANDO SERVIDOR DE ESTOQUE");
             System.out.println("Servidor de estoque iniciado na porta " + port);
@@ -54,10 +68,10 @@ public class EstoqueServer {
             System.out.println("Aguardando conexões de clientes...");
 
             while (running) {
-                Socket clientSocket = serverSocket.accept();
-                System.out.println("Cliente conectado: " + clientSocket.getInetAddress().getHostAddress());
+                SocketChannel canalCliente = serverSocket.accept();
+                System.out.println("Cliente conectado: " + canalCliente.socket().getInetAddress().getHostAddress());
 
-                new ClientHandler(clientSocket, estoqueController).start();
+                new ClientHandler(canalCliente, estoqueController, cacheRespostas).start();
             }
         } catch (IOException e) {
             System.err.println("Erro no servidor: " + e.getMessage());
@@ -95,20 +109,31 @@ public class EstoqueServer {
      */
     private static class ClientHandler extends Thread {
 
+        /**
+         * Tamanho máximo de cada bloco do arquivo enviado ao cliente
+         */
+        private static final int BLOCO_ARQUIVO = 8 * 1024 * 1024;
+
+        private SocketChannel canal;
         private Socket clientSocket;
         private EstoqueController controller;
+        private CacheRespostas cache;
         private ObjectInputStream in;
         private ObjectOutputStream out;
+        private OutputStream saida;
 
         /**
          * Construtor do handler do cliente
          *
-         * @param socket Socket do cliente
+         * @param canal Canal do cliente, em modo bloqueante
          * @param controller Controlador de estoque
+         * @param cache Cache de respostas serializadas
          */
-        public ClientHandler(Socket socket, EstoqueController controller) {
-            this.clientSocket = socket;
+        public ClientHandler(SocketChannel canal, EstoqueController controller, CacheRespostas cache) {
+            this.canal = canal;
+            this.clientSocket = canal.socket();
             this.controller = controller;
+            this.cache = cache;
         }
 
         /**
@@ -116,14 +141,36 @@ public class EstoqueServer {
          */
         public void run() {
             try {
-                out = new ObjectOutputStream(clientSocket.getOutputStream());
+                saida = clientSocket.getOutputStream();
+                out = new ObjectOutputStream(saida);
                 in = new ObjectInputStream(clientSocket.getInputStream());
 
                 while (true) {
                     Mensagem mensagem = (Mensagem) in.readObject();
-                    Mensagem resposta = controller.processarOperacao(mensagem);
-                    out.writeObject(resposta);
-                    out.flush();
+                    long versao = controller.getVersaoDados(mensagem.getOperacao());
+
+                    if (versao < 0 || mensagem.getVersao() == versao) {
+                        Mensagem resposta = controller.processarOperacao(mensagem);
+                        Path exportacao = arquivoExportacao(mensagem, resposta);
+                        try {
+                            enviar(resposta);
+                            if (exportacao != null) {
+                                enviarExportacao(exportacao);
+                            }
+                        } finally {
+                            if (exportacao != null) {
+                                Files.deleteIfExists(exportacao);
+                            }
+                        }
+                        continue;
+                    }
+
+                    byte[] bytes = cache.obter(mensagem.getOperacao(), versao);
+                    if (bytes == null) {
+                        Mensagem resposta = controller.processarOperacao(mensagem);
+                        bytes = cache.armazenar(mensagem.getOperacao(), versao, resposta);
+                    }
+                    enviarSerializado(bytes);
                 }
             } catch (EOFException e) {
                 // Cliente desconectado normalmente
@@ -137,5 +184,90 @@ public class EstoqueServer {
                 }
             }
         }
+
+        /**
+         * Envia uma resposta serializando-a no stream do cliente
+         *
+         * @param resposta Resposta a enviar
+         * @throws IOException Caso a escrita falhe
+         */
+        private void enviar(Mensagem resposta) throws IOException {
+            out.reset();
+            out.writeObject(resposta);
+            out.flush();
+        }
+
+        /**
+         * Envia bytes já serializados por {@link CacheRespostas}
+         * <p>
+         * O reset antes da escrita zera a tabela de referências dos dois
+         * lados, então os bytes do cache são lidos pelo cliente como um
+         * {@code writeObject} comum
+         * </p>
+         *
+         * @param bytes Resposta serializada
+         * @throws IOException Caso a escrita falhe
+         */
+        private void enviarSerializado(byte[] bytes) throws IOException {
+            out.reset();
+            out.flush();
+            saida.write(bytes);
+            saida.flush();
+        }
+
+        /**
+         * Obtém o arquivo gerado por uma exportação bem-sucedida
+         *
+         * @param mensagem Requisição do cliente
+         * @param resposta Resposta do controller
+         * @return Caminho do arquivo, ou {@code null} se a resposta não for de
+         * uma exportação com arquivo
+         */
+        private Path arquivoExportacao(Mensagem mensagem, Mensagem resposta) {
+            if (!Operacoes.EXPORTAR_MOVIMENTACOES.equals(mensagem.getOperacao())
+                    || !"SUCESSO".equals(resposta.getStatus())
+                    || !(resposta.getDados() instanceof Map<?, ?>)) {
+                return null;
+            }
+            Object nome = ((Map<?, ?>) resposta.getDados()).get("arquivo");
+            return nome instanceof String ? EstoqueController.DIRETORIO_EXPORTACOES.resolve((String) nome) : null;
+        }
+
+        /**
+         * Envia o arquivo de uma exportação logo após a resposta
+         * <p>
+         * O arquivo vai em blocos de dados primitivos do protocolo de
+         * serialização ({@code TC_BLOCKDATALONG} + tamanho + bytes), com os
+         * bytes copiados do arquivo para o socket por
+         * {@link FileChannel#transferTo}, sem passar pela memória da JVM. O
+         * cliente lê os {@code tamanho} bytes informados na resposta com
+         * {@code readFully} do mesmo {@link ObjectInputStream}. Quem chama
+         * apaga o arquivo depois, mesmo que o envio falhe
+         * </p>
+         *
+         * @param arquivo Arquivo da exportação
+         * @throws IOException Caso a leitura do arquivo ou o envio falhe
+         */
+        private void enviarExportacao(Path arquivo) throws IOException {
+            try (FileChannel origem = FileChannel.open(arquivo)) {
+                ByteBuffer cabecalho = ByteBuffer.allocate(5);
+                long tamanho = origem.size();
+                long posicao = 0;
+
+                while (posicao < tamanho) {
+                    int bloco = (int) Math.min(BLOCO_ARQUIVO, tamanho - posicao);
+                    cabecalho.clear();
+                    cabecalho.put(ObjectStreamConstants.TC_BLOCKDATALONG).putInt(bloco).flip();
+                    while (cabecalho.hasRemaining()) {
+                        canal.write(cabecalho);
+                    }
+
+                    long fimBloco = posicao + bloco;
+                    while (posicao < fimBloco) {
+                        posicao += origem.transferTo(posicao, fimBloco - posicao, canal);
+                    }
+                }
+            }
+        }
     }
 }
@@ -17,17 +17,39 @@ public class Operacoes {
 
     // Movimentações
     public static final String REALIZAR_MOVIMENTACAO = "REALIZAR_MOVIMENTACAO";
+    public static final String REALIZAR_PEDIDO = "REALIZAR_PEDIDO";
     public static final String LISTAR_MOVIMENTACOES = "LISTAR_MOVIMENTACOES";
+    public static final String AGREGAR_MOVIMENTACOES = "AGREGAR_MOVIMENTACOES";
+
+    // Reservas
+    public static final String RESERVAR_ESTOQUE = "RESERVAR_ESTOQUE";
+    public static final String CONFIRMAR_RESERVA = "CONFIRMAR_RESERVA";
+    public static final String LIBERAR_RESERVA = "LIBERAR_RESERVA";
+    public static final String CONSULTAR_DISPONIBILIDADE = "CONSULTAR_DISPONIBILIDADE";
+
+    // Estoque derivado das movimentações
+    public static final String RECONSTRUIR_ESTOQUE = "RECONSTRUIR_ESTOQUE";
+    public static final String GERAR_CHECKPOINT_ESTOQUE = "GERAR_CHECKPOINT_ESTOQUE";
+    public static final String ESTOQUE_EM_DATA = "ESTOQUE_EM_DATA";
+    public static final String ARQUIVAR_MOVIMENTACOES = "ARQUIVAR_MOVIMENTACOES";
+    public static final String EXPORTAR_MOVIMENTACOES = "EXPORTAR_MOVIMENTACOES";
+
+    // Lotes
+    public static final String LISTAR_LOTES = "LISTAR_LOTES";
+    public static final String LISTAR_LOTES_VENCENDO = "LISTAR_LOTES_VENCENDO";
 
     // Histórico 
     public static final String OBTER_HISTORICO_MOVIMENTACOES = "OBTER_HISTORICO_MOVIMENTACOES";
     public static final String TESTE_CONEXAO = "TESTE_CONEXAO";
+    public static final String OBTER_METRICAS = "OBTER_METRICAS";
     // Relatórios
     public static final String RELATORIO_PRECOS = "RELATORIO_PRECOS";
+    public static final String RELATORIO_PRECOS_PAGINADO = "RELATORIO_PRECOS_PAGINADO";
     public static final String RELATORIO_BALANCO = "RELATORIO_BALANCO";
     public static final String RELATORIO_ESTOQUE_MINIMO = "RELATORIO_ESTOQUE_MINIMO";
     public static final String RELATORIO_ESTOQUE_MAXIMO = "RELATORIO_ESTOQUE_MAXIMO";
     public static final String RELATORIO_PRODUTOS_CATEGORIA = "RELATORIO_PRODUTOS_CATEGORIA";
+    public static final String RELATORIO_COBERTURA_ESTOQUE = "RELATORIO_COBERTURA_ESTOQUE";
     
 
     // Preço
@@ -0,0 +1,126 @@
+package desempenho;
+
+import java.io.IOException;
+import java.io.ObjectOutputStream;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import modelo.Movimentacao;
+
+/**
+ * Compara o histórico em mapas por linha (formato antigo do
+ * {@code MovimentaDAO}, mais a cópia com a data formatada que o controller
+ * fazia) com a lista de {@link Movimentacao}
+ * <p>
+ * Mede a memória alocada para montar a lista e o tamanho serializado, que é
+ * o que vai ao cliente. As linhas simulam o {@code ResultSet}: cada linha traz
+ * textos novos, como o driver devolve. Sem BD; rodar a partir das classes
+ * compiladas:
+ * </p>
+ * <pre>{@code
+ java -cp target/classes:target/test-classes desempenho.BenchmarkMovimentacoes [linhas]
+ }</pre>
+ */
+public class BenchmarkMovimentacoes {
+
+    private static final DateTimeFormatter FORMATO = DateTimeFormatter.ofPattern("dd/MM/yyyy HH:mm:ss");
+
+    public static void main(String[] args) throws IOException {
+        int linhas = args.length > 0 ? Integer.parseInt(args[0]) : 1_000_000;
+        LocalDateTime inicio = LocalDateTime.of(2024, 1, 1, 8, 0);
+
+        // Aquece as duas versões antes de medir
+        montarMapas(10_000, inicio);
+        montarRegistros(10_000, inicio);
+
+        long antes = alocado();
+        List<Map<String, Object>> mapas = montarMapas(linhas, inicio);
+        long memoriaMapas = alocado() - antes;
+        long tamanhoMapas = tamanhoSerializado(mapas);
+        mapas = null;
+
+        antes = alocado();
+        List<Movimentacao> registros = montarRegistros(linhas, inicio);
+        long memoriaRegistros = alocado() - antes;
+        long tamanhoRegistros = tamanhoSerializado(registros);
+
+        System.out.println("Linhas: " + linhas);
+        System.out.printf("Alocação: mapas %d MB, registros %d MB%n", memoriaMapas >> 20, memoriaRegistros >> 20);
+        System.out.printf("Serializado: mapas %d MB, registros %d MB%n", tamanhoMapas >> 20, tamanhoRegistros >> 20);
+    }
+
+    private static List<Map<String, Object>> montarMapas(int linhas, LocalDateTime inicio) {
+        List<Map<String, Object>> lidas = new ArrayList<>();
+        for (int i = 0; i < linhas; i++) {
+            Map<String, Object> registro = new HashMap<>();
+            registro.put("id", i);
+            registro.put("id_produto", i % 500);
+            registro.put("nome_produto", new String("Produto " + (i % 500)));
+            registro.put("quantidade", i % 50 + 1);
+            registro.put("tipo", new String(i % 3 == 0 ? "SAIDA" : "ENTRADA"));
+            registro.put("data_hora", inicio.plusMinutes(i));
+            registro.put("observacao", new String("Movimentação via pedido"));
+            lidas.add(registro);
+        }
+
+        List<Map<String, Object>> formatadas = new ArrayList<>();
+        for (Map<String, Object> mov : lidas) {
+            Map<String, Object> formatada = new HashMap<>();
+            formatada.put("data_hora", ((LocalDateTime) mov.get("data_hora")).format(FORMATO));
+            formatada.put("tipo", mov.get("tipo"));
+            formatada.put("quantidade", mov.get("quantidade"));
+            formatada.put("observacao", mov.get("observacao"));
+            formatadas.add(formatada);
+        }
+        return formatadas;
+    }
+
+    private static List<Movimentacao> montarRegistros(int linhas, LocalDateTime inicio) {
+        Map<String, String> textos = new HashMap<>();
+        List<Movimentacao> registros = new ArrayList<>();
+        for (int i = 0; i < linhas; i++) {
+            registros.add(new Movimentacao(i, i % 500,
+                    textos.computeIfAbsent(new String("Produto " + (i % 500)), t -> t),
+                    i % 50 + 1,
+                    new String(i % 3 == 0 ? "SAIDA" : "ENTRADA"),
+                    inicio.plusMinutes(i),
+                    textos.computeIfAbsent(new String("Movimentação via pedido"), t -> t)));
+        }
+        return registros;
+    }
+
+    private static long alocado() {
+        return ((com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean()).getCurrentThreadAllocatedBytes();
+    }
+
+    private static long tamanhoSerializado(Object objeto) throws IOException {
+        Contador contador = new Contador();
+        try (ObjectOutputStream out = new ObjectOutputStream(contador)) {
+            out.writeObject(objeto);
+        }
+        return contador.total;
+    }
+
+    /**
+     * Conta os bytes escritos sem guardá-los
+     */
+    private static class Contador extends OutputStream {
+
+        private long total;
+
+        @Override
+        public void write(int b) {
+            total++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+            total += len;
+        }
+    }
+}
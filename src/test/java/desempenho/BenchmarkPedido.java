@@ -0,0 +1,106 @@
+package desempenho;
+
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import modelo.Mensagem;
+import util.Operacoes;
+
+/**
+ * Compara um pedido de várias linhas ({@code REALIZAR_PEDIDO}) com as mesmas
+ * linhas enviadas uma a uma ({@code REALIZAR_MOVIMENTACAO})
+ * <p>
+ * Precisa do servidor rodando com o BD. Cada rodada faz entradas de 1 unidade
+ * nos produtos informados e depois as saídas correspondentes, então o estoque
+ * termina como começou. Uso:
+ * </p>
+ * <pre>{@code
+ java -cp target/classes:target/test-classes desempenho.BenchmarkPedido host porta idProduto[,idProduto...] [linhas] [rodadas]
+ }</pre>
+ */
+public class BenchmarkPedido {
+
+    public static void main(String[] args) throws IOException, ClassNotFoundException {
+        if (args.length < 3) {
+            System.out.println("Uso: BenchmarkPedido host porta idProduto[,idProduto...] [linhas] [rodadas]");
+            return;
+        }
+        String[] ids = args[2].split(",");
+        int linhas = args.length > 3 ? Integer.parseInt(args[3]) : 80;
+        int rodadas = args.length > 4 ? Integer.parseInt(args[4]) : 20;
+
+        try (Socket socket = new Socket(args[0], Integer.parseInt(args[1]))) {
+            ObjectOutputStream out = new ObjectOutputStream(socket.getOutputStream());
+            ObjectInputStream in = new ObjectInputStream(socket.getInputStream());
+
+            // Aquecimento: uma rodada de cada sem medir
+            avulsas(out, in, ids, linhas);
+            pedido(out, in, ids, linhas);
+
+            long tempoAvulsas = 0;
+            long tempoPedido = 0;
+            for (int i = 0; i < rodadas; i++) {
+                long inicio = System.nanoTime();
+                avulsas(out, in, ids, linhas);
+                tempoAvulsas += System.nanoTime() - inicio;
+
+                inicio = System.nanoTime();
+                pedido(out, in, ids, linhas);
+                tempoPedido += System.nanoTime() - inicio;
+            }
+
+            double avulsasMs = tempoAvulsas / 1e6 / rodadas;
+            double pedidoMs = tempoPedido / 1e6 / rodadas;
+            System.out.printf("%d linhas, média de %d rodadas (entradas + saídas)%n", linhas, rodadas);
+            System.out.printf("Movimentações avulsas: %.1f ms%n", avulsasMs);
+            System.out.printf("Pedido único: %.1f ms (%.1fx)%n", pedidoMs, avulsasMs / pedidoMs);
+        }
+    }
+
+    private static void avulsas(ObjectOutputStream out, ObjectInputStream in, String[] ids, int linhas)
+            throws IOException, ClassNotFoundException {
+        for (String tipo : new String[]{"ENTRADA", "SAIDA"}) {
+            for (int i = 0; i < linhas; i++) {
+                enviar(out, in, new Mensagem(Operacoes.REALIZAR_MOVIMENTACAO, linha(ids, i, tipo)));
+            }
+        }
+    }
+
+    private static void pedido(ObjectOutputStream out, ObjectInputStream in, String[] ids, int linhas)
+            throws IOException, ClassNotFoundException {
+        for (String tipo : new String[]{"ENTRADA", "SAIDA"}) {
+            List<Map<String, Object>> itens = new ArrayList<>(linhas);
+            for (int i = 0; i < linhas; i++) {
+                itens.add(linha(ids, i, tipo));
+            }
+            Map<String, Object> dados = new HashMap<>();
+            dados.put("itens", itens);
+            dados.put("observacao", "Benchmark de pedido");
+            enviar(out, in, new Mensagem(Operacoes.REALIZAR_PEDIDO, dados));
+        }
+    }
+
+    private static HashMap<String, Object> linha(String[] ids, int indice, String tipo) {
+        HashMap<String, Object> linha = new HashMap<>();
+        linha.put("idProduto", Integer.parseInt(ids[indice % ids.length].trim()));
+        linha.put("quantidade", 1);
+        linha.put("tipo", tipo);
+        return linha;
+    }
+
+    private static void enviar(ObjectOutputStream out, ObjectInputStream in, Mensagem mensagem)
+            throws IOException, ClassNotFoundException {
+        out.writeObject(mensagem);
+        out.flush();
+        out.reset();
+        Mensagem resposta = (Mensagem) in.readObject();
+        if ("ERRO".equals(resposta.getStatus()) || "ERRO".equals(resposta.getOperacao())) {
+            throw new IllegalStateException("Erro do servidor: " + resposta.getDados());
+        }
+    }
+}
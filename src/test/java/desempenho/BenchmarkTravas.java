@@ -0,0 +1,128 @@
+package desempenho;
+
+import controller.TravasProduto;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Teste de carga das travas por produto: vazão com 1, 2, 4... threads até o
+ * número de núcleos, comparada com uma trava única para todos os produtos
+ * <p>
+ * Cada operação sorteia o produto entre todos os do cadastro, então as
+ * threads disputam os mesmos produtos e as mesmas listras, e faz um trabalho
+ * curto dentro da trava no lugar da gravação. Com listras a vazão deve
+ * crescer quase linearmente com as threads enquanto houver muito mais
+ * produtos que threads; com a trava única ela fica parada. Também mostra a
+ * taxa de contenção medida pelas travas. Sem BD; rodar a partir das classes
+ * compiladas:
+ * </p>
+ * <pre>{@code
+ java -cp target/classes:target/test-classes desempenho.BenchmarkTravas [operacoesPorThread] [trabalho] [produtos]
+ }</pre>
+ */
+public class BenchmarkTravas {
+
+    /**
+     * Resultado do trabalho feito dentro das travas, para que o JIT não o
+     * elimine
+     */
+    private static final AtomicLong SAIDA = new AtomicLong();
+
+    public static void main(String[] args) throws InterruptedException {
+        int operacoes = args.length > 0 ? Integer.parseInt(args[0]) : 200_000;
+        int trabalho = args.length > 1 ? Integer.parseInt(args[1]) : 2_000;
+        int produtos = args.length > 2 ? Integer.parseInt(args[2]) : 10_000;
+        int nucleos = Runtime.getRuntime().availableProcessors();
+
+        // Aquecimento
+        medir(new TravasProduto(), null, nucleos, operacoes / 4, trabalho, produtos);
+        medir(null, new ReentrantLock(), nucleos, operacoes / 4, trabalho, produtos);
+
+        System.out.printf("Núcleos: %d, %d operações por thread, %d produtos%n", nucleos, operacoes, produtos);
+        System.out.println("threads | listras (op/s) | escala | contenção | trava única (op/s) | escala");
+        double baseListras = 0;
+        double baseUnica = 0;
+        List<Integer> contagens = new ArrayList<>();
+        for (int threads = 1; threads < nucleos; threads *= 2) {
+            contagens.add(threads);
+        }
+        contagens.add(nucleos);
+        for (int threads : contagens) {
+            TravasProduto travas = new TravasProduto();
+            double listras = medir(travas, null, threads, operacoes, trabalho, produtos);
+            double unica = medir(null, new ReentrantLock(), threads, operacoes, trabalho, produtos);
+            if (threads == 1) {
+                baseListras = listras;
+                baseUnica = unica;
+            }
+            System.out.printf("%7d | %14.0f | %5.2fx | %8.2f%% | %18.0f | %5.2fx%n",
+                    threads, listras, listras / baseListras,
+                    (double) travas.getMetricas().get("taxaContencao") * 100, unica, unica / baseUnica);
+        }
+        System.out.println("(" + SAIDA.get() + ")");
+    }
+
+    /**
+     * Roda as threads ao mesmo tempo e mede a vazão
+     *
+     * @param travas Travas por produto, ou {@code null} para usar a única
+     * @param unica Trava única, usada quando {@code travas} é {@code null}
+     * @param produtos Quantidade de produtos sorteados (IDs de 1 a ela)
+     * @return Operações por segundo somando todas as threads
+     */
+    private static double medir(TravasProduto travas, ReentrantLock unica, int threads, int operacoes, int trabalho,
+            int produtos) throws InterruptedException {
+        CountDownLatch largada = new CountDownLatch(1);
+        List<Thread> corredores = new ArrayList<>(threads);
+        for (int t = 0; t < threads; t++) {
+            Thread thread = new Thread(() -> {
+                long acumulado = 0;
+                try {
+                    largada.await();
+                } catch (InterruptedException e) {
+                    return;
+                }
+                ThreadLocalRandom sorteio = ThreadLocalRandom.current();
+                for (int i = 0; i < operacoes; i++) {
+                    int id = sorteio.nextInt(produtos) + 1;
+                    if (travas != null) {
+                        acumulado += travas.executar(id, () -> trabalhar(id, trabalho));
+                    } else {
+                        unica.lock();
+                        try {
+                            acumulado += trabalhar(id, trabalho);
+                        } finally {
+                            unica.unlock();
+                        }
+                    }
+                }
+                SAIDA.addAndGet(acumulado);
+            });
+            thread.start();
+            corredores.add(thread);
+        }
+
+        long inicio = System.nanoTime();
+        largada.countDown();
+        for (Thread thread : corredores) {
+            thread.join();
+        }
+        long duracao = System.nanoTime() - inicio;
+        return (double) threads * operacoes / duracao * 1e9;
+    }
+
+    /**
+     * Trabalho de CPU no lugar da gravação de uma movimentação
+     */
+    private static long trabalhar(int id, int passos) {
+        long x = id;
+        for (int i = 0; i < passos; i++) {
+            x = x * 6364136223846793005L + 1442695040888963407L;
+        }
+        return x;
+    }
+}